@@ -0,0 +1,369 @@
+package kademlia;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import kademlia.util.HashedWheelTimer;
+
+/**
+ * Decides which incoming messages a KadServer takes on, so a flood from one peer can't take the whole node down.
+ *
+ * Replies to our own requests are always taken. Requests are limited per source address by a token bucket;
+ * the port is left out, so a host can't get a fresh bucket for every port it sends from,
+ * and the number of messages waiting to be handled is bounded. Sources that have answered our requests before
+ * are known contacts and may fill the whole queue; unknown sources only get half of it,
+ * so the node keeps up its routing table maintenance while strangers are flooding it.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class AdmissionControl
+{
+
+    /* Stop tracking new sources beyond this many; the rest share a single bucket */
+    private static final int MAX_SOURCES = 64 * 1024;
+
+    /* Milliseconds between clearing out buckets of sources that went quiet */
+    private static final long SWEEP_INTERVAL = 60 * 1000;
+
+    private final HashedWheelTimer timer;
+    private final int capacity;
+    private final double rate;
+    private final double burst;
+    private final DropPolicy policy;
+
+    private final Map<InetAddress, TokenBucket> buckets;
+    private final TokenBucket overflow;
+    private final Map<InetAddress, Boolean> known;
+    private volatile boolean isRunning;
+
+    /* Counters */
+    private final AtomicInteger depth;
+    private final AtomicInteger peakDepth;
+    private final AtomicLong admitted;
+    private final AtomicLong droppedRateLimited;
+    private final AtomicLong droppedQueueFull;
+    private final AtomicLong droppedStale;
+
+
+    {
+        buckets = new ConcurrentHashMap<>();
+        known = new ConcurrentHashMap<>();
+        depth = new AtomicInteger();
+        peakDepth = new AtomicInteger();
+        admitted = new AtomicLong();
+        droppedRateLimited = new AtomicLong();
+        droppedQueueFull = new AtomicLong();
+        droppedStale = new AtomicLong();
+    }
+
+    /**
+     * @param timer    Timer used to clear out idle buckets
+     * @param capacity Most messages waiting to be handled at a time
+     * @param rate     Requests per second each source may send on average; 0 for no limit
+     * @param burst    Requests a source may send at once after being quiet
+     * @param policy   What to drop when we can't keep up
+     */
+    public AdmissionControl(HashedWheelTimer timer, int capacity, double rate, double burst, DropPolicy policy)
+    {
+        this.timer = timer;
+        this.capacity = capacity;
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.policy = policy;
+        this.overflow = new TokenBucket(this.rate, this.burst);
+        this.isRunning = true;
+
+        if (rate > 0)
+        {
+            this.timer.schedule(new Sweeper(), SWEEP_INTERVAL);
+        }
+    }
+
+    /**
+     * Take on a reply to one of our requests; replies are never dropped
+     */
+    public void admitReply()
+    {
+        this.enqueued();
+    }
+
+    /**
+     * Decide whether to take on a request
+     *
+     * @param source The address the request came from
+     *
+     * @return Whether to handle the request; if so, done() must be called once it's handled
+     */
+    public boolean admitRequest(InetSocketAddress source)
+    {
+        boolean isKnown = this.known.containsKey(source.getAddress());
+        if (this.depth.get() >= (isKnown ? this.capacity : this.capacity / 2))
+        {
+            this.droppedQueueFull.incrementAndGet();
+            return false;
+        }
+
+        if (this.rate > 0 && !this.bucket(source).take())
+        {
+            this.droppedRateLimited.incrementAndGet();
+            return false;
+        }
+
+        this.enqueued();
+        return true;
+    }
+
+    /**
+     * Check whether a request would be taken on right now, without taking it on;
+     * for deciding whether a big request is worth reading in before it can be decoded
+     *
+     * @param source The address the request comes from
+     *
+     * @return Whether admitRequest would take the request on
+     */
+    public boolean mayAdmit(InetSocketAddress source)
+    {
+        boolean isKnown = this.known.containsKey(source.getAddress());
+        if (this.depth.get() >= (isKnown ? this.capacity : this.capacity / 2))
+        {
+            return false;
+        }
+        if (this.rate <= 0)
+        {
+            return true;
+        }
+
+        TokenBucket bucket = this.buckets.get(source.getAddress());
+        if (bucket == null)
+        {
+            /* A new source starts with a full bucket, unless it would have to share the overflow one */
+            return this.buckets.size() < MAX_SOURCES || this.overflow.hasToken();
+        }
+        return bucket.hasToken();
+    }
+
+    private void enqueued()
+    {
+        int d = this.depth.incrementAndGet();
+        this.admitted.incrementAndGet();
+
+        int peak;
+        while (d > (peak = this.peakDepth.get()) && !this.peakDepth.compareAndSet(peak, d))
+        {
+            /* Someone else raised the peak meanwhile, try again */
+        }
+    }
+
+    /**
+     * Check whether a queued request waited so long that its sender has given up on it
+     *
+     * @param waited  Nanoseconds the request waited in the queue
+     * @param timeout Milliseconds senders wait for a reply
+     *
+     * @return Whether to drop the request
+     */
+    public boolean isStale(long waited, long timeout)
+    {
+        if (this.policy == DropPolicy.DROP_STALE && waited / 1000000L > timeout)
+        {
+            this.droppedStale.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * An admitted message has been handled or dropped
+     */
+    public void done()
+    {
+        this.depth.decrementAndGet();
+    }
+
+    /**
+     * A source answered one of our requests, so it is a real node we talk to
+     *
+     * @param source The address of the node
+     */
+    public void knownContact(InetSocketAddress source)
+    {
+        InetAddress address = source.getAddress();
+        if (this.known.size() < MAX_SOURCES && !this.known.containsKey(address))
+        {
+            this.known.put(address, Boolean.TRUE);
+        }
+    }
+
+    private TokenBucket bucket(InetSocketAddress source)
+    {
+        InetAddress address = source.getAddress();
+        TokenBucket bucket = this.buckets.get(address);
+        if (bucket == null)
+        {
+            if (this.buckets.size() >= MAX_SOURCES)
+            {
+                return this.overflow;
+            }
+            TokenBucket created = new TokenBucket(this.rate, this.burst);
+            bucket = this.buckets.putIfAbsent(address, created);
+            if (bucket == null)
+            {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Stop clearing out idle buckets; for when the timer outlives us
+     */
+    public void stop()
+    {
+        this.isRunning = false;
+    }
+
+    /**
+     * @return Number of messages waiting to be handled
+     */
+    public int queueDepth()
+    {
+        return this.depth.get();
+    }
+
+    /**
+     * @return Most messages that were waiting to be handled at a time
+     */
+    public int peakQueueDepth()
+    {
+        return this.peakDepth.get();
+    }
+
+    /**
+     * @return Number of messages taken on
+     */
+    public long admitted()
+    {
+        return this.admitted.get();
+    }
+
+    /**
+     * @return Number of requests dropped because their source went over its rate
+     */
+    public long droppedRateLimited()
+    {
+        return this.droppedRateLimited.get();
+    }
+
+    /**
+     * @return Number of requests dropped because the queue was full
+     */
+    public long droppedQueueFull()
+    {
+        return this.droppedQueueFull.get();
+    }
+
+    /**
+     * @return Number of requests dropped because they waited too long
+     */
+    public long droppedStale()
+    {
+        return this.droppedStale.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AdmissionControl: [Queue Depth: " + this.queueDepth() + "; Peak Queue Depth: " + this.peakQueueDepth()
+                + "; Admitted: " + this.admitted() + "; Dropped (rate): " + this.droppedRateLimited()
+                + "; Dropped (queue full): " + this.droppedQueueFull() + "; Dropped (stale): " + this.droppedStale() + "; ]";
+    }
+
+    /**
+     * Allows a source an average rate of requests with bursts of up to a number of requests
+     */
+    private static class TokenBucket
+    {
+
+        private final double rate;
+        private final double burst;
+        private double tokens;
+        private long lastRefill;
+
+        public TokenBucket(double rate, double burst)
+        {
+            this.rate = rate;
+            this.burst = burst;
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private synchronized boolean take()
+        {
+            this.refill();
+            if (this.tokens < 1)
+            {
+                return false;
+            }
+            this.tokens--;
+            return true;
+        }
+
+        private synchronized boolean hasToken()
+        {
+            this.refill();
+            return this.tokens >= 1;
+        }
+
+        private synchronized boolean isFull()
+        {
+            this.refill();
+            return this.tokens >= this.burst;
+        }
+
+        private void refill()
+        {
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) * this.rate / 1e9);
+            this.lastRefill = now;
+        }
+    }
+
+    /**
+     * Clears out the buckets of sources that have been quiet long enough to have filled up again
+     */
+    private class Sweeper extends HashedWheelTimer.Task
+    {
+
+        @Override
+        public void run()
+        {
+            if (!isRunning)
+            {
+                return;
+            }
+
+            Iterator<TokenBucket> it = buckets.values().iterator();
+            while (it.hasNext())
+            {
+                if (it.next().isFull())
+                {
+                    it.remove();
+                }
+            }
+
+            try
+            {
+                timer.schedule(this, SWEEP_INTERVAL);
+            }
+            catch (IllegalStateException e)
+            {
+                /* The timer is stopped, we are shutting down */
+            }
+        }
+    }
+}
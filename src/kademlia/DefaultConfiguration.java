@@ -1,6 +1,7 @@
 package kademlia;
 
 import java.io.File;
+import kademlia.transport.TransportType;
 
 /**
  * A set of Kademlia configuration parameters. Default values are
@@ -18,6 +19,26 @@ public class DefaultConfiguration implements KadConfiguration
     private final static int RCSIZE = 3;
     private final static int STALE = 1;
     private final static String LOCAL_FOLDER = "kademlia";
+    private final static TransportType TRANSPORT = TransportType.DATAGRAM_SOCKET;
+    private final static int INBOUND_WORKERS = 4;
+    private final static boolean VIRTUAL_THREADS = false;
+    private final static long TIMER_TICK = 10;  // in milliseconds
+    private final static boolean DIRECT_BUFFERS = false;
+    private final static int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    private final static int STREAM_THRESHOLD = 16 * 1024;
+    private final static int COMPRESSION_THRESHOLD = 1024;
+    private final static long MIN_RESPONSE_TIMEOUT = 200;   // in milliseconds
+    private final static int MAX_RETRANSMISSIONS = 2;
+    private final static long COALESCING_WINDOW = 0;   // in microseconds
+    private final static int INBOUND_QUEUE_CAPACITY = 4096;
+    private final static double INBOUND_RATE_LIMIT = 2000;  // requests per second per source
+    private final static int INBOUND_BURST = 4000;
+    private final static DropPolicy DROP_POLICY = DropPolicy.DROP_STALE;
+    private final static int MAX_RPCS_IN_FLIGHT = 256;
+    private final static boolean COMPACT_FORMAT = true;
+    private final static boolean ZERO_COPY_CONTENT = true;
+    private final static int RECEIVE_CHANNELS = 1;
+    private final static boolean USE_CONTACT_INDEX = false;
     
     private final static boolean IS_TESTING = true;
 
@@ -98,4 +119,124 @@ public class DefaultConfiguration implements KadConfiguration
     {
         return IS_TESTING;
     }
+
+    @Override
+    public TransportType transport()
+    {
+        return TRANSPORT;
+    }
+
+    @Override
+    public int inboundWorkerThreads()
+    {
+        return INBOUND_WORKERS;
+    }
+
+    @Override
+    public boolean useVirtualThreads()
+    {
+        return VIRTUAL_THREADS;
+    }
+
+    @Override
+    public long timerTickDuration()
+    {
+        return TIMER_TICK;
+    }
+
+    @Override
+    public boolean useDirectBuffers()
+    {
+        return DIRECT_BUFFERS;
+    }
+
+    @Override
+    public int maxMessageSize()
+    {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public int streamThreshold()
+    {
+        return STREAM_THRESHOLD;
+    }
+
+    @Override
+    public int compressionThreshold()
+    {
+        return COMPRESSION_THRESHOLD;
+    }
+
+    @Override
+    public long minResponseTimeout()
+    {
+        return MIN_RESPONSE_TIMEOUT;
+    }
+
+    @Override
+    public int maxRetransmissions()
+    {
+        return MAX_RETRANSMISSIONS;
+    }
+
+    @Override
+    public long coalescingWindow()
+    {
+        return COALESCING_WINDOW;
+    }
+
+    @Override
+    public int inboundQueueCapacity()
+    {
+        return INBOUND_QUEUE_CAPACITY;
+    }
+
+    @Override
+    public double inboundRateLimit()
+    {
+        return INBOUND_RATE_LIMIT;
+    }
+
+    @Override
+    public int inboundBurst()
+    {
+        return INBOUND_BURST;
+    }
+
+    @Override
+    public DropPolicy dropPolicy()
+    {
+        return DROP_POLICY;
+    }
+
+    @Override
+    public int maxRpcsInFlight()
+    {
+        return MAX_RPCS_IN_FLIGHT;
+    }
+
+    @Override
+    public boolean useCompactFormat()
+    {
+        return COMPACT_FORMAT;
+    }
+
+    @Override
+    public boolean zeroCopyContent()
+    {
+        return ZERO_COPY_CONTENT;
+    }
+
+    @Override
+    public int receiveChannels()
+    {
+        return RECEIVE_CHANNELS;
+    }
+
+    @Override
+    public boolean useContactIndex()
+    {
+        return USE_CONTACT_INDEX;
+    }
 }
@@ -0,0 +1,21 @@
+package kademlia;
+
+/**
+ * What a KadServer does with incoming requests when it can't keep up.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public enum DropPolicy
+{
+
+    /**
+     * Drop requests that arrive while the inbound queue is full or their source is over its rate
+     */
+    DROP_NEW,
+
+    /**
+     * Like DROP_NEW, and also drop queued requests that waited so long their sender has given up on them
+     */
+    DROP_STALE
+}
@@ -7,10 +7,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.util.NoSuchElementException;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import kademlia.dht.GetParameter;
 import kademlia.dht.DHT;
 import kademlia.dht.KadContent;
@@ -61,6 +65,9 @@ public class JKademliaNode implements KademliaNode
     private transient Timer refreshOperationTimer;
     private transient TimerTask refreshOperationTTask;
 
+    /* Executor used to run operations, receivers and refresh work */
+    private final transient ExecutorService executor;
+
     /* Factories */
     private final transient MessageFactory messageFactory;
 
@@ -97,11 +104,46 @@ public class JKademliaNode implements KademliaNode
         this.dht = dht;
         this.config = config;
         this.routingTable = routingTable;
+        this.executor = createExecutor(config);
         this.messageFactory = new MessageFactory(this, this.dht, this.config);
-        this.server = new KadServer(udpPort, this.messageFactory, this.localNode, this.config, this.statistician);
+
+        /* In virtual thread mode the receivers also run on our executor, otherwise the server uses its own worker pool */
+        this.server = new KadServer(udpPort, this.messageFactory, this.localNode, this.config, this.statistician, config.useVirtualThreads() ? this.executor : null);
         this.startRefreshOperation();
     }
 
+    /**
+     * Create the executor this node runs its operations on;
+     * a virtual thread per task executor if the configuration asks for it and the JVM supports it.
+     */
+    private static ExecutorService createExecutor(KadConfiguration config)
+    {
+        if (config.useVirtualThreads())
+        {
+            try
+            {
+                /* Looked up reflectively so we still run on JVMs without virtual threads */
+                Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) m.invoke(null);
+            }
+            catch (ReflectiveOperationException e)
+            {
+                System.err.println("KademliaNode: Virtual threads are not supported by this JVM, using platform threads.");
+            }
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "KademliaNode-worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
     @Override
     public final void startRefreshOperation()
     {
@@ -111,15 +153,22 @@ public class JKademliaNode implements KademliaNode
             @Override
             public void run()
             {
-                try
+                /* Runs a DHT RefreshOperation on our executor so the timer thread is never held up */
+                executor.execute(new Runnable()
                 {
-                    /* Runs a DHT RefreshOperation  */
-                    JKademliaNode.this.refresh();
-                }
-                catch (IOException e)
-                {
-                    System.err.println("KademliaNode: Refresh Operation Failed; Message: " + e.getMessage());
-                }
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            JKademliaNode.this.refresh();
+                        }
+                        catch (IOException e)
+                        {
+                            System.err.println("KademliaNode: Refresh Operation Failed; Message: " + e.getMessage());
+                        }
+                    }
+                });
             }
         };
         refreshOperationTimer.schedule(refreshOperationTTask, this.config.restoreInterval(), this.config.restoreInterval());
@@ -243,6 +292,12 @@ public class JKademliaNode implements KademliaNode
         return this.dht;
     }
 
+    @Override
+    public ExecutorService getExecutor()
+    {
+        return this.executor;
+    }
+
     @Override
     public KadConfiguration getCurrentConfiguration()
     {
@@ -324,6 +379,7 @@ public class JKademliaNode implements KademliaNode
         this.server.shutdown();
 
         this.stopRefreshOperation();
+        this.executor.shutdown();
 
         /* Save this Kademlia instance's state if required */
         if (saveState)
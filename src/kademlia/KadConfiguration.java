@@ -1,5 +1,7 @@
 package kademlia;
 
+import kademlia.transport.TransportType;
+
 /**
  * Interface that defines a KadConfiguration object
  *
@@ -60,4 +62,150 @@ public interface KadConfiguration
      * @return Whether we're in a testing or production system.
      */
     public boolean isTesting();
+
+    /**
+     * @return The transport the KadServer uses to send and receive datagrams.
+     */
+    public TransportType transport();
+
+    /**
+     * Number of worker threads used to decode incoming messages and run their receivers.
+     * If 0, messages are handled on the listener thread, unless maxRpcsInFlight bounds the requests in flight;
+     * then one worker is used.
+     *
+     * @return The number of inbound worker threads
+     */
+    public int inboundWorkerThreads();
+
+    /**
+     * Whether operations, receivers and refresh work run on virtual threads.
+     * Falls back to platform threads if the JVM does not support virtual threads.
+     *
+     * @return Whether to use virtual threads
+     */
+    public boolean useVirtualThreads();
+
+    /**
+     * Resolution of the timer used for message timeouts; a timeout fires at most one tick late.
+     *
+     * @return Length of a timer tick in milliseconds
+     */
+    public long timerTickDuration();
+
+    /**
+     * Whether message buffers are allocated outside the Java heap.
+     * Direct buffers save a copy with the NIO transport; the DatagramSocket transport copies them into heap arrays.
+     *
+     * @return Whether to use direct buffers
+     */
+    public boolean useDirectBuffers();
+
+    /**
+     * Messages too big for one datagram are sent in chunks; this caps their size.
+     *
+     * @return Largest message in bytes that can be sent or received
+     */
+    public int maxMessageSize();
+
+    /**
+     * Messages of at least this size are sent over a TCP connection to the peer instead of UDP,
+     * falling back to UDP if the peer doesn't accept connections. 0 turns TCP off.
+     *
+     * @return The size in bytes from which messages go over TCP
+     */
+    public int streamThreshold();
+
+    /**
+     * Messages of at least this size are compressed when sent to peers that support it. 0 turns compression off.
+     *
+     * @return The size in bytes from which messages are compressed
+     */
+    public int compressionThreshold();
+
+    /**
+     * Replies are waited on for as long as each peer's measured round trip times suggest,
+     * but never less than this nor longer than responseTimeout().
+     *
+     * @return The least time in milliseconds to wait for a reply
+     */
+    public long minResponseTimeout();
+
+    /**
+     * A request that gets no reply in time is sent again this many times, waiting twice as long each time,
+     * before the node is considered unresponsive. At most 16 are used.
+     *
+     * @return Number of times to re-send a request
+     */
+    public int maxRetransmissions();
+
+    /**
+     * Small messages to the same node sent within this window are packed into one datagram. 0 turns batching off.
+     *
+     * @return The window in microseconds
+     */
+    public long coalescingWindow();
+
+    /**
+     * Incoming messages wait in a queue to be handled; this bounds it. Unknown sources may only fill half of it.
+     *
+     * @return Most incoming messages waiting at a time
+     */
+    public int inboundQueueCapacity();
+
+    /**
+     * Each source address may send requests at this rate on average; requests over it are dropped. 0 turns the limit off.
+     * All ports of a host share the same limit, so nodes sharing an address, such as many nodes on one machine, may want it raised.
+     *
+     * @return Requests per second
+     */
+    public double inboundRateLimit();
+
+    /**
+     * @return Requests a source address may send at once after being quiet
+     */
+    public int inboundBurst();
+
+    /**
+     * @return What to drop when incoming requests come in faster than we can handle them
+     */
+    public DropPolicy dropPolicy();
+
+    /**
+     * Bounds the requests the node has in flight across all operations; more wait their turn,
+     * with interactive requests going before maintenance ones. 0 turns the bound off.
+     *
+     * @return Most requests in flight at a time
+     */
+    public int maxRpcsInFlight();
+
+    /**
+     * Whether routing and content messages are sent in the compact wire format to peers that support it
+     *
+     * @return Whether to use the compact format
+     */
+    public boolean useCompactFormat();
+
+    /**
+     * Whether content big enough to go over a connection is sent to peers straight from its file,
+     * without being decoded and encoded again; such replies are never compressed.
+     *
+     * @return Whether to serve content from disk without copying it
+     */
+    public boolean zeroCopyContent();
+
+    /**
+     * Number of sockets bound to the node's UDP port, each read by its own thread, so receiving can use several cores.
+     * Needs SO_REUSEPORT; where the platform lacks it, a single socket is used.
+     *
+     * @return Number of receiving sockets
+     */
+    public int receiveChannels();
+
+    /**
+     * Whether buckets also keep their contacts' IDs in flat arrays, so finding the closest contacts scans memory
+     * instead of walking a tree; worth it for routing tables with a large k.
+     *
+     * @return Whether to keep a contact index in every bucket
+     */
+    public boolean useContactIndex();
 }
@@ -1,24 +1,42 @@
 package kademlia;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import kademlia.exceptions.KadServerDownException;
+import kademlia.exceptions.MessageTooBigException;
+import kademlia.message.CompactFormat;
+import kademlia.message.CompactMessage;
+import kademlia.message.ContentMessage;
 import kademlia.message.KademliaMessageFactory;
 import kademlia.message.Message;
-import kademlia.message.MessageFactory;
 import kademlia.node.Node;
 import kademlia.message.Receiver;
+import kademlia.transport.ChunkingTransport;
+import kademlia.transport.CoalescingTransport;
+import kademlia.transport.DatagramSocketTransport;
+import kademlia.transport.KadTransport;
+import kademlia.transport.LoopbackNetwork;
+import kademlia.transport.NioDatagramTransport;
+import kademlia.transport.PacketHandler;
+import kademlia.transport.ReusePort;
+import kademlia.transport.ShardedTransport;
+import kademlia.transport.StreamTransport;
+import kademlia.transport.TransportType;
+import kademlia.util.BufferPool;
+import kademlia.util.Deflate;
+import kademlia.util.HashedWheelTimer;
+import kademlia.util.OrderedExecutor;
+import kademlia.util.PooledBuffer;
 
 /**
  * The server that handles sending and receiving messages between nodes on the Kad Network
@@ -32,15 +50,64 @@ public class KadServer
     /* Maximum size of a Datagram Packet */
     private static final int DATAGRAM_BUFFER_SIZE = 64 * 1024;      // 64KB
 
+    /* Largest datagram UDP carries; bigger messages can only go to peers that take chunks */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /* Messages bigger than this are sent in chunks of CHUNK_SIZE to peers that take chunks */
+    private static final int MAX_UNCHUNKED_SIZE = 32 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final long CHUNK_RETRANSMIT_TIMEOUT = 250;       // in milliseconds
+
+    /* Small messages to the same node are packed into datagrams of up to this size, so batches fit in one Ethernet frame */
+    private static final int MAX_BATCH_SIZE = 1400;
+
+    /* Milliseconds after which an unused TCP connection to a peer is closed */
+    private static final long STREAM_IDLE_TIMEOUT = 60 * 1000;
+
+    /* Number of ordering lanes per inbound worker thread */
+    private static final int LANES_PER_WORKER = 8;
+
+    /* Largest reply kept to answer a request sent again with; bigger ones are made again */
+    private static final int MAX_KEPT_REPLY_SIZE = 2 * 1024;
+
+    /* Most times a request is sent again; each try waits twice as long as the one before */
+    private static final int MAX_RETRANSMISSIONS = 16;
+
+    /* Number of buckets in the timeout wheel */
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    /* Maximum number of messages waiting on a reply at a time */
+    private static final int MAX_PENDING_MESSAGES = 64 * 1024;
+
+    /* Maximum number of free buffers kept for re-use */
+    private static final int POOLED_BUFFERS = 64;
+
+    /* Every message starts with the communication ID and the message code */
+    private static final int HEADER_SIZE = 5;
+
+    /* Set on the message code if the rest of the message is compressed */
+    private static final int COMPRESSED_FLAG = 0x80;
+
     /* Basic Kad Objects */
     private final transient KadConfiguration config;
 
     /* Server Objects */
-    private final DatagramSocket socket;
-    private transient boolean isRunning;
-    private final Map<Integer, Receiver> receivers;
-    private final Timer timer;      // Schedule future tasks
-    private final Map<Integer, TimerTask> tasks;    // Keep track of scheduled tasks
+    private final KadTransport transport;
+    private transient volatile boolean isRunning;
+    private final HashedWheelTimer timer;      // Schedule future tasks
+    private final PendingRpcTable pending;     // Conversations waiting on a reply
+    private final BufferPool buffers;          // Buffers messages are encoded into and decoded from
+    private final PeerFeatures features;       // What our peers support
+    private final RoundTripTimes rtts;         // How fast our peers answer
+    private final RecentRequests recent;       // Requests received lately, to answer re-sent ones from
+    private final ThreadLocal<InetSocketAddress> requestSource;    // Where the request being handled on this thread came from
+    private final AdmissionControl admission;  // Which incoming messages we take on
+    private final RpcBudget budget;            // Bounds our requests in flight; null if unbounded
+    private final int retries;                 // How often a request is sent again before it times out
+
+    /* Inbound pipeline; messages are decoded and handled here instead of on the listener thread */
+    private final OrderedExecutor dispatcher;
+    private final ExecutorService workerPool;       // Only set if the server owns the pool
 
     private final Node localNode;
 
@@ -52,9 +119,7 @@ public class KadServer
     
     {
         isRunning = true;
-        this.tasks = new HashMap<>();
-        this.receivers = new HashMap<>();
-        this.timer = new Timer(true);
+        requestSource = new ThreadLocal<>();
     }
 
     /**
@@ -66,33 +131,243 @@ public class KadServer
      * @param config
      * @param statistician A statistician to manage the server statistics
      *
-     * @throws java.net.SocketException
+     * @throws java.io.IOException
      */
-    public KadServer(int udpPort, KademliaMessageFactory mFactory, Node localNode, KadConfiguration config, KadStatistician statistician) throws SocketException
+    public KadServer(int udpPort, KademliaMessageFactory mFactory, Node localNode, KadConfiguration config, KadStatistician statistician) throws IOException
+    {
+        this(udpPort, mFactory, localNode, config, statistician, null);
+    }
+
+    /**
+     * Initialize our KadServer
+     *
+     * @param udpPort      The port to listen on
+     * @param mFactory     Factory used to create messages
+     * @param localNode    Local node on which this server runs on
+     * @param config
+     * @param statistician A statistician to manage the server statistics
+     * @param executor     Executor used to decode incoming messages and run receivers;
+     *                     if null the server creates its own pool of config.inboundWorkerThreads() threads
+     *
+     * @throws java.io.IOException
+     */
+    public KadServer(int udpPort, KademliaMessageFactory mFactory, Node localNode, KadConfiguration config, KadStatistician statistician, Executor executor) throws IOException
     {
         this.config = config;
-        this.socket = new DatagramSocket(udpPort);
+        if (config.transport() == TransportType.LOOPBACK)
+        {
+            /* Thousands of nodes in one JVM can't each have a timer thread ticking away */
+            this.timer = LoopbackNetwork.getDefault().timer();
+        }
+        else
+        {
+            this.timer = new HashedWheelTimer(config.timerTickDuration(), TIMER_WHEEL_SIZE);
+        }
+        if (config.maxRpcsInFlight() > 0)
+        {
+            /**
+             * Requests that waited longer than an operation takes are of no use anymore.
+             * The budget drains on whatever thread queued or finished a request, often inside another operation's receiver,
+             * so the queued requests are sent and given up on by the inbound workers; there is always one with a budget.
+             */
+            this.budget = new RpcBudget(config.maxRpcsInFlight(), config.operationTimeout(), new RpcBudget.Sender()
+            {
+                @Override
+                public void send(final int comm, final Node to, final Message request)
+                {
+                    execute(comm, new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            sendQueued(comm, to, request);
+                        }
+                    });
+                }
+
+                @Override
+                public void abandon(final int comm)
+                {
+                    execute(comm, new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            abandonQueued(comm);
+                        }
+                    });
+                }
+            });
+        }
+        else
+        {
+            this.budget = null;
+        }
+        this.pending = new PendingRpcTable(MAX_PENDING_MESSAGES, this.timer, new PendingRpcTable.Retransmitter()
+        {
+            @Override
+            public void retransmit(int comm, Node to, Message request)
+            {
+                KadServer.this.retransmit(comm, to, request);
+            }
+        }, this.budget);
+        this.buffers = new BufferPool(DATAGRAM_BUFFER_SIZE, POOLED_BUFFERS, config.useDirectBuffers());
+        this.features = new PeerFeatures();
+
+        /**
+         * A node we know nothing about yet gets its tries, each waiting twice as long as the one before,
+         * within the response timeout. Known nodes wait as long as their round trips suggest.
+         */
+        this.retries = Math.max(0, Math.min(config.maxRetransmissions(), MAX_RETRANSMISSIONS));
+        long attempts = (2L << this.retries) - 1;
+        this.rtts = new RoundTripTimes(config.minResponseTimeout(), config.responseTimeout(), config.responseTimeout() / attempts);
+
+        /* Remember requests for as long as their senders may keep sending them again */
+        this.recent = new RecentRequests(this.timer, config.responseTimeout() * attempts, MAX_KEPT_REPLY_SIZE);
+        this.admission = new AdmissionControl(this.timer, config.inboundQueueCapacity(), config.inboundRateLimit(),
+                config.inboundBurst(), config.dropPolicy());
+        KadTransport datagrams = createTransport(udpPort, config);
+        boolean loopback = config.transport() == TransportType.LOOPBACK;
+        if (!loopback)
+        {
+            /* Loopback datagrams have no size limit and never go missing half way */
+            datagrams = new ChunkingTransport(datagrams, this.features, this.timer, MAX_UNCHUNKED_SIZE, MAX_DATAGRAM_SIZE, CHUNK_SIZE,
+                    config.maxMessageSize(), 4L * config.maxMessageSize(), CHUNK_RETRANSMIT_TIMEOUT, config.responseTimeout());
+        }
+        datagrams = new CoalescingTransport(datagrams, this.features, config.coalescingWindow(), MAX_BATCH_SIZE, config.useDirectBuffers());
+        if (config.streamThreshold() > 0 && !loopback)
+        {
+            /* Bulk messages go over TCP, the rest over UDP */
+            this.transport = new StreamTransport(datagrams, udpPort, config.streamThreshold(), config.maxMessageSize(),
+                    4L * config.maxMessageSize(), config.responseTimeout(), config.responseTimeout(), STREAM_IDLE_TIMEOUT);
+        }
+        else
+        {
+            this.transport = datagrams;
+        }
         this.localNode = localNode;
         this.messageFactory = mFactory;
         this.statistician = statistician;
 
+        /**
+         * Setup the inbound pipeline. The RPC budget sends and gives up on queued requests through it,
+         * in order with their conversations' replies, so with a budget there is always at least one worker.
+         */
+        int workers = (config.inboundWorkerThreads() == 0 && this.budget != null) ? 1 : config.inboundWorkerThreads();
+        int lanes = Math.max(1, workers) * LANES_PER_WORKER;
+        if (executor != null)
+        {
+            this.workerPool = null;
+            this.dispatcher = new OrderedExecutor(executor, lanes);
+        }
+        else if (workers > 0)
+        {
+            this.workerPool = Executors.newFixedThreadPool(workers, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "KadServer-worker-" + udpPort);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            this.dispatcher = new OrderedExecutor(this.workerPool, lanes);
+        }
+        else
+        {
+            /* No workers, handle messages on the listener thread */
+            this.workerPool = null;
+            this.dispatcher = null;
+        }
+
         /* Start listening for incoming requests in a new thread */
         this.startListener();
     }
 
+    /**
+     * Create the transport selected by the configuration
+     */
+    private static KadTransport createTransport(int udpPort, KadConfiguration config) throws IOException
+    {
+        if (config.transport() == TransportType.LOOPBACK)
+        {
+            return LoopbackNetwork.getDefault().bind(udpPort);
+        }
+
+        int channels = config.receiveChannels();
+        if (channels > 1 && !ReusePort.isSupported())
+        {
+            System.err.println("Sockets can't share a port on this platform, receiving on a single socket.");
+            channels = 1;
+        }
+        if (channels <= 1)
+        {
+            return createTransport(udpPort, config, false);
+        }
+
+        /* Several sockets on the same port, each with its own receive thread */
+        KadTransport[] shards = new KadTransport[channels];
+        try
+        {
+            for (int i = 0; i < channels; i++)
+            {
+                shards[i] = createTransport(udpPort, config, true);
+            }
+        }
+        catch (IOException e)
+        {
+            for (KadTransport shard : shards)
+            {
+                if (shard != null)
+                {
+                    shard.close();
+                }
+            }
+            throw e;
+        }
+        return new ShardedTransport(shards);
+    }
+
+    private static KadTransport createTransport(int udpPort, KadConfiguration config, boolean reusePort) throws IOException
+    {
+        switch (config.transport())
+        {
+            case NIO:
+                return new NioDatagramTransport(udpPort, DATAGRAM_BUFFER_SIZE, config.useDirectBuffers(), reusePort);
+            case DATAGRAM_SOCKET:
+            default:
+                return new DatagramSocketTransport(udpPort, DATAGRAM_BUFFER_SIZE, reusePort);
+        }
+    }
+
     /**
      * Starts the listener to listen for incoming messages
      */
     private void startListener()
     {
-        new Thread()
+        this.transport.start(new PacketHandler()
         {
             @Override
-            public void run()
+            public void packetReceived(ByteBuffer packet, InetSocketAddress source)
+            {
+                dispatch(packet, source);
+            }
+
+            @Override
+            public void transferProgress(int comm, InetSocketAddress source)
+            {
+                /* A reply that comes in chunks may take longer than the timeout, give it time as long as it keeps coming */
+                pending.extend(comm, config.responseTimeout());
+            }
+
+            @Override
+            public boolean admitTransfer(int comm, int length, InetSocketAddress source)
             {
-                listen();
+                /* Don't read in a big request we would drop once it's here */
+                return pending.isPending(comm) || admission.mayAdmit(source);
             }
-        }.start();
+        });
     }
 
     /**
@@ -107,32 +382,68 @@ public class KadServer
      * @throws IOException
      * @throws kademlia.exceptions.KadServerDownException
      */
-    public synchronized int sendMessage(Node to, Message msg, Receiver recv) throws IOException, KadServerDownException
+    public int sendMessage(Node to, Message msg, Receiver recv) throws IOException, KadServerDownException
+    {
+        return this.sendMessage(to, msg, recv, RpcPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sends a message; if it expects a reply and the node has too many requests in flight,
+     * it is queued by its priority and sent once earlier requests are done.
+     *
+     * @param msg      The message to send
+     * @param to       The node to send the message to
+     * @param recv     The receiver to handle the response message
+     * @param priority How urgent the message is
+     *
+     * @return Integer The communication ID of this message
+     *
+     * @throws IOException
+     * @throws kademlia.exceptions.KadServerDownException
+     */
+    public int sendMessage(Node to, Message msg, Receiver recv, RpcPriority priority) throws IOException, KadServerDownException
     {
         if (!isRunning)
         {
             throw new KadServerDownException(this.localNode + " - Kad Server is not running.");
         }
 
-        /* Generate a random communication ID */
-        int comm = new Random().nextInt();
-
-        /* If we have a receiver */
+        /* Setup the receiver to handle message response; the pending table hands out the communication ID */
+        int comm;
         if (recv != null)
         {
-            try
+            /* Wait as long as this node's round trips suggest */
+            RttEstimator rtt = this.rtts.track(to);
+            long timeout = (rtt != null) ? rtt.timeout() : this.config.responseTimeout();
+
+            if (this.budget == null)
+            {
+                comm = this.pending.register(recv, timeout, rtt, to, msg, this.retries);
+            }
+            else if (this.budget.tryAcquire(priority))
             {
-                /* Setup the receiver to handle message response */
-                receivers.put(comm, recv);
-                TimerTask task = new TimeoutTask(comm, recv);
-                timer.schedule(task, this.config.responseTimeout());
-                tasks.put(comm, task);
+                try
+                {
+                    comm = this.pending.registerBudgeted(recv, timeout, rtt, to, msg, this.retries);
+                }
+                catch (IOException e)
+                {
+                    this.budget.release();
+                    throw e;
+                }
             }
-            catch (IllegalStateException ex)
+            else
             {
-                /* The timer is already cancelled so we cannot do anything here really */
+                /* No room in the budget, the message is sent once there is */
+                comm = this.pending.reserve(recv, timeout, rtt, to, msg, this.retries);
+                this.budget.queue(comm, to, msg, priority);
+                return comm;
             }
         }
+        else
+        {
+            comm = this.pending.unregisteredId();
+        }
 
         /* Send the message */
         sendMessage(to, msg, comm);
@@ -149,204 +460,532 @@ public class KadServer
      *
      * @throws java.io.IOException
      */
-    public synchronized void reply(Node to, Message msg, int comm) throws IOException
+    public void reply(Node to, Message msg, int comm) throws IOException
     {
         if (!isRunning)
         {
             throw new IllegalStateException("Kad Server is not running.");
         }
-        sendMessage(to, msg, comm);
+
+        /**
+         * Keep a small reply in case the request comes again because the reply got lost; the request is known by where it came from.
+         * Content is looked up again instead, rather than held on to for every request that found it.
+         */
+        InetSocketAddress source = this.requestSource.get();
+        int length;
+        try
+        {
+            length = sendMessage(to, msg, comm);
+        }
+        catch (IOException e)
+        {
+            if (source != null)
+            {
+                this.recent.forget(source, comm);
+            }
+            throw e;
+        }
+
+        if (source != null)
+        {
+            if (msg instanceof ContentMessage)
+            {
+                this.recent.forget(source, comm);
+            }
+            else
+            {
+                this.recent.replied(source, comm, to, msg, length);
+            }
+        }
     }
 
     /**
-     * Internal sendMessage method called by the public sendMessage method after a communicationId is generated
+     * Check whether replyFromFile could send an entry to a node, before the entry's file is looked up
+     *
+     * @param to The Node to send the reply to
+     *
+     * @return Whether an entry big enough to go over a connection would be sent from its file
+     */
+    public boolean mayReplyFromFile(Node to)
+    {
+        return this.config.zeroCopyContent() && this.transport instanceof StreamTransport
+                && this.config.useCompactFormat() && this.features.supports(to.getSocketAddress(), PeerFeatures.COMPACT);
+    }
+
+    /**
+     * Check whether an entry of the given size is big enough to be sent from its file, and small enough to be sent at all
+     *
+     * @param size The size of the entry's file in bytes
+     *
+     * @return Whether replyFromFile could send the entry
+     */
+    public boolean fitsFileReply(long size)
+    {
+        return size >= this.config.streamThreshold() && size <= this.config.maxMessageSize();
+    }
+
+    /**
+     * Reply to a content lookup with a ContentMessage whose entry is sent straight from the file it is stored in,
+     * without decoding it. Only done for entries big enough to go over a connection,
+     * to peers that read the compact format the file is in.
+     *
+     * @param to    The Node to send the reply to
+     * @param entry The file holding the entry, as written by the DHT's serializer
+     * @param comm  The communication ID - the one received
+     *
+     * @return Whether the reply was sent; if not, reply with a ContentMessage as usual
+     *
+     * @throws java.io.IOException
      */
-    private void sendMessage(Node to, Message msg, int comm) throws IOException
+    public boolean replyFromFile(Node to, File entry, int comm) throws IOException
     {
-        /* Use a try-with resource to auto-close streams after usage */
-        try (ByteArrayOutputStream bout = new ByteArrayOutputStream(); DataOutputStream dout = new DataOutputStream(bout);)
+        if (!isRunning)
         {
-            /* Setup the message for transmission */
-            dout.writeInt(comm);
-            dout.writeByte(msg.code());
-            msg.toStream(dout);
-            dout.close();
+            throw new IllegalStateException("Kad Server is not running.");
+        }
 
-            byte[] data = bout.toByteArray();
+        InetSocketAddress address = to.getSocketAddress();
+        if (!this.mayReplyFromFile(to))
+        {
+            return false;
+        }
 
-            if (data.length > DATAGRAM_BUFFER_SIZE)
+        PooledBuffer head = this.buffers.acquire();
+        PooledBuffer tail = this.buffers.acquire();
+        FileChannel file = FileChannel.open(entry.toPath(), StandardOpenOption.READ);
+        boolean queued = false;
+        try
+        {
+            /* The same bytes ContentMessage.toCompactStream() writes, with the entry taken from the file */
+            DataOutputStream hout = head.output();
+            hout.writeInt(comm);
+            hout.writeByte(ContentMessage.COMPACT_CODE);
+            CompactFormat.writeNode(hout, this.localNode);
+            PeerFeatures.writeTrailer(tail.output());
+
+            long size = file.size();
+            long length = head.size() + size + tail.size();
+            if (length < this.config.streamThreshold() || length > this.config.maxMessageSize())
             {
-                throw new IOException("Message is too big");
+                return false;
             }
 
-            /* Everything is good, now create the packet and send it */
-            DatagramPacket pkt = new DatagramPacket(data, 0, data.length);
-            pkt.setSocketAddress(to.getSocketAddress());
-            socket.send(pkt);
+            /**
+             * A duplicate of this request is dropped rather than answered again; the transport doesn't lose the reply,
+             * if the connection fails it sends the reply over UDP instead. Once queued, the transport closes the file.
+             */
+            queued = ((StreamTransport) this.transport).sendFile(head.packet(), file, 0, size, tail.packet(), address);
+            if (!queued)
+            {
+                return false;
+            }
 
-            /* Lets inform the statistician that we've sent some data */
-            this.statistician.sentData(data.length);
+            this.statistician.sentData(length);
+            return true;
+        }
+        finally
+        {
+            head.release();
+            tail.release();
+            if (!queued)
+            {
+                file.close();
+            }
         }
     }
 
     /**
-     * Listen for incoming messages in a separate thread
+     * Send a request that waited for a place in the RPC budget and got it
      */
-    private void listen()
+    private void sendQueued(int comm, Node to, Message request)
     {
+        if (!isRunning || !this.pending.start(comm))
+        {
+            this.budget.release();
+            return;
+        }
+
         try
         {
-            while (isRunning)
+            sendMessage(to, request, comm);
+        }
+        catch (IOException e)
+        {
+            /* The request is re-sent or times out like any other */
+        }
+    }
+
+    /**
+     * Give up on a request that waited too long for a place in the RPC budget
+     */
+    private void abandonQueued(int comm)
+    {
+        Receiver recv = this.pending.abandon(comm);
+        if (recv != null)
+        {
+            try
+            {
+                recv.timeout(comm);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Cannot unregister a receiver. Message: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Send a request again because no reply came in time; runs on the timer thread,
+     * so the request is encoded and sent by the inbound workers
+     */
+    private void retransmit(final int comm, final Node to, final Message request)
+    {
+        if (!isRunning)
+        {
+            return;
+        }
+        this.statistician.retransmitted();
+
+        Runnable resend = new Runnable()
+        {
+            @Override
+            public void run()
             {
                 try
                 {
-                    /* Wait for a packet */
-                    byte[] buffer = new byte[DATAGRAM_BUFFER_SIZE];
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(packet);
-
-                    /* Lets inform the statistician that we've received some data */
-                    this.statistician.receivedData(packet.getLength());
+                    sendMessage(to, request, comm);
+                }
+                catch (IOException e)
+                {
+                    /* The request times out if it doesn't get through this time either */
+                }
+            }
+        };
 
-                    if (this.config.isTesting())
-                    {
-                        /**
-                         * Simulating network latency
-                         * We pause for 1 millisecond/100 bytes
-                         */
-                        int pause = packet.getLength() / 100;
-                        try
-                        {
-                            Thread.sleep(pause);
-                        }
-                        catch (InterruptedException ex)
-                        {
+        this.execute(comm, resend);
+    }
 
-                        }
-                    }
+    /**
+     * Run a task for a conversation on the inbound workers, in order with the conversation's messages;
+     * on the calling thread if there are no workers
+     */
+    private void execute(int comm, Runnable task)
+    {
+        if (this.dispatcher == null)
+        {
+            task.run();
+        }
+        else
+        {
+            this.dispatcher.execute(comm, task);
+        }
+    }
 
-                    /* We've received a packet, now handle it */
-                    try (ByteArrayInputStream bin = new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength());
-                            DataInputStream din = new DataInputStream(bin);)
-                    {
+    /**
+     * Internal sendMessage method called by the public sendMessage method after a communicationId is generated
+     *
+     * @return The number of bytes sent
+     */
+    private int sendMessage(Node to, Message msg, int comm) throws IOException
+    {
+        InetSocketAddress address = to.getSocketAddress();
 
-                        /* Read in the conversation Id to know which handler to handle this response */
-                        int comm = din.readInt();
-                        byte messCode = din.readByte();
+        /* Encode straight into a pooled buffer; a message too big for it spills over onto the heap and is sent in chunks */
+        PooledBuffer buf = this.buffers.acquire();
+        PooledBuffer compressed = null;
+        try
+        {
+            /* Setup the message for transmission */
+            /* Messages that have a compact form go in it to peers that can read it */
+            boolean compact = this.config.useCompactFormat() && msg instanceof CompactMessage
+                    && this.features.supports(address, PeerFeatures.COMPACT);
+            byte code = compact ? ((CompactMessage) msg).compactCode() : msg.code();
 
-                        Message msg = messageFactory.createMessage(messCode, din);
-                        din.close();
+            DataOutputStream dout = buf.output();
+            dout.writeInt(comm);
+            dout.writeByte(code);
+            if (compact)
+            {
+                ((CompactMessage) msg).toCompactStream(dout);
+            }
+            else
+            {
+                msg.toStream(dout);
+            }
 
-                        /* Get a receiver for this message */
-                        Receiver receiver;
-                        if (this.receivers.containsKey(comm))
-                        {
-                            /* If there is a reciever in the receivers to handle this */
-                            synchronized (this)
-                            {
-                                receiver = this.receivers.remove(comm);
-                                TimerTask task = (TimerTask) tasks.remove(comm);
-                                if (task != null)
-                                {
-                                    task.cancel();
-                                }
-                            }
-                        }
-                        else
-                        {
-                            /* There is currently no receivers, try to get one */
-                            receiver = messageFactory.createReceiver(messCode, this);
-                        }
+            /* Compress big messages for peers that told us they can handle it */
+            int threshold = this.config.compressionThreshold();
+            if (threshold > 0 && buf.size() - HEADER_SIZE >= threshold && this.features.supports(address, PeerFeatures.DEFLATE))
+            {
+                compressed = this.buffers.acquire();
+                DataOutputStream cout = compressed.output();
+                cout.writeInt(comm);
+                cout.writeByte(code | COMPRESSED_FLAG);
+                Deflate.compress(buf.toByteArray(), HEADER_SIZE, buf.size() - HEADER_SIZE, cout);
 
-                        /* Invoke the receiver */
-                        if (receiver != null)
-                        {
-                            receiver.receive(msg, comm);
-                        }
-                    }
-                }
-                catch (IOException e)
+                if (compressed.size() < buf.size())
                 {
-                    //this.isRunning = false;
-                    System.err.println("Server ran into a problem in listener method. Message: " + e.getMessage());
+                    PooledBuffer uncompressed = buf;
+                    buf = compressed;
+                    compressed = uncompressed;
+                    dout = cout;
                 }
             }
+
+            PeerFeatures.writeTrailer(dout);
+            if (buf.size() > this.config.maxMessageSize())
+            {
+                throw new MessageTooBigException();
+            }
+
+            ByteBuffer packet = buf.packet();
+            int length = packet.remaining();
+
+            /* Everything is good, now send the packet */
+            transport.send(packet, address);
+
+            /* Lets inform the statistician that we've sent some data */
+            this.statistician.sentData(length);
+            return length;
         }
         finally
         {
-            if (!socket.isClosed())
+            buf.release();
+            if (compressed != null)
             {
-                socket.close();
+                compressed.release();
             }
-            this.isRunning = false;
         }
     }
 
     /**
-     * Remove a conversation receiver
+     * Runs on the listener thread; hands a datagram read by the transport over to the inbound workers.
      *
-     * @param comm The id of this conversation
+     * Datagrams are ordered by conversation ID so replies for the same conversation reach their receiver in order.
      */
-    private synchronized void unregister(int comm)
+    private void dispatch(ByteBuffer packet, final InetSocketAddress source)
     {
-        receivers.remove(comm);
-        this.tasks.remove(comm);
+        /* Lets inform the statistician that we've received some data */
+        this.statistician.receivedData(packet.remaining());
+
+        /* Replies to our requests always get through, requests only if we can take them on */
+        int comm = packet.remaining() >= 4 ? packet.getInt(packet.position()) : 0;
+        final boolean isReply = this.pending.isPending(comm);
+        if (isReply)
+        {
+            this.admission.admitReply();
+        }
+        else if (!this.admission.admitRequest(source))
+        {
+            return;
+        }
+        final long arrived = System.nanoTime();
+
+        /* The transport re-uses its buffer, so copy the datagram into a pooled buffer before leaving the listener thread */
+        final PooledBuffer buf = this.buffers.acquire(packet.remaining());
+        ByteBuffer data = buf.buffer();
+        data.clear();
+        data.put(packet);
+        data.flip();
+
+        if (this.dispatcher == null)
+        {
+            this.handlePacket(buf, source, isReply, arrived);
+            return;
+        }
+
+        this.dispatcher.execute(comm, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                handlePacket(buf, source, isReply, arrived);
+            }
+        });
     }
 
     /**
-     * Stops listening and shuts down the server
+     * Handle an admitted datagram unless it waited so long in the queue that its sender gave up on it
      */
-    public synchronized void shutdown()
+    private void handlePacket(PooledBuffer buf, InetSocketAddress source, boolean isReply, long arrived)
     {
-        this.isRunning = false;
-        this.socket.close();
-        timer.cancel();
+        try
+        {
+            if (!isReply && this.admission.isStale(System.nanoTime() - arrived, this.config.responseTimeout()))
+            {
+                buf.release();
+                return;
+            }
+            this.handlePacket(buf, source);
+        }
+        finally
+        {
+            this.admission.done();
+        }
     }
 
     /**
-     * Task that gets called by a separate thread if a timeout for a receiver occurs.
-     * When a reply arrives this task must be canceled using the <code>cancel()</code>
-     * method inherited from <code>TimerTask</code>. In this case the caller is
-     * responsible for removing the task from the <code>tasks</code> map.
-     * */
-    class TimeoutTask extends TimerTask
+     * Decode a datagram and hand the message to its receiver; releases the buffer when done
+     */
+    private void handlePacket(PooledBuffer buf, InetSocketAddress source)
     {
-
-        private final int comm;
-        private final Receiver recv;
-
-        public TimeoutTask(int comm, Receiver recv)
+        if (this.config.isTesting() && this.config.transport() != TransportType.LOOPBACK)
         {
-            this.comm = comm;
-            this.recv = recv;
+            /**
+             * Simulating network latency; the loopback network has its own latency model
+             * We pause for 1 millisecond/100 bytes
+             */
+            int pause = buf.buffer().remaining() / 100;
+            try
+            {
+                Thread.sleep(pause);
+            }
+            catch (InterruptedException ex)
+            {
+
+            }
         }
 
-        @Override
-        public void run()
+        /* We've received a packet, now handle it */
+        try
         {
-            if (!KadServer.this.isRunning)
+            /* Learn what the sender supports from the trailer, if it sent one */
+            int peerFeatures = PeerFeatures.readTrailer(buf.buffer());
+            if (peerFeatures >= 0)
             {
-                return;
+                this.features.learned(source, (byte) peerFeatures);
             }
 
-            try
+            DataInputStream din = buf.input();
+
+            /* Read in the conversation Id to know which handler to handle this response */
+            int comm = din.readInt();
+            byte messCode = din.readByte();
+
+            if ((messCode & COMPRESSED_FLAG) != 0)
             {
-                unregister(comm);
-                recv.timeout(comm);
+                messCode = (byte) (messCode & ~COMPRESSED_FLAG);
+                din = new DataInputStream(Deflate.decompress(din));
             }
-            catch (IOException e)
+
+            Message msg = messageFactory.createMessage(messCode, din);
+
+            /* The message is decoded, the buffer can go back to the pool */
+            buf.release();
+            buf = null;
+
+            /* Get a receiver for this message; completing the conversation also claims it so a timeout can't fire for it anymore */
+            Receiver receiver = this.pending.complete(comm);
+            boolean isRequest = receiver == null;
+            if (!isRequest)
             {
-                System.err.println("Cannot unregister a receiver. Message: " + e.getMessage());
+                /* It answered our request, so it's a node we really talk to */
+                this.admission.knownContact(source);
+            }
+            else
+            {
+                /* A request we've seen before was sent again because our reply got lost; send the same reply instead of handling it twice */
+                RecentRequests.Entry seen = this.recent.received(source, comm);
+                if (seen != null)
+                {
+                    Message reply = seen.getReply();
+                    if (reply != null)
+                    {
+                        sendMessage(seen.getReplyTo(), reply, comm);
+                    }
+                    return;
+                }
+
+                /* There is currently no receivers, try to get one */
+                receiver = messageFactory.createReceiver(msg.code(), this);
+            }
+
+            /* Invoke the receiver; a request's reply is remembered under the address the request came from */
+            if (receiver != null)
+            {
+                if (isRequest)
+                {
+                    this.requestSource.set(source);
+                }
+                try
+                {
+                    receiver.receive(msg, comm);
+                }
+                finally
+                {
+                    if (isRequest)
+                    {
+                        this.requestSource.remove();
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Server ran into a problem while handling a message. Message: " + e.getMessage());
+        }
+        finally
+        {
+            if (buf != null)
+            {
+                buf.release();
             }
         }
     }
 
-    public void printReceivers()
+    /**
+     * Stops listening and shuts down the server
+     */
+    public synchronized void shutdown()
     {
-        for (Integer r : this.receivers.keySet())
+        this.isRunning = false;
+        this.transport.close();
+        this.admission.stop();
+        if (this.config.transport() != TransportType.LOOPBACK)
         {
-            System.out.println("Receiver for comm: " + r + "; Receiver: " + this.receivers.get(r));
+            timer.stop();
         }
+        if (this.workerPool != null)
+        {
+            this.workerPool.shutdown();
+        }
+    }
+
+    public void printReceivers()
+    {
+        System.out.println(this.pending);
+    }
+
+    /**
+     * @return The table of messages waiting on a reply, for monitoring
+     */
+    public PendingRpcTable getPendingMessages()
+    {
+        return this.pending;
+    }
+
+    /**
+     * @return The budget of requests in flight, or null if there is none
+     */
+    public RpcBudget getRpcBudget()
+    {
+        return this.budget;
+    }
+
+    /**
+     * @return The admission control of incoming messages, for its counters
+     */
+    public AdmissionControl getAdmissionControl()
+    {
+        return this.admission;
+    }
+
+    /**
+     * @return The round trip time estimates of the nodes we sent requests to
+     */
+    public RoundTripTimes getRoundTripTimes()
+    {
+        return this.rtts;
     }
 
     public boolean isRunning()
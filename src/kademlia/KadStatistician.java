@@ -84,4 +84,14 @@ public interface KadStatistician
      * @return The average route length
      */
     public double averageContentLookupRouteLength();
+
+    /**
+     * Used to indicate a request was sent again because its reply didn't come in time
+     */
+    public void retransmitted();
+
+    /**
+     * @return How many requests were sent again
+     */
+    public long numRetransmissions();
 }
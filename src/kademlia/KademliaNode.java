@@ -2,6 +2,7 @@ package kademlia;
 
 import java.io.IOException;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 import kademlia.dht.GetParameter;
 import kademlia.dht.JKademliaStorageEntry;
 import kademlia.dht.KadContent;
@@ -47,6 +48,11 @@ public interface KademliaNode
      */
     public KademliaDHT getDHT();
 
+    /**
+     * @return The executor used to run operations, receivers and refresh work
+     */
+    public ExecutorService getExecutor();
+
     /**
      * @return The current KadConfiguration object being used
      */
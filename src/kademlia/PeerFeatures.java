@@ -0,0 +1,111 @@
+package kademlia;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which optional protocol features each peer supports.
+ *
+ * Every message we send ends with a small trailer: the features we support followed by a magic number.
+ * Older nodes read a message up to its end and never look at the trailer, while newer ones strip it off
+ * before decoding and remember what the sender supports. We only use a feature with a peer once its trailer
+ * has told us the peer can handle it, so nodes of different versions can keep talking to each other.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class PeerFeatures
+{
+
+    /* Feature bits */
+    public static final byte DEFLATE = 0x01;      // Understands compressed messages
+    public static final byte BATCH = 0x02;        // Takes apart datagrams carrying several messages
+    public static final byte COMPACT = 0x04;      // Reads routing and content messages in the compact wire format, version 1
+    public static final byte CHUNK = 0x08;        // Reassembles datagrams sent in chunks
+
+    /* The features this node supports */
+    public static final byte SUPPORTED = DEFLATE | BATCH | COMPACT | CHUNK;
+
+    /* Marks the end of a message as a feature trailer */
+    private static final int MAGIC = 0x4B414446;
+
+    /* Feature byte plus magic number */
+    public static final int TRAILER_SIZE = 5;
+
+    /* Stop learning about new peers beyond this many, so spoofed sources can't grow the table without bound */
+    private static final int MAX_PEERS = 64 * 1024;
+
+    private final Map<InetSocketAddress, Byte> peers;
+
+    
+    {
+        peers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Remember the features a peer told us about
+     *
+     * @param peer     The peer's address
+     * @param features The peer's feature bits
+     */
+    public void learned(InetSocketAddress peer, byte features)
+    {
+        Byte known = this.peers.get(peer);
+        if (known != null && known == features)
+        {
+            return;
+        }
+        if (known != null || this.peers.size() < MAX_PEERS)
+        {
+            this.peers.put(peer, features);
+        }
+    }
+
+    /**
+     * @param peer    The peer's address
+     * @param feature The feature bit
+     *
+     * @return Whether the peer is known to support the feature
+     */
+    public boolean supports(InetSocketAddress peer, byte feature)
+    {
+        Byte known = this.peers.get(peer);
+        return known != null && (known & feature) == feature;
+    }
+
+    /**
+     * Append our feature trailer to a message
+     *
+     * @param out The stream the message was written to
+     *
+     * @throws java.io.IOException
+     */
+    public static void writeTrailer(DataOutputStream out) throws IOException
+    {
+        out.writeByte(SUPPORTED);
+        out.writeInt(MAGIC);
+    }
+
+    /**
+     * Take the feature trailer off the end of a received message, if it has one
+     *
+     * @param packet The message, from its position to its limit; the limit is moved back over the trailer
+     *
+     * @return The sender's feature bits, or -1 if the message has no trailer
+     */
+    public static int readTrailer(ByteBuffer packet)
+    {
+        int end = packet.limit();
+        if (packet.remaining() < TRAILER_SIZE || packet.getInt(end - 4) != MAGIC)
+        {
+            return -1;
+        }
+        int features = packet.get(end - TRAILER_SIZE) & 0xFF;
+        packet.limit(end - TRAILER_SIZE);
+        return features;
+    }
+}
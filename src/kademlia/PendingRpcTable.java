@@ -0,0 +1,669 @@
+package kademlia;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import kademlia.message.Message;
+import kademlia.message.Receiver;
+import kademlia.node.Node;
+import kademlia.util.HashedWheelTimer;
+
+/**
+ * Keeps track of the conversations the KadServer is waiting on a reply for.
+ *
+ * The table is a fixed array of slots indexed by open addressing. A conversation ID is
+ * the slot index combined with a per-slot generation counter, XOR-ed with a random per-table salt,
+ * so finding the slot of a reply is a single array access and an ID can not collide with any other
+ * outstanding conversation. Each slot carries its own deadline and doubles as its timeout task on the timer,
+ * so neither sending nor replying allocates or boxes anything once a slot has been used.
+ * A conversation may carry the round trip estimate of its peer, which is fed the time the reply took,
+ * or told about the timeout if none came.
+ *
+ * A conversation can also keep its request to be sent again when no reply comes in time, each time waiting twice as long,
+ * before it finally times out. The number of times the request was sent is kept in the slot's state word,
+ * so re-sending and completing a conversation can't get in each other's way either.
+ *
+ * When the node has an RPC budget, a conversation can be reserved while its request waits for a place in the budget;
+ * its timeout only starts once the request is sent. The state word also records whether the conversation
+ * holds a place in the budget, which it gives back when it completes or times out.
+ *
+ * A slot's conversation ID and state live in one word that is changed with compare-and-set,
+ * so a reply and a timeout racing for the same conversation can never both win.
+ *
+ * Slot 0 is never used, messages that don't expect a reply get IDs pointing to it.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class PendingRpcTable
+{
+
+    /* Slot states */
+    private static final int FREE = 0;
+    private static final int CLAIMED = 1;      // Being filled in by a sender
+    private static final int PENDING = 2;      // Waiting on a reply
+    private static final int RELEASING = 3;    // Completed, being cleared
+    private static final int QUEUED = 4;       // Waiting for a place in the RPC budget before the request is sent
+
+    /* Next to the state, the state word flags whether the conversation holds a place in the RPC budget and counts how often the request was re-sent */
+    private static final int STATE_MASK = 0x0F;
+    private static final int BUDGETED = 0x10;
+    private static final int ATTEMPT_SHIFT = 8;
+    private static final int MAX_RETRIES = 0xFF;
+
+    private static final int UNREGISTERED_SLOT = 0;
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final int mask;
+    private final int indexBits;
+    private final int salt;
+
+    private final HashedWheelTimer timer;
+    private final Retransmitter retransmitter;
+    private final RpcBudget budget;
+    private final AtomicInteger cursor;
+    private final AtomicInteger pending;
+
+    /**
+     * @param capacity Maximum number of conversations pending at a time; rounded up to a power of 2
+     * @param timer    The timer used to time out conversations
+     */
+    public PendingRpcTable(int capacity, HashedWheelTimer timer)
+    {
+        this(capacity, timer, null);
+    }
+
+    /**
+     * @param capacity      Maximum number of conversations pending at a time; rounded up to a power of 2
+     * @param timer         The timer used to time out conversations
+     * @param retransmitter Sends requests again for conversations registered with retries; may be null
+     */
+    public PendingRpcTable(int capacity, HashedWheelTimer timer, Retransmitter retransmitter)
+    {
+        this(capacity, timer, retransmitter, null);
+    }
+
+    /**
+     * @param capacity      Maximum number of conversations pending at a time; rounded up to a power of 2
+     * @param timer         The timer used to time out conversations
+     * @param retransmitter Sends requests again for conversations registered with retries; may be null
+     * @param budget        The RPC budget conversations give their place in back to; may be null
+     */
+    public PendingRpcTable(int capacity, HashedWheelTimer timer, Retransmitter retransmitter, RpcBudget budget)
+    {
+        int size = 1;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.indexBits = Integer.numberOfTrailingZeros(size);
+        this.salt = new Random().nextInt();
+        this.timer = timer;
+        this.retransmitter = retransmitter;
+        this.budget = budget;
+        this.cursor = new AtomicInteger();
+        this.pending = new AtomicInteger();
+    }
+
+    /**
+     * Register a new conversation.
+     *
+     * @param recv    The receiver to hand the reply or the timeout to
+     * @param timeout Milliseconds to wait for the reply
+     *
+     * @return The communication ID of the new conversation
+     *
+     * @throws IOException If too many conversations are pending already
+     */
+    public int register(Receiver recv, long timeout) throws IOException
+    {
+        return this.register(recv, timeout, null);
+    }
+
+    /**
+     * Register a new conversation, measuring how long its reply takes.
+     *
+     * @param recv    The receiver to hand the reply or the timeout to
+     * @param timeout Milliseconds to wait for the reply
+     * @param rtt     The round trip estimate of the peer the request goes to; may be null
+     *
+     * @return The communication ID of the new conversation
+     *
+     * @throws IOException If too many conversations are pending already
+     */
+    public int register(Receiver recv, long timeout, RttEstimator rtt) throws IOException
+    {
+        return this.register(recv, timeout, rtt, null, null, 0);
+    }
+
+    /**
+     * Register a new conversation whose request is sent again if no reply comes in time.
+     *
+     * @param recv    The receiver to hand the reply or the timeout to
+     * @param timeout Milliseconds to wait for the first reply; doubled for each retry
+     * @param rtt     The round trip estimate of the peer the request goes to; may be null
+     * @param to      The peer the request goes to
+     * @param request The request to send again
+     * @param retries How often to send the request again before timing out
+     *
+     * @return The communication ID of the new conversation
+     *
+     * @throws IOException If too many conversations are pending already
+     */
+    public int register(Receiver recv, long timeout, RttEstimator rtt, Node to, Message request, int retries) throws IOException
+    {
+        return this.add(recv, timeout, rtt, to, request, retries, PENDING);
+    }
+
+    /**
+     * Register a new conversation whose request took a place in the RPC budget.
+     *
+     * @param recv    The receiver to hand the reply or the timeout to
+     * @param timeout Milliseconds to wait for the first reply; doubled for each retry
+     * @param rtt     The round trip estimate of the peer the request goes to; may be null
+     * @param to      The peer the request goes to
+     * @param request The request to send again
+     * @param retries How often to send the request again before timing out
+     *
+     * @return The communication ID of the new conversation
+     *
+     * @throws IOException If too many conversations are pending already
+     */
+    public int registerBudgeted(Receiver recv, long timeout, RttEstimator rtt, Node to, Message request, int retries) throws IOException
+    {
+        return this.add(recv, timeout, rtt, to, request, retries, PENDING | BUDGETED);
+    }
+
+    /**
+     * Reserve a conversation for a request that waits for a place in the RPC budget; call start() once it is sent,
+     * or abandon() if it never will be.
+     *
+     * @param recv    The receiver to hand the reply or the timeout to
+     * @param timeout Milliseconds to wait for the first reply once the request is sent; doubled for each retry
+     * @param rtt     The round trip estimate of the peer the request goes to; may be null
+     * @param to      The peer the request goes to
+     * @param request The request to send again
+     * @param retries How often to send the request again before timing out
+     *
+     * @return The communication ID of the new conversation
+     *
+     * @throws IOException If too many conversations are pending already
+     */
+    public int reserve(Receiver recv, long timeout, RttEstimator rtt, Node to, Message request, int retries) throws IOException
+    {
+        return this.add(recv, timeout, rtt, to, request, retries, QUEUED);
+    }
+
+    /**
+     * The request of a reserved conversation got a place in the RPC budget and is being sent; start waiting on the reply.
+     *
+     * @param comm The communication ID
+     *
+     * @return Whether the conversation was reserved
+     */
+    public boolean start(int comm)
+    {
+        Slot slot = this.slots.get((comm ^ this.salt) & this.mask);
+        if (slot == null || slot.word != pack(comm, QUEUED))
+        {
+            return false;
+        }
+
+        /* Nothing but us touches a reserved slot, so the deadline can be set before the reply can come */
+        slot.sentAt = System.nanoTime();
+        slot.expiresAt = slot.sentAt + slot.timeout * 1000000L;
+        slot.word = pack(comm, PENDING | BUDGETED);
+        slot.arm();
+        return true;
+    }
+
+    /**
+     * Give up on a reserved conversation whose request will never be sent
+     *
+     * @param comm The communication ID
+     *
+     * @return The receiver of the conversation, to tell it about the timeout; null if the conversation was not reserved
+     */
+    public Receiver abandon(int comm)
+    {
+        Slot slot = this.slots.get((comm ^ this.salt) & this.mask);
+        if (slot == null || slot.word != pack(comm, QUEUED))
+        {
+            return null;
+        }
+
+        Receiver recv = slot.receiver;
+        slot.clear();
+        slot.word = pack(comm, FREE);
+        this.pending.decrementAndGet();
+        return recv;
+    }
+
+    /**
+     * Fill in a free slot for a new conversation
+     */
+    private int add(Receiver recv, long timeout, RttEstimator rtt, Node to, Message request, int retries, int state) throws IOException
+    {
+        int start = this.cursor.getAndIncrement();
+        for (int i = 0; i <= this.mask; i++)
+        {
+            int index = (start + i) & this.mask;
+            if (index == UNREGISTERED_SLOT)
+            {
+                continue;
+            }
+            Slot slot = this.slot(index);
+
+            long word = slot.word;
+            if (state(word) != FREE)
+            {
+                continue;
+            }
+
+            /* Next generation of this slot gives the new conversation ID */
+            int generation = ((comm(word) ^ this.salt) >>> this.indexBits) + 1;
+            int comm = ((generation << this.indexBits) | index) ^ this.salt;
+            if (!slot.claim(word, pack(comm, CLAIMED)))
+            {
+                continue;
+            }
+
+            slot.receiver = recv;
+            slot.rtt = rtt;
+            slot.extended = false;
+            slot.to = to;
+            slot.request = request;
+            slot.retries = (this.retransmitter == null || request == null) ? 0 : Math.min(retries, MAX_RETRIES);
+            slot.timeout = timeout;
+            slot.sentAt = System.nanoTime();
+            slot.expiresAt = slot.sentAt + timeout * 1000000L;
+            slot.word = pack(comm, state);
+            this.pending.incrementAndGet();
+
+            if (state != QUEUED)
+            {
+                slot.arm();
+            }
+            return comm;
+        }
+
+        throw new IOException("Too many messages in transit: " + (this.mask + 1));
+    }
+
+    /**
+     * @return A communication ID for a message that does not expect a reply; it never matches a pending conversation
+     */
+    public int unregisteredId()
+    {
+        int generation = ThreadLocalRandom.current().nextInt();
+        return ((generation << this.indexBits) | UNREGISTERED_SLOT) ^ this.salt;
+    }
+
+    /**
+     * Complete a conversation because its reply arrived.
+     *
+     * @param comm The communication ID of the reply
+     *
+     * @return The receiver of the conversation, or null if we are not waiting on this conversation
+     */
+    public Receiver complete(int comm)
+    {
+        Slot slot = this.slots.get((comm ^ this.salt) & this.mask);
+        if (slot == null)
+        {
+            return null;
+        }
+
+        Receiver recv = slot.release(comm, true);
+        if (recv != null)
+        {
+            /* Take the slot off the timer right away, the next conversation in it will put it back */
+            slot.disarm();
+        }
+        return recv;
+    }
+
+    /**
+     * Push back the deadline of a pending conversation, e.g. because its reply is still arriving.
+     *
+     * @param comm    The communication ID
+     * @param timeout Milliseconds from now to wait for the reply
+     *
+     * @return Whether the conversation is pending
+     */
+    public boolean extend(int comm, long timeout)
+    {
+        Slot slot = this.slots.get((comm ^ this.salt) & this.mask);
+        long word = (slot == null) ? 0 : slot.word;
+        if (slot == null || comm(word) != comm || state(word) != PENDING)
+        {
+            return false;
+        }
+
+        /* The slot re-schedules itself on the timer when the old deadline passes; the reply's time is no round trip anymore */
+        slot.extended = true;
+        slot.expiresAt = Math.max(slot.expiresAt, System.nanoTime() + timeout * 1000000L);
+        return true;
+    }
+
+    /**
+     * @param comm A communication ID
+     *
+     * @return Whether we are waiting on a reply for this conversation
+     */
+    public boolean isPending(int comm)
+    {
+        Slot slot = this.slots.get((comm ^ this.salt) & this.mask);
+        if (slot == null)
+        {
+            return false;
+        }
+        long word = slot.word;
+        return comm(word) == comm && state(word) == PENDING;
+    }
+
+    /**
+     * @return Number of conversations waiting on a reply
+     */
+    public int pendingCount()
+    {
+        return this.pending.get();
+    }
+
+    /**
+     * @return Milliseconds the oldest pending conversation has been waiting, 0 if none is pending
+     */
+    public long oldestPendingAge()
+    {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (int i = 0; i <= this.mask; i++)
+        {
+            Slot slot = this.slots.get(i);
+            if (slot != null && state(slot.word) == PENDING)
+            {
+                oldest = Math.max(oldest, now - slot.sentAt);
+            }
+        }
+        return oldest / 1000000L;
+    }
+
+    /**
+     * @return Average number of milliseconds the pending conversations have been waiting, 0 if none is pending
+     */
+    public long averagePendingAge()
+    {
+        long now = System.nanoTime();
+        long total = 0;
+        int count = 0;
+        for (int i = 0; i <= this.mask; i++)
+        {
+            Slot slot = this.slots.get(i);
+            if (slot != null && state(slot.word) == PENDING)
+            {
+                total += now - slot.sentAt;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : total / count / 1000000L;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("PendingRpcTable: ");
+        for (int i = 0; i <= this.mask; i++)
+        {
+            Slot slot = this.slots.get(i);
+            if (slot != null)
+            {
+                long word = slot.word;
+                Receiver recv = slot.receiver;
+                if (state(word) == PENDING && recv != null)
+                {
+                    sb.append("\nReceiver for comm: ").append(comm(word)).append("; Receiver: ").append(recv);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the slot at an index, creating it the first time it is used
+     */
+    private Slot slot(int index)
+    {
+        Slot slot = this.slots.get(index);
+        if (slot == null)
+        {
+            Slot created = new Slot(index ^ this.salt);
+            slot = this.slots.compareAndSet(index, null, created) ? created : this.slots.get(index);
+        }
+        return slot;
+    }
+
+    private static long pack(int comm, int state)
+    {
+        return ((long) comm << 32) | (state & 0xFFFFFFFFL);
+    }
+
+    private static int comm(long word)
+    {
+        return (int) (word >>> 32);
+    }
+
+    private static int state(long word)
+    {
+        return (int) word & STATE_MASK;
+    }
+
+    private static int attempt(long word)
+    {
+        return (int) word >>> ATTEMPT_SHIFT;
+    }
+
+    /**
+     * One entry of the table; also its own timeout task
+     */
+    private class Slot extends HashedWheelTimer.Task
+    {
+
+        /* Not private so the field updaters can reach them */
+        volatile long word;
+        volatile int armed;     // 1 while the slot is on the timer
+        volatile long expiresAt;
+
+        private Receiver receiver;
+        private RttEstimator rtt;
+        private volatile boolean extended;     // The reply took longer because of its size
+        private Node to;
+        private Message request;
+        private int retries;
+        private long timeout;
+        private long sentAt;
+
+        public Slot(int initialComm)
+        {
+            this.word = pack(initialComm, FREE);
+        }
+
+        private boolean claim(long expect, long update)
+        {
+            return WORD.compareAndSet(this, expect, update);
+        }
+
+        /**
+         * Take the receiver of the given conversation out of the slot and free the slot
+         *
+         * @param replied Whether the reply arrived, or the conversation timed out
+         *
+         * @return The receiver, or null if the slot is not waiting on this conversation
+         */
+        private Receiver release(int comm, boolean replied)
+        {
+            long word = this.word;
+            if (comm(word) != comm || state(word) != PENDING || !WORD.compareAndSet(this, word, pack(comm, RELEASING)))
+            {
+                return null;
+            }
+
+            if (this.rtt != null)
+            {
+                if (!replied)
+                {
+                    this.rtt.timedOut();
+                }
+                else if (!this.extended && attempt(word) == 0)
+                {
+                    /* A reply to a re-sent request may be the reply to any of the copies, so it tells nothing about the round trip */
+                    this.rtt.sample(System.nanoTime() - this.sentAt);
+                }
+            }
+
+            Receiver recv = this.receiver;
+            this.clear();
+            this.word = pack(comm, FREE);
+            pending.decrementAndGet();
+
+            if ((word & BUDGETED) != 0 && budget != null)
+            {
+                budget.release();
+            }
+            return recv;
+        }
+
+        /**
+         * Drop the references of a finished conversation
+         */
+        private void clear()
+        {
+            this.receiver = null;
+            this.rtt = null;
+            this.to = null;
+            this.request = null;
+        }
+
+        /**
+         * Put the slot on the timer unless it is already there
+         */
+        private void arm()
+        {
+            if (!ARMED.compareAndSet(this, 0, 1))
+            {
+                /* Still on the timer from an earlier conversation, it re-schedules itself for this one when it fires */
+                return;
+            }
+
+            long remaining = this.expiresAt - System.nanoTime();
+            try
+            {
+                timer.schedule(this, Math.max(0, (remaining + 999999L) / 1000000L));
+            }
+            catch (IllegalStateException e)
+            {
+                /* The timer is already stopped so we cannot do anything here really */
+                this.armed = 0;
+            }
+        }
+
+        /**
+         * Take the slot off the timer; if a new conversation moved in meanwhile, put it back on for that one
+         */
+        private void disarm()
+        {
+            if (timer.cancel(this))
+            {
+                this.armed = 0;
+                if (state(this.word) == PENDING)
+                {
+                    this.arm();
+                }
+            }
+        }
+
+        /**
+         * Count another attempt of the conversation, push back its deadline and send the request again
+         */
+        private void retransmit(long word, long expires)
+        {
+            Node peer = this.to;
+            Message msg = this.request;
+            long backoff = this.timeout << (attempt(word) + 1);
+
+            int comm = comm(word);
+            long next = word + (1L << ATTEMPT_SHIFT);
+            if (peer == null || msg == null || !WORD.compareAndSet(this, word, next))
+            {
+                /* Completed meanwhile */
+                return;
+            }
+
+            /* Only if no new conversation moved in and set its own deadline meanwhile */
+            EXPIRES.compareAndSet(this, expires, System.nanoTime() + backoff * 1000000L);
+            if (this.rtt != null)
+            {
+                this.rtt.timedOut();
+            }
+            retransmitter.retransmit(comm, peer, msg);
+        }
+
+        @Override
+        public void run()
+        {
+            long word = this.word;
+            long expires = this.expiresAt;
+            if (state(word) == PENDING && System.nanoTime() - expires >= 0 && attempt(word) < this.retries)
+            {
+                this.retransmit(word, expires);
+            }
+            else if (state(word) == PENDING && System.nanoTime() - expires >= 0)
+            {
+                int comm = comm(word);
+                Receiver recv = this.release(comm, false);
+                if (recv != null)
+                {
+                    try
+                    {
+                        recv.timeout(comm);
+                    }
+                    catch (IOException e)
+                    {
+                        System.err.println("Cannot unregister a receiver. Message: " + e.getMessage());
+                    }
+                }
+            }
+
+            /* Off the timer now; stay on it if a conversation that has not expired yet moved in */
+            this.armed = 0;
+            if (state(this.word) == PENDING)
+            {
+                this.arm();
+            }
+        }
+    }
+
+    private static final AtomicLongFieldUpdater<Slot> WORD = AtomicLongFieldUpdater.newUpdater(Slot.class, "word");
+    private static final AtomicLongFieldUpdater<Slot> EXPIRES = AtomicLongFieldUpdater.newUpdater(Slot.class, "expiresAt");
+    private static final AtomicIntegerFieldUpdater<Slot> ARMED = AtomicIntegerFieldUpdater.newUpdater(Slot.class, "armed");
+
+    /**
+     * Sends a request again
+     */
+    public interface Retransmitter
+    {
+
+        /**
+         * @param comm    The communication ID of the conversation
+         * @param to      The peer to send the request to
+         * @param request The request
+         */
+        public void retransmit(int comm, Node to, Message request);
+    }
+}
@@ -0,0 +1,244 @@
+package kademlia;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import kademlia.message.Message;
+import kademlia.node.Node;
+import kademlia.util.HashedWheelTimer;
+
+/**
+ * Remembers the requests we received recently, so a request sent to us again because our reply got lost
+ * is answered with the same reply instead of being handled twice.
+ *
+ * A request is identified by the address it came from and its communication ID; it is remembered
+ * for as long as its sender may still send it again.
+ *
+ * Only small replies are kept, within a bound on the bytes all kept replies take. A request whose reply isn't kept
+ * is forgotten, so if it comes again it is handled again.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class RecentRequests
+{
+
+    /* Stop remembering requests beyond this many; later ones are just handled every time they arrive */
+    private static final int MAX_REQUESTS = 64 * 1024;
+
+    /* Most bytes of replies kept at a time */
+    private static final long MAX_REPLY_BYTES = 16 * 1024 * 1024;
+
+    private final HashedWheelTimer timer;
+    private final long lifetime;
+    private final int maxReplySize;
+    private final Map<Key, Entry> requests;
+    private final AtomicLong replyBytes;
+
+
+    {
+        requests = new ConcurrentHashMap<>();
+        replyBytes = new AtomicLong();
+    }
+
+    /**
+     * @param timer        The timer used to forget requests
+     * @param lifetime     Milliseconds to remember a request
+     * @param maxReplySize Largest reply to keep, in bytes as sent
+     */
+    public RecentRequests(HashedWheelTimer timer, long lifetime, int maxReplySize)
+    {
+        this.timer = timer;
+        this.lifetime = lifetime;
+        this.maxReplySize = maxReplySize;
+    }
+
+    /**
+     * Remember a request unless we already have it
+     *
+     * @param source The address the request came from
+     * @param comm   The communication ID of the request
+     *
+     * @return null if this is the first time we see the request, otherwise the earlier request
+     */
+    public Entry received(InetSocketAddress source, int comm)
+    {
+        Key key = new Key(source, comm);
+        Entry seen = this.requests.get(key);
+        if (seen != null || this.requests.size() >= MAX_REQUESTS)
+        {
+            return seen;
+        }
+
+        Entry created = new Entry(key);
+        seen = this.requests.putIfAbsent(key, created);
+        if (seen == null)
+        {
+            try
+            {
+                this.timer.schedule(created, this.lifetime);
+            }
+            catch (IllegalStateException e)
+            {
+                /* The timer is stopped, we are shutting down */
+                this.requests.remove(key, created);
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Remember the reply to a request, so it can be sent again; if the reply is too big to keep, forget the request
+     *
+     * @param source The address the request came from, as given to received(); not the address the sender advertises
+     * @param comm   The communication ID of the request
+     * @param to     The node the reply goes to
+     * @param reply  The reply
+     * @param size   The size of the reply as sent
+     */
+    public void replied(InetSocketAddress source, int comm, Node to, Message reply, int size)
+    {
+        Entry seen = this.requests.get(new Key(source, comm));
+        if (seen == null)
+        {
+            return;
+        }
+
+        /* The entry's lock keeps it from expiring while its reply's bytes are counted */
+        synchronized (seen)
+        {
+            if (seen.reply != null || this.requests.get(seen.key) != seen)
+            {
+                return;
+            }
+
+            if (size <= this.maxReplySize && this.replyBytes.addAndGet(size) <= MAX_REPLY_BYTES)
+            {
+                seen.to = to;
+                seen.size = size;
+                seen.reply = reply;
+                return;
+            }
+            if (size <= this.maxReplySize)
+            {
+                this.replyBytes.addAndGet(-size);
+            }
+        }
+        this.forget(seen);
+    }
+
+    /**
+     * Forget a request, so if it comes again it is handled again
+     *
+     * @param source The address the request came from, as given to received()
+     * @param comm   The communication ID of the request
+     */
+    public void forget(InetSocketAddress source, int comm)
+    {
+        Entry seen = this.requests.get(new Key(source, comm));
+        if (seen != null)
+        {
+            this.forget(seen);
+        }
+    }
+
+    private void forget(Entry seen)
+    {
+        this.timer.cancel(seen);
+        seen.remove();
+    }
+
+    /**
+     * @return Number of requests remembered
+     */
+    public int size()
+    {
+        return this.requests.size();
+    }
+
+    /**
+     * @return Bytes of replies kept
+     */
+    public long replyBytes()
+    {
+        return this.replyBytes.get();
+    }
+
+    /**
+     * A request we received
+     */
+    public class Entry extends HashedWheelTimer.Task
+    {
+
+        private final Key key;
+        private volatile Node to;
+        private int size;
+        private volatile Message reply;
+
+        private Entry(Key key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * @return The node we replied to, or null if we didn't reply yet
+         */
+        public Node getReplyTo()
+        {
+            return this.to;
+        }
+
+        /**
+         * @return Our reply, or null if we didn't reply yet
+         */
+        public Message getReply()
+        {
+            return this.reply;
+        }
+
+        @Override
+        public void run()
+        {
+            this.remove();
+        }
+
+        private synchronized void remove()
+        {
+            if (requests.remove(this.key, this))
+            {
+                replyBytes.addAndGet(-this.size);
+            }
+        }
+    }
+
+    private static class Key
+    {
+
+        private final InetSocketAddress source;
+        private final int comm;
+
+        public Key(InetSocketAddress source, int comm)
+        {
+            this.source = source;
+            this.comm = comm;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (o instanceof Key)
+            {
+                Key k = (Key) o;
+                return this.comm == k.comm && this.source.equals(k.source);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * this.source.hashCode() + this.comm;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package kademlia;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+
+/**
+ * Keeps a round trip time estimate for each node we send requests to.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class RoundTripTimes
+{
+
+    /* Stop tracking new nodes beyond this many; the rest just get the maximum timeout */
+    private static final int MAX_PEERS = 64 * 1024;
+
+    private final long minTimeout;
+    private final long maxTimeout;
+    private final long initialTimeout;
+    private final Map<KademliaId, RttEstimator> peers;
+
+
+    {
+        peers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param minTimeout Least number of milliseconds to wait for a reply
+     * @param maxTimeout Most milliseconds to wait for a reply
+     */
+    public RoundTripTimes(long minTimeout, long maxTimeout)
+    {
+        this(minTimeout, maxTimeout, maxTimeout);
+    }
+
+    /**
+     * @param minTimeout     Least number of milliseconds to wait for a reply
+     * @param maxTimeout     Most milliseconds to wait for a reply
+     * @param initialTimeout Milliseconds to wait for a node whose round trips we did not measure yet
+     */
+    public RoundTripTimes(long minTimeout, long maxTimeout, long initialTimeout)
+    {
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.initialTimeout = initialTimeout;
+    }
+
+    /**
+     * Get the estimate for a node, starting one if this is the first request to it
+     *
+     * @param n The node
+     *
+     * @return The estimate, or null if there are too many nodes tracked already
+     */
+    public RttEstimator track(Node n)
+    {
+        RttEstimator estimator = this.peers.get(n.getNodeId());
+        if (estimator == null && this.peers.size() < MAX_PEERS)
+        {
+            RttEstimator created = new RttEstimator(this.minTimeout, this.maxTimeout, this.initialTimeout);
+            estimator = this.peers.putIfAbsent(n.getNodeId(), created);
+            if (estimator == null)
+            {
+                estimator = created;
+            }
+        }
+        return estimator;
+    }
+
+    /**
+     * @param n The node
+     *
+     * @return The estimate for the node, or null if we never sent it a request
+     */
+    public RttEstimator get(Node n)
+    {
+        return this.peers.get(n.getNodeId());
+    }
+
+    /**
+     * @param n The node
+     *
+     * @return The smoothed round trip time to the node in milliseconds; the maximum timeout if it is not measured yet
+     */
+    public double expectedRtt(Node n)
+    {
+        RttEstimator estimator = this.peers.get(n.getNodeId());
+        return (estimator == null || estimator.samples() == 0) ? this.maxTimeout : estimator.smoothedRtt();
+    }
+}
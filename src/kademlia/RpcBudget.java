@@ -0,0 +1,243 @@
+package kademlia;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import kademlia.message.Message;
+import kademlia.node.Node;
+
+/**
+ * Bounds the number of requests a node has in flight across all of its operations.
+ *
+ * Requests that don't fit into the budget wait in a queue per priority and are sent as earlier requests
+ * are answered or time out. Interactive requests are always sent before waiting maintenance ones,
+ * and maintenance requests may only take up part of the budget, so a burst of refreshes never
+ * keeps a user's lookup waiting for long. Requests that wait too long are given up on.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class RpcBudget
+{
+
+    /* Maintenance requests may use at most this share of the budget */
+    private static final double MAINTENANCE_SHARE = 0.75;
+
+    private final int capacity;
+    private final int maintenanceCapacity;
+    private final long maxWait;
+    private final Sender sender;
+
+    private final AtomicInteger inFlight;
+    private final Queue<QueuedRpc> interactive;
+    private final Queue<QueuedRpc> maintenance;
+    private final AtomicInteger queued;
+    private final AtomicInteger drainers;      // Threads that want the queues drained; only the first one does it
+
+
+    {
+        inFlight = new AtomicInteger();
+        interactive = new ConcurrentLinkedQueue<>();
+        maintenance = new ConcurrentLinkedQueue<>();
+        queued = new AtomicInteger();
+        drainers = new AtomicInteger();
+    }
+
+    /**
+     * @param capacity Most requests in flight at a time
+     * @param maxWait  Milliseconds a request may wait for the budget before it is given up on
+     * @param sender   Sends the requests that waited once the budget allows
+     */
+    public RpcBudget(int capacity, long maxWait, Sender sender)
+    {
+        this.capacity = Math.max(1, capacity);
+        this.maintenanceCapacity = Math.max(1, (int) (this.capacity * MAINTENANCE_SHARE));
+        this.maxWait = maxWait;
+        this.sender = sender;
+    }
+
+    /**
+     * Take a place in the budget if there is one and no request of the same or a higher priority is waiting
+     *
+     * @param priority The priority of the request
+     *
+     * @return Whether the request may be sent now; if not, queue() it
+     */
+    public boolean tryAcquire(RpcPriority priority)
+    {
+        if (!this.interactive.isEmpty() || (priority == RpcPriority.MAINTENANCE && !this.maintenance.isEmpty()))
+        {
+            return false;
+        }
+        return this.acquire(priority);
+    }
+
+    private boolean acquire(RpcPriority priority)
+    {
+        int limit = (priority == RpcPriority.INTERACTIVE) ? this.capacity : this.maintenanceCapacity;
+        int current;
+        do
+        {
+            current = this.inFlight.get();
+            if (current >= limit)
+            {
+                return false;
+            }
+        }
+        while (!this.inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Queue a request to be sent once the budget allows
+     *
+     * @param comm     The communication ID of the request
+     * @param to       The node to send the request to
+     * @param request  The request
+     * @param priority The priority of the request
+     */
+    public void queue(int comm, Node to, Message request, RpcPriority priority)
+    {
+        QueuedRpc rpc = new QueuedRpc(comm, to, request);
+        this.queued.incrementAndGet();
+        (priority == RpcPriority.INTERACTIVE ? this.interactive : this.maintenance).add(rpc);
+        this.drain();
+    }
+
+    /**
+     * A request that held a place in the budget was answered or timed out
+     */
+    public void release()
+    {
+        this.inFlight.decrementAndGet();
+        this.drain();
+    }
+
+    /**
+     * Send waiting requests for as long as the budget allows
+     */
+    private void drain()
+    {
+        if (this.drainers.getAndIncrement() != 0)
+        {
+            /* Another thread is draining and will go round again for us */
+            return;
+        }
+
+        int missed = 1;
+        do
+        {
+            while (this.drainOne(this.interactive, RpcPriority.INTERACTIVE))
+            {
+                /* Interactive requests first */
+            }
+            if (this.interactive.isEmpty())
+            {
+                while (this.drainOne(this.maintenance, RpcPriority.MAINTENANCE))
+                {
+                    /* Then maintenance, as long as no interactive request waits */
+                }
+            }
+            missed = this.drainers.addAndGet(-missed);
+        }
+        while (missed != 0);
+    }
+
+    /**
+     * Send the request at the head of a queue if the budget allows, or give up on it if it waited too long
+     *
+     * @return Whether a request was taken off the queue
+     */
+    private boolean drainOne(Queue<QueuedRpc> queue, RpcPriority priority)
+    {
+        QueuedRpc rpc = queue.peek();
+        if (rpc == null)
+        {
+            return false;
+        }
+
+        if ((System.nanoTime() - rpc.queuedAt) / 1000000L > this.maxWait)
+        {
+            queue.poll();
+            this.queued.decrementAndGet();
+            this.sender.abandon(rpc.comm);
+            return true;
+        }
+
+        if (!this.acquire(priority))
+        {
+            return false;
+        }
+
+        /* We are the only thread draining, so the head is still the request we looked at */
+        queue.poll();
+        this.queued.decrementAndGet();
+        this.sender.send(rpc.comm, rpc.to, rpc.request);
+        return true;
+    }
+
+    /**
+     * @return Number of requests holding a place in the budget
+     */
+    public int inFlight()
+    {
+        return this.inFlight.get();
+    }
+
+    /**
+     * @return Number of requests waiting for the budget
+     */
+    public int queued()
+    {
+        return this.queued.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RpcBudget: [In Flight: " + this.inFlight() + "/" + this.capacity + "; Queued: " + this.queued() + "; ]";
+    }
+
+    /**
+     * Sends the requests that waited for the budget.
+     *
+     * It is called on the thread that queued a request or freed a place in the budget, which may be holding
+     * an operation's lock or be the timer thread, so it should hand the work to another thread.
+     */
+    public interface Sender
+    {
+
+        /**
+         * Send a request; it holds a place in the budget
+         *
+         * @param comm    The communication ID of the request
+         * @param to      The node to send the request to
+         * @param request The request
+         */
+        public void send(int comm, Node to, Message request);
+
+        /**
+         * Give up on a request that waited too long; it holds no place in the budget
+         *
+         * @param comm The communication ID of the request
+         */
+        public void abandon(int comm);
+    }
+
+    private static class QueuedRpc
+    {
+
+        private final int comm;
+        private final Node to;
+        private final Message request;
+        private final long queuedAt;
+
+        public QueuedRpc(int comm, Node to, Message request)
+        {
+            this.comm = comm;
+            this.to = to;
+            this.request = request;
+            this.queuedAt = System.nanoTime();
+        }
+    }
+}
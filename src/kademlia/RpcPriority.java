@@ -0,0 +1,21 @@
+package kademlia;
+
+/**
+ * How urgent a request is when the node has many requests in flight.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public enum RpcPriority
+{
+
+    /**
+     * Requests made on behalf of the application, e.g. for a get or a put
+     */
+    INTERACTIVE,
+
+    /**
+     * Requests that keep the routing table and the stored content up to date, e.g. bucket refreshes
+     */
+    MAINTENANCE
+}
@@ -0,0 +1,117 @@
+package kademlia;
+
+/**
+ * Keeps a smoothed round trip time and its variation for one peer, and derives from them how long to wait for the peer's replies.
+ *
+ * This is the retransmission timeout estimator of TCP (RFC 6298): every measured round trip moves the smoothed RTT
+ * an eighth and the variation a quarter of the way towards the new sample, and the timeout is the smoothed RTT plus
+ * four times the variation, kept between a minimum and a maximum. Each time the peer doesn't answer,
+ * the timeout is doubled until a reply is measured again, so a peer that went away stops getting short timeouts.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class RttEstimator
+{
+
+    private final long minTimeout;
+    private final long maxTimeout;
+
+    /* Kept in microseconds so short round trips don't get rounded away */
+    private volatile long srtt;
+    private volatile long rttvar;
+    private volatile int samples;
+
+    private volatile long timeout;     // in milliseconds
+
+    /**
+     * @param minTimeout Least number of milliseconds to wait for a reply
+     * @param maxTimeout Most milliseconds to wait for a reply; also used until we measured a round trip
+     */
+    public RttEstimator(long minTimeout, long maxTimeout)
+    {
+        this(minTimeout, maxTimeout, maxTimeout);
+    }
+
+    /**
+     * @param minTimeout     Least number of milliseconds to wait for a reply
+     * @param maxTimeout     Most milliseconds to wait for a reply
+     * @param initialTimeout Milliseconds to wait until we measured a round trip
+     */
+    public RttEstimator(long minTimeout, long maxTimeout, long initialTimeout)
+    {
+        this.minTimeout = Math.min(minTimeout, maxTimeout);
+        this.maxTimeout = maxTimeout;
+        this.timeout = Math.max(this.minTimeout, Math.min(maxTimeout, initialTimeout));
+    }
+
+    /**
+     * Add a measured round trip
+     *
+     * @param rtt Nanoseconds between sending a request and receiving its reply
+     */
+    public synchronized void sample(long rtt)
+    {
+        long r = Math.max(1, rtt / 1000L);
+        if (this.samples == 0)
+        {
+            this.srtt = r;
+            this.rttvar = r / 2;
+        }
+        else
+        {
+            this.rttvar = this.rttvar - (this.rttvar >> 2) + (Math.abs(this.srtt - r) >> 2);
+            this.srtt = this.srtt - (this.srtt >> 3) + (r >> 3);
+        }
+        this.samples++;
+
+        long t = (this.srtt + 4 * this.rttvar + 999L) / 1000L;
+        this.timeout = Math.max(this.minTimeout, Math.min(this.maxTimeout, t));
+    }
+
+    /**
+     * The peer didn't answer in time; back off
+     */
+    public synchronized void timedOut()
+    {
+        this.timeout = Math.min(this.maxTimeout, 2 * this.timeout);
+    }
+
+    /**
+     * @return Milliseconds to wait for the next reply from this peer
+     */
+    public long timeout()
+    {
+        return this.timeout;
+    }
+
+    /**
+     * @return The smoothed round trip time in milliseconds, or -1 if no round trip was measured yet
+     */
+    public double smoothedRtt()
+    {
+        return this.samples == 0 ? -1 : this.srtt / 1000.0;
+    }
+
+    /**
+     * @return The variation of the round trip time in milliseconds, or -1 if no round trip was measured yet
+     */
+    public double rttVariation()
+    {
+        return this.samples == 0 ? -1 : this.rttvar / 1000.0;
+    }
+
+    /**
+     * @return Number of round trips measured
+     */
+    public int samples()
+    {
+        return this.samples;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("SRTT: %.2f ms; RTTVAR: %.2f ms; Timeout: %d ms; Samples: %d", this.smoothedRtt(), this.rttVariation(), this.timeout, this.samples);
+    }
+}
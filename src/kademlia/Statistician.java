@@ -1,6 +1,7 @@
 package kademlia;
 
 import java.text.DecimalFormat;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class that keeps statistics for this Kademlia instance.
@@ -13,9 +14,9 @@ import java.text.DecimalFormat;
 public class Statistician implements KadStatistician
 {
 
-    /* How much data was sent and received by the server over the network */
-    private long totalDataSent, totalDataReceived;
-    private long numDataSent, numDataReceived;
+    /* How much data was sent and received by the server over the network; counted from many threads at once */
+    private final AtomicLong totalDataSent, totalDataReceived;
+    private final AtomicLong numDataSent, numDataReceived;
 
     /* Bootstrap timings */
     private long bootstrapTime;
@@ -25,49 +26,46 @@ public class Statistician implements KadStatistician
     private long totalContentLookupTime;
     private long totalRouteLength;
 
+    /* Requests sent again because no reply came in time */
+    private final AtomicLong numRetransmissions;
+
     
     {
-        this.totalDataSent = 0;
-        this.totalDataReceived = 0;
+        this.totalDataSent = new AtomicLong();
+        this.totalDataReceived = new AtomicLong();
+        this.numDataSent = new AtomicLong();
+        this.numDataReceived = new AtomicLong();
         this.bootstrapTime = 0;
         this.numContentLookups = 0;
         this.totalContentLookupTime = 0;
         this.totalRouteLength = 0;
+        this.numRetransmissions = new AtomicLong();
     }
 
     @Override
     public void sentData(long size)
     {
-        this.totalDataSent += size;
-        this.numDataSent++;
+        this.totalDataSent.addAndGet(size);
+        this.numDataSent.incrementAndGet();
     }
 
     @Override
     public long getTotalDataSent()
     {
-        if (this.totalDataSent == 0)
-        {
-            return 0L;
-        }
-        
-        return this.totalDataSent / 1000L;
+        return this.totalDataSent.get() / 1000L;
     }
 
     @Override
     public void receivedData(long size)
     {
-        this.totalDataReceived += size;
-        this.numDataReceived++;
+        this.totalDataReceived.addAndGet(size);
+        this.numDataReceived.incrementAndGet();
     }
 
     @Override
     public long getTotalDataReceived()
     {
-        if (this.totalDataReceived == 0)
-        {
-            return 0L;
-        }
-        return this.totalDataReceived / 1000L;
+        return this.totalDataReceived.get() / 1000L;
     }
 
     @Override
@@ -140,6 +138,18 @@ public class Statistician implements KadStatistician
         return new Double(df.format(avg));
     }
 
+    @Override
+    public void retransmitted()
+    {
+        this.numRetransmissions.incrementAndGet();
+    }
+
+    @Override
+    public long numRetransmissions()
+    {
+        return this.numRetransmissions.get();
+    }
+
     @Override
     public String toString()
     {
@@ -151,14 +161,14 @@ public class Statistician implements KadStatistician
 
         sb.append("Data Sent: ");
         sb.append("(");
-        sb.append(this.numDataSent);
+        sb.append(this.numDataSent.get());
         sb.append(") ");
         sb.append(this.getTotalDataSent());
         sb.append(" bytes; ");
 
         sb.append("Data Received: ");
         sb.append("(");
-        sb.append(this.numDataReceived);
+        sb.append(this.numDataReceived.get());
         sb.append(") ");
         sb.append(this.getTotalDataReceived());
         sb.append(" bytes; ");
@@ -171,6 +181,10 @@ public class Statistician implements KadStatistician
         sb.append(this.averageContentLookupTime());
         sb.append("; ");
 
+        sb.append("Retransmissions: ");
+        sb.append(this.numRetransmissions());
+        sb.append("; ");
+
         sb.append("Avg Content Lookup Route Lth: ");
         sb.append(this.averageContentLookupRouteLength());
         sb.append("; ");
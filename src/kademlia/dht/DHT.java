@@ -1,5 +1,6 @@
 package kademlia.dht;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -7,12 +8,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.NoSuchElementException;
 import kademlia.KadConfiguration;
 import kademlia.exceptions.ContentExistException;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
+import kademlia.util.serializer.BinaryStorageEntrySerializer;
 import kademlia.util.serializer.JsonSerializer;
 import kademlia.util.serializer.KadSerializer;
 
@@ -27,6 +31,7 @@ public class DHT implements KademliaDHT
 
     private transient StoredContentManager contentManager;
     private transient KadSerializer<JKademliaStorageEntry> serializer = null;
+    private transient KadSerializer<JKademliaStorageEntry> jsonSerializer = null;
     private transient KadConfiguration config;
 
     private final String ownerId;
@@ -55,12 +60,26 @@ public class DHT implements KademliaDHT
     {
         if (null == serializer)
         {
-            serializer = new JsonSerializer<>();
+            /* Content files hold entries in the same layout as they go on the wire, so they can be sent as they are */
+            serializer = new BinaryStorageEntrySerializer();
         }
 
         return serializer;
     }
 
+    /**
+     * @return The serializer content files were written with by earlier versions
+     */
+    private KadSerializer<JKademliaStorageEntry> getJsonSerializer()
+    {
+        if (null == jsonSerializer)
+        {
+            jsonSerializer = new JsonSerializer<>();
+        }
+
+        return jsonSerializer;
+    }
+
     @Override
     public boolean store(JKademliaStorageEntry content) throws IOException
     {
@@ -99,17 +118,30 @@ public class DHT implements KademliaDHT
         try
         {
             //System.out.println("Adding new content.");
-            /* Keep track of this content in the entries manager */
-            KademliaStorageEntryMetadata sEntry = this.contentManager.put(content.getContentMetadata());
-
-            /* Now we store the content locally in a file */
-            String contentStorageFolder = this.getContentStorageFolderName(content.getContentMetadata().getKey());
+            /**
+             * Store the content locally in a file first;
+             * receivers run concurrently, so a lookup must never find the entry before its file is written.
+             * The file is written aside and moved into place in one step, since a reply may be sending the old file from disk.
+             */
+            File file = this.getContentFile(content.getContentMetadata().getKey(), content.getContentMetadata().hashCode());
+            File written = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
 
-            try (FileOutputStream fout = new FileOutputStream(contentStorageFolder + File.separator + sEntry.hashCode() + ".kct");
-                    DataOutputStream dout = new DataOutputStream(fout))
+            try
+            {
+                try (FileOutputStream fout = new FileOutputStream(written);
+                        DataOutputStream dout = new DataOutputStream(fout))
+                {
+                    this.getSerializer().write(content, dout);
+                }
+                Files.move(written.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally
             {
-                this.getSerializer().write(content, dout);
+                written.delete();
             }
+
+            /* Now keep track of this content in the entries manager */
+            this.contentManager.put(content.getContentMetadata());
             return true;
         }
         catch (ContentExistException e)
@@ -132,9 +164,78 @@ public class DHT implements KademliaDHT
     @Override
     public JKademliaStorageEntry retrieve(KademliaId key, int hashCode) throws FileNotFoundException, IOException, ClassNotFoundException
     {
-        String folder = this.getContentStorageFolderName(key);
-        DataInputStream din = new DataInputStream(new FileInputStream(folder + File.separator + hashCode + ".kct"));
-        return this.getSerializer().read(din);
+        try (DataInputStream din = new DataInputStream(new BufferedInputStream(new FileInputStream(this.getContentFile(key, hashCode)))))
+        {
+            /* Files written by earlier versions hold a JSON array */
+            din.mark(1);
+            boolean isJson = din.read() == '[';
+            din.reset();
+
+            return isJson ? this.getJsonSerializer().read(din) : this.getSerializer().read(din);
+        }
+    }
+
+    @Override
+    public File getContentFile(GetParameter param) throws NoSuchElementException, IOException
+    {
+        KademliaStorageEntryMetadata e = this.contentManager.get(param);
+        File file = this.getContentFile(e.getKey(), e.hashCode());
+
+        if (isJson(file))
+        {
+            this.convertToBinary(e, file);
+        }
+
+        return file;
+    }
+
+    @Override
+    public long getContentSize(GetParameter param) throws NoSuchElementException
+    {
+        KademliaStorageEntryMetadata e = this.contentManager.get(param);
+        return this.getContentFile(e.getKey(), e.hashCode()).length();
+    }
+
+    /**
+     * Rewrite a content file written in JSON by an earlier version in the current layout, replacing the old file in one step
+     */
+    private synchronized void convertToBinary(KademliaStorageEntryMetadata e, File file) throws IOException
+    {
+        if (!isJson(file))
+        {
+            /* Another lookup converted it meanwhile */
+            return;
+        }
+
+        JKademliaStorageEntry entry;
+        try
+        {
+            entry = this.retrieve(e.getKey(), e.hashCode());
+        }
+        catch (ClassNotFoundException ex)
+        {
+            throw new IOException("The class for some content was not found. Message: " + ex.getMessage());
+        }
+
+        File converted = new File(file.getPath() + ".tmp");
+        try (DataOutputStream dout = new DataOutputStream(new FileOutputStream(converted)))
+        {
+            this.getSerializer().write(entry, dout);
+        }
+        Files.move(converted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean isJson(File file) throws IOException
+    {
+        try (FileInputStream fin = new FileInputStream(file))
+        {
+            return fin.read() == '[';
+        }
+    }
+
+    private File getContentFile(KademliaId key, int hashCode)
+    {
+        return new File(this.getContentStorageFolderName(key) + File.separator + hashCode + ".kct");
     }
 
     @Override
@@ -194,8 +295,7 @@ public class DHT implements KademliaDHT
     @Override
     public void remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException
     {
-        String folder = this.getContentStorageFolderName(entry.getKey());
-        File file = new File(folder + File.separator + entry.hashCode() + ".kct");
+        File file = this.getContentFile(entry.getKey(), entry.hashCode());
 
         contentManager.remove(entry);
 
@@ -23,6 +23,18 @@ public class JKademliaStorageEntry implements KademliaStorageEntry
         this.metadata = metadata;
     }
 
+    /**
+     * A storage entry read back from its content and metadata, as written by a binary serializer
+     *
+     * @param content  The content in byte format
+     * @param metadata The metadata of the content
+     */
+    public JKademliaStorageEntry(final byte[] content, final StorageEntryMetadata metadata)
+    {
+        this.setContent(content);
+        this.metadata = metadata;
+    }
+
     @Override
     public final void setContent(final byte[] data)
     {
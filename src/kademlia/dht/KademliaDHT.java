@@ -1,5 +1,6 @@
 package kademlia.dht;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
@@ -94,6 +95,28 @@ public interface KademliaDHT
      */
     public JKademliaStorageEntry get(GetParameter param) throws NoSuchElementException, IOException;
 
+    /**
+     * Get the file holding the StorageEntry for the content if any exist.
+     *
+     * The file holds the entry as the serializer writes it, so it can be sent to another node without decoding it first.
+     *
+     * @param param The parameters used to filter the content needed
+     *
+     * @return The file holding the content
+     *
+     * @throws java.io.IOException
+     */
+    public File getContentFile(GetParameter param) throws NoSuchElementException, IOException;
+
+    /**
+     * Get the size of the file holding the StorageEntry for the content, without reading or converting the file
+     *
+     * @param param The parameters used to filter the content needed
+     *
+     * @return The size of the file in bytes
+     */
+    public long getContentSize(GetParameter param) throws NoSuchElementException;
+
     /**
      * Delete a content from local storage
      *
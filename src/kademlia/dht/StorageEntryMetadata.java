@@ -33,6 +33,26 @@ public class StorageEntryMetadata implements KademliaStorageEntryMetadata
         this.lastRepublished = System.currentTimeMillis() / 1000L;
     }
 
+    /**
+     * Metadata read back from its fields, as written by a binary serializer
+     *
+     * @param key             The DHT key of the content
+     * @param ownerId         The ID of the owner of the content
+     * @param type            The type of the content
+     * @param contentHash     The hash of the content
+     * @param updatedTs       When the content was last updated
+     * @param lastRepublished When the content was last republished
+     */
+    public StorageEntryMetadata(KademliaId key, String ownerId, String type, int contentHash, long updatedTs, long lastRepublished)
+    {
+        this.key = key;
+        this.ownerId = ownerId;
+        this.type = type;
+        this.contentHash = contentHash;
+        this.updatedTs = updatedTs;
+        this.lastRepublished = lastRepublished;
+    }
+
     @Override
     public KademliaId getKey()
     {
@@ -42,7 +42,7 @@ class StoredContentManager
      *
      * @param entry The StorageEntry to store
      */
-    public KademliaStorageEntryMetadata put(KademliaStorageEntryMetadata entry) throws ContentExistException
+    public synchronized KademliaStorageEntryMetadata put(KademliaStorageEntryMetadata entry) throws ContentExistException
     {
         if (!this.entries.containsKey(entry.getKey()))
         {
@@ -112,7 +112,7 @@ class StoredContentManager
      *
      * @return List of content for the specific search parameters
      */
-    public KademliaStorageEntryMetadata get(GetParameter param) throws NoSuchElementException
+    public synchronized KademliaStorageEntryMetadata get(GetParameter param) throws NoSuchElementException
     {
         if (this.entries.containsKey(param.getKey()))
         {
@@ -135,7 +135,7 @@ class StoredContentManager
         }
     }
 
-    public KademliaStorageEntryMetadata get(KademliaStorageEntryMetadata md)
+    public synchronized KademliaStorageEntryMetadata get(KademliaStorageEntryMetadata md)
     {
         return this.get(new GetParameter(md));
     }
@@ -163,7 +163,7 @@ class StoredContentManager
         this.remove(new StorageEntryMetadata(content));
     }
 
-    public void remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException
+    public synchronized void remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException
     {
         if (contains(entry))
         {
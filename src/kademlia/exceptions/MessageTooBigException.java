@@ -0,0 +1,23 @@
+package kademlia.exceptions;
+
+import java.io.IOException;
+
+/**
+ * An exception thrown when a message does not fit into the space available for it
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class MessageTooBigException extends IOException
+{
+
+    public MessageTooBigException()
+    {
+        super("Message is too big");
+    }
+
+    public MessageTooBigException(String message)
+    {
+        super(message);
+    }
+}
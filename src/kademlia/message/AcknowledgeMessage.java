@@ -31,7 +31,7 @@ public class AcknowledgeMessage implements Message
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
     }
 
     @Override
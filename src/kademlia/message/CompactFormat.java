@@ -0,0 +1,204 @@
+package kademlia.message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.node.NodeRegistry;
+
+/**
+ * Reads and writes the parts of routing messages in the compact wire format, version 1.
+ *
+ * Compared to the standard format, counts are varints instead of 4-byte ints and ports take 2 bytes instead of 4.
+ * A list of nodes may also have its IDs delta-encoded: each ID is written as the number of leading bytes
+ * it shares with the ID before it, followed by the bytes that differ. Nodes in a reply are sorted by their
+ * distance to the same key, so neighbouring IDs tend to share a prefix.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class CompactFormat
+{
+
+    /* Flags of a node list */
+    private static final int DELTA_IDS = 0x01;
+
+    private static final int ID_BYTES = KademliaId.ID_LENGTH / 8;
+
+    /**
+     * Write an unsigned int as a varint: 7 bits per byte, lowest bits first, the top bit set on all but the last byte
+     *
+     * @param out
+     * @param value
+     *
+     * @throws java.io.IOException
+     */
+    public static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * @param in
+     *
+     * @return An unsigned int written as a varint
+     *
+     * @throws java.io.IOException
+     */
+    public static int readVarInt(DataInputStream in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Write a node as its ID, its IPv4 address and a 2-byte port
+     *
+     * @param out
+     * @param n
+     *
+     * @throws java.io.IOException
+     */
+    public static void writeNode(DataOutputStream out, Node n) throws IOException
+    {
+        n.getNodeId().toStream(out);
+        writeAddress(out, n);
+    }
+
+    /**
+     * @param in
+     *
+     * @return A node written by writeNode
+     *
+     * @throws java.io.IOException
+     */
+    public static Node readNode(DataInputStream in) throws IOException
+    {
+        return NodeRegistry.read(in, true);
+    }
+
+    /**
+     * Write a list of nodes, delta-encoding their IDs if that makes the list smaller
+     *
+     * @param out
+     * @param nodes
+     *
+     * @throws java.io.IOException
+     */
+    public static void writeNodes(DataOutputStream out, List<Node> nodes) throws IOException
+    {
+        /* Each delta-encoded ID costs a byte for the shared length, worth it if the IDs share more than that */
+        int shared = 0;
+        byte[] previous = null;
+        for (Node n : nodes)
+        {
+            byte[] id = n.getNodeId().getBytes();
+            shared += (previous == null) ? 0 : sharedPrefix(previous, id);
+            previous = id;
+        }
+        boolean delta = shared > nodes.size();
+
+        out.writeByte(delta ? DELTA_IDS : 0);
+        writeVarInt(out, nodes.size());
+
+        previous = null;
+        for (Node n : nodes)
+        {
+            byte[] id = n.getNodeId().getBytes();
+            if (delta)
+            {
+                int common = (previous == null) ? 0 : sharedPrefix(previous, id);
+                out.writeByte(common);
+                out.write(id, common, ID_BYTES - common);
+                previous = id;
+            }
+            else
+            {
+                out.write(id);
+            }
+            writeAddress(out, n);
+        }
+    }
+
+    /**
+     * @param in
+     * @param maxNodes Most nodes the list may hold
+     *
+     * @return A list of nodes written by writeNodes
+     *
+     * @throws java.io.IOException
+     */
+    public static List<Node> readNodes(DataInputStream in, int maxNodes) throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        int len = readVarInt(in);
+        if (len > maxNodes)
+        {
+            throw new IOException("Too many nodes in list: " + len);
+        }
+
+        /* Known nodes are looked up without allocating; each ID is read over the one before, which is what deltas build on */
+        List<Node> nodes = new ArrayList<>(len);
+        byte[] id = new byte[ID_BYTES];
+        for (int i = 0; i < len; i++)
+        {
+            if ((flags & DELTA_IDS) != 0)
+            {
+                int common = in.readUnsignedByte();
+                if (common > ID_BYTES || (i == 0 && common > 0))
+                {
+                    throw new IOException("Malformed node list");
+                }
+                in.readFully(id, common, ID_BYTES - common);
+            }
+            else
+            {
+                in.readFully(id);
+            }
+            int address = in.readInt();
+            int port = in.readUnsignedShort();
+            nodes.add(NodeRegistry.intern(id, address, port));
+        }
+        return nodes;
+    }
+
+    private static int sharedPrefix(byte[] a, byte[] b)
+    {
+        int i = 0;
+        while (i < ID_BYTES && a[i] == b[i])
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private static void writeAddress(DataOutputStream out, Node n) throws IOException
+    {
+        InetSocketAddress address = n.getSocketAddress();
+        byte[] a = address.getAddress().getAddress();
+        if (a.length != 4)
+        {
+            throw new RuntimeException("Expected InetAddress of 4 bytes, got " + a.length);
+        }
+        out.write(a);
+        out.writeShort(address.getPort());
+    }
+}
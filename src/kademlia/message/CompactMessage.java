@@ -0,0 +1,31 @@
+package kademlia.message;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A message that can also be written in the compact wire format.
+ *
+ * The compact form of a message has its own code, so the receiving side knows which format to read;
+ * it is only sent to peers that told us they understand it.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public interface CompactMessage extends Message
+{
+
+    /**
+     * @return The code of the compact form of this message
+     */
+    public byte compactCode();
+
+    /**
+     * Writes the message in the compact wire format
+     *
+     * @param out
+     *
+     * @throws java.io.IOException
+     */
+    public void toCompactStream(DataOutputStream out) throws IOException;
+}
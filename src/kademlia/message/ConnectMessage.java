@@ -30,7 +30,7 @@ public class ConnectMessage implements Message
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
     }
 
     @Override
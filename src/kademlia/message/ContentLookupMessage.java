@@ -5,7 +5,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import kademlia.dht.GetParameter;
 import kademlia.node.Node;
+import kademlia.util.serializer.BinaryGetParameterSerializer;
 import kademlia.util.serializer.JsonSerializer;
+import kademlia.util.serializer.KadSerializer;
 
 /**
  * Messages used to send to another node requesting content.
@@ -13,10 +15,14 @@ import kademlia.util.serializer.JsonSerializer;
  * @author Joshua Kissoon
  * @since 20140226
  */
-public class ContentLookupMessage implements Message
+public class ContentLookupMessage implements CompactMessage
 {
 
     public static final byte CODE = 0x03;
+    public static final byte COMPACT_CODE = 0x13;
+
+    private static final KadSerializer<GetParameter> JSON = new JsonSerializer<>();
+    private static final BinaryGetParameterSerializer BINARY = new BinaryGetParameterSerializer();
 
     private Node origin;
     private GetParameter params;
@@ -36,6 +42,20 @@ public class ContentLookupMessage implements Message
         this.fromStream(in);
     }
 
+    /**
+     * Read a ContentLookupMessage written in the compact wire format
+     *
+     * @param in
+     *
+     * @return The message
+     *
+     * @throws java.io.IOException
+     */
+    public static ContentLookupMessage fromCompactStream(DataInputStream in) throws IOException
+    {
+        return new ContentLookupMessage(CompactFormat.readNode(in), BINARY.read(in));
+    }
+
     public GetParameter getParameters()
     {
         return this.params;
@@ -52,18 +72,25 @@ public class ContentLookupMessage implements Message
         this.origin.toStream(out);
 
         /* Write the params to the stream */
-        new JsonSerializer<GetParameter>().write(this.params, out);
+        JSON.write(this.params, out);
+    }
+
+    @Override
+    public void toCompactStream(DataOutputStream out) throws IOException
+    {
+        CompactFormat.writeNode(out, this.origin);
+        BINARY.write(this.params, out);
     }
 
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
 
         /* Read the params from the stream */
         try
         {
-            this.params = new JsonSerializer<GetParameter>().read(in);
+            this.params = JSON.read(in);
         }
         catch (ClassNotFoundException e)
         {
@@ -77,4 +104,10 @@ public class ContentLookupMessage implements Message
         return CODE;
     }
 
+    @Override
+    public byte compactCode()
+    {
+        return COMPACT_CODE;
+    }
+
 }
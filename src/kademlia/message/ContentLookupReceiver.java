@@ -41,6 +41,13 @@ public class ContentLookupReceiver implements Receiver
         {
             try
             {
+                /* Send big content straight from its file if we can; the file is only fetched if it will be sent */
+                if (server.mayReplyFromFile(msg.getOrigin()) && server.fitsFileReply(this.dht.getContentSize(msg.getParameters()))
+                        && server.replyFromFile(msg.getOrigin(), this.dht.getContentFile(msg.getParameters()), comm))
+                {
+                    return;
+                }
+
                 /* Return a ContentMessage with the required data */
                 ContentMessage cMsg = new ContentMessage(localNode.getNode(), this.dht.get(msg.getParameters()));
                 server.reply(msg.getOrigin(), cMsg, comm);
@@ -6,7 +6,9 @@ import java.io.IOException;
 import kademlia.dht.JKademliaStorageEntry;
 import kademlia.dht.KademliaStorageEntry;
 import kademlia.node.Node;
+import kademlia.util.serializer.BinaryStorageEntrySerializer;
 import kademlia.util.serializer.JsonSerializer;
+import kademlia.util.serializer.KadSerializer;
 
 /**
  * A Message used to send content between nodes
@@ -14,10 +16,14 @@ import kademlia.util.serializer.JsonSerializer;
  * @author Joshua Kissoon
  * @since 20140226
  */
-public class ContentMessage implements Message
+public class ContentMessage implements CompactMessage
 {
 
     public static final byte CODE = 0x04;
+    public static final byte COMPACT_CODE = 0x14;
+
+    private static final KadSerializer<JKademliaStorageEntry> JSON = new JsonSerializer<>();
+    private static final BinaryStorageEntrySerializer BINARY = new BinaryStorageEntrySerializer();
 
     private JKademliaStorageEntry content;
     private Node origin;
@@ -38,23 +44,44 @@ public class ContentMessage implements Message
         this.fromStream(in);
     }
 
+    /**
+     * Read a ContentMessage written in the compact wire format
+     *
+     * @param in
+     *
+     * @return The message
+     *
+     * @throws java.io.IOException
+     */
+    public static ContentMessage fromCompactStream(DataInputStream in) throws IOException
+    {
+        return new ContentMessage(CompactFormat.readNode(in), BINARY.read(in));
+    }
+
     @Override
     public void toStream(DataOutputStream out) throws IOException
     {
         this.origin.toStream(out);
 
         /* Serialize the KadContent, then send it to the stream */
-        new JsonSerializer<JKademliaStorageEntry>().write(content, out);
+        JSON.write(content, out);
+    }
+
+    @Override
+    public void toCompactStream(DataOutputStream out) throws IOException
+    {
+        CompactFormat.writeNode(out, this.origin);
+        BINARY.write(this.content, out);
     }
 
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
 
         try
         {
-            this.content = new JsonSerializer<JKademliaStorageEntry>().read(in);
+            this.content = JSON.read(in);
         }
         catch (ClassNotFoundException e)
         {
@@ -78,6 +105,12 @@ public class ContentMessage implements Message
         return CODE;
     }
 
+    @Override
+    public byte compactCode()
+    {
+        return COMPACT_CODE;
+    }
+
     @Override
     public String toString()
     {
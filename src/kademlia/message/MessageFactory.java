@@ -44,6 +44,16 @@ public class MessageFactory implements KademliaMessageFactory
                 return new NodeLookupMessage(in);
             case NodeReplyMessage.CODE:
                 return new NodeReplyMessage(in);
+            case NodeLookupMessage.COMPACT_CODE:
+                return NodeLookupMessage.fromCompactStream(in);
+            case NodeReplyMessage.COMPACT_CODE:
+                return NodeReplyMessage.fromCompactStream(in);
+            case ContentLookupMessage.COMPACT_CODE:
+                return ContentLookupMessage.fromCompactStream(in);
+            case ContentMessage.COMPACT_CODE:
+                return ContentMessage.fromCompactStream(in);
+            case StoreContentMessage.COMPACT_CODE:
+                return StoreContentMessage.fromCompactStream(in);
             case SimpleMessage.CODE:
                 return new SimpleMessage(in);
             case StoreContentMessage.CODE:
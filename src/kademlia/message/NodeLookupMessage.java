@@ -12,13 +12,14 @@ import kademlia.node.KademliaId;
  * @author Joshua Kissoon
  * @created 20140218
  */
-public class NodeLookupMessage implements Message
+public class NodeLookupMessage implements CompactMessage
 {
 
     private Node origin;
     private KademliaId lookupId;
 
     public static final byte CODE = 0x05;
+    public static final byte COMPACT_CODE = 0x15;
 
     /**
      * A new NodeLookupMessage to find nodes
@@ -37,10 +38,24 @@ public class NodeLookupMessage implements Message
         this.fromStream(in);
     }
 
+    /**
+     * Read a NodeLookupMessage written in the compact wire format
+     *
+     * @param in
+     *
+     * @return The message
+     *
+     * @throws java.io.IOException
+     */
+    public static NodeLookupMessage fromCompactStream(DataInputStream in) throws IOException
+    {
+        return new NodeLookupMessage(CompactFormat.readNode(in), new KademliaId(in));
+    }
+
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
         this.lookupId = new KademliaId(in);
     }
 
@@ -51,6 +66,13 @@ public class NodeLookupMessage implements Message
         this.lookupId.toStream(out);
     }
 
+    @Override
+    public void toCompactStream(DataOutputStream out) throws IOException
+    {
+        CompactFormat.writeNode(out, this.origin);
+        this.lookupId.toStream(out);
+    }
+
     public Node getOrigin()
     {
         return this.origin;
@@ -67,6 +89,12 @@ public class NodeLookupMessage implements Message
         return CODE;
     }
 
+    @Override
+    public byte compactCode()
+    {
+        return COMPACT_CODE;
+    }
+
     @Override
     public String toString()
     {
@@ -14,11 +14,16 @@ import kademlia.node.Node;
  * @author Joshua Kissoon
  * @created 20140218
  */
-public class NodeReplyMessage implements Message
+public class NodeReplyMessage implements CompactMessage
 {
 
     private Node origin;
     public static final byte CODE = 0x06;
+    public static final byte COMPACT_CODE = 0x16;
+
+    /* Most nodes a reply can carry */
+    private static final int MAX_NODES = 255;
+
     private List<Node> nodes;
 
     public NodeReplyMessage(Node origin, List<Node> nodes)
@@ -32,11 +37,26 @@ public class NodeReplyMessage implements Message
         this.fromStream(in);
     }
 
+    /**
+     * Read a NodeReplyMessage written in the compact wire format
+     *
+     * @param in
+     *
+     * @return The message
+     *
+     * @throws java.io.IOException
+     */
+    public static NodeReplyMessage fromCompactStream(DataInputStream in) throws IOException
+    {
+        Node origin = CompactFormat.readNode(in);
+        return new NodeReplyMessage(origin, CompactFormat.readNodes(in, MAX_NODES));
+    }
+
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
         /* Read in the origin */
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
 
         /* Get the number of incoming nodes */
         int len = in.readInt();
@@ -45,7 +65,7 @@ public class NodeReplyMessage implements Message
         /* Read in all nodes */
         for (int i = 0; i < len; i++)
         {
-            this.nodes.add(new Node(in));
+            this.nodes.add(Node.read(in));
         }
     }
 
@@ -57,7 +77,7 @@ public class NodeReplyMessage implements Message
 
         /* Add all other nodes to the stream */
         int len = this.nodes.size();
-        if (len > 255)
+        if (len > MAX_NODES)
         {
             throw new IndexOutOfBoundsException("Too many nodes in list to send in NodeReplyMessage. Size: " + len);
         }
@@ -70,6 +90,17 @@ public class NodeReplyMessage implements Message
         }
     }
 
+    @Override
+    public void toCompactStream(DataOutputStream out) throws IOException
+    {
+        CompactFormat.writeNode(out, this.origin);
+        if (this.nodes.size() > MAX_NODES)
+        {
+            throw new IndexOutOfBoundsException("Too many nodes in list to send in NodeReplyMessage. Size: " + this.nodes.size());
+        }
+        CompactFormat.writeNodes(out, this.nodes);
+    }
+
     public Node getOrigin()
     {
         return this.origin;
@@ -81,6 +112,12 @@ public class NodeReplyMessage implements Message
         return CODE;
     }
 
+    @Override
+    public byte compactCode()
+    {
+        return COMPACT_CODE;
+    }
+
     public List<Node> getNodes()
     {
         return this.nodes;
@@ -6,7 +6,9 @@ import java.io.IOException;
 import kademlia.dht.JKademliaStorageEntry;
 import kademlia.dht.KademliaStorageEntry;
 import kademlia.node.Node;
+import kademlia.util.serializer.BinaryStorageEntrySerializer;
 import kademlia.util.serializer.JsonSerializer;
+import kademlia.util.serializer.KadSerializer;
 
 /**
  * A StoreContentMessage used to send a store message to a node
@@ -14,10 +16,14 @@ import kademlia.util.serializer.JsonSerializer;
  * @author Joshua Kissoon
  * @since 20140225
  */
-public class StoreContentMessage implements Message
+public class StoreContentMessage implements CompactMessage
 {
 
     public static final byte CODE = 0x08;
+    public static final byte COMPACT_CODE = 0x18;
+
+    private static final KadSerializer<JKademliaStorageEntry> JSON = new JsonSerializer<>();
+    private static final BinaryStorageEntrySerializer BINARY = new BinaryStorageEntrySerializer();
 
     private JKademliaStorageEntry content;
     private Node origin;
@@ -38,22 +44,43 @@ public class StoreContentMessage implements Message
         this.fromStream(in);
     }
 
+    /**
+     * Read a StoreContentMessage written in the compact wire format
+     *
+     * @param in
+     *
+     * @return The message
+     *
+     * @throws java.io.IOException
+     */
+    public static StoreContentMessage fromCompactStream(DataInputStream in) throws IOException
+    {
+        return new StoreContentMessage(CompactFormat.readNode(in), BINARY.read(in));
+    }
+
     @Override
     public void toStream(DataOutputStream out) throws IOException
     {
         this.origin.toStream(out);
 
         /* Serialize the KadContent, then send it to the stream */
-        new JsonSerializer<JKademliaStorageEntry>().write(content, out);
+        JSON.write(content, out);
+    }
+
+    @Override
+    public void toCompactStream(DataOutputStream out) throws IOException
+    {
+        CompactFormat.writeNode(out, this.origin);
+        BINARY.write(this.content, out);
     }
 
     @Override
     public final void fromStream(DataInputStream in) throws IOException
     {
-        this.origin = new Node(in);
+        this.origin = Node.read(in);
         try
         {
-            this.content = new JsonSerializer<JKademliaStorageEntry>().read(in);
+            this.content = JSON.read(in);
         }
         catch (ClassNotFoundException e)
         {
@@ -77,6 +104,12 @@ public class StoreContentMessage implements Message
         return CODE;
     }
 
+    @Override
+    public byte compactCode()
+    {
+        return COMPACT_CODE;
+    }
+
     @Override
     public String toString()
     {
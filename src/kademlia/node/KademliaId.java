@@ -21,6 +21,15 @@ public class KademliaId implements Streamable, Serializable
     public final transient static int ID_LENGTH = 160;
     private byte[] keyBytes;
 
+    /* Worked out on first use; IDs are hashed and printed far more often than they are made */
+    private transient int hash;
+    private transient String hex;
+
+    /* The ID as machine words, for distances; worked out on first use as IDs also come from Gson, which skips constructors */
+    private transient Words words;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     /**
      * Construct the NodeId from some string
      *
@@ -96,7 +105,13 @@ public class KademliaId implements Streamable, Serializable
         if (o instanceof KademliaId)
         {
             KademliaId nid = (KademliaId) o;
-            return this.hashCode() == nid.hashCode();
+            if (this.hashCode() != nid.hashCode())
+            {
+                return false;
+            }
+            Words a = this.words();
+            Words b = nid.words();
+            return a.high == b.high && a.middle == b.middle && a.low == b.low;
         }
         return false;
     }
@@ -104,9 +119,14 @@ public class KademliaId implements Streamable, Serializable
     @Override
     public int hashCode()
     {
-        int hash = 7;
-        hash = 83 * hash + Arrays.hashCode(this.keyBytes);
-        return hash;
+        int h = this.hash;
+        if (h == 0)
+        {
+            h = 7;
+            h = 83 * h + Arrays.hashCode(this.keyBytes);
+            this.hash = h;
+        }
+        return h;
     }
 
     /**
@@ -180,39 +200,8 @@ public class KademliaId implements Streamable, Serializable
      */
     public int getFirstSetBitIndex()
     {
-        int prefixLength = 0;
-
-        for (byte b : this.keyBytes)
-        {
-            if (b == 0)
-            {
-                prefixLength += 8;
-            }
-            else
-            {
-                /* If the byte is not 0, we need to count how many MSBs are 0 */
-                int count = 0;
-                for (int i = 7; i >= 0; i--)
-                {
-                    boolean a = (b & (1 << i)) == 0;
-                    if (a)
-                    {
-                        count++;
-                    }
-                    else
-                    {
-                        break;   // Reset the count if we encounter a non-zero number
-                    }
-                }
-
-                /* Add the count of MSB 0s to the prefix length */
-                prefixLength += count;
-
-                /* Break here since we've now covered the MSB 0s */
-                break;
-            }
-        }
-        return prefixLength;
+        Words w = this.words();
+        return leadingZeros(w.high, w.middle, w.low);
     }
 
     /**
@@ -225,11 +214,87 @@ public class KademliaId implements Streamable, Serializable
     public int getDistance(KademliaId to)
     {
         /**
-         * Compute the xor of this and to
-         * Get the index i of the first set bit of the xor returned NodeId
-         * The distance between them is ID_LENGTH - i
+         * The distance is ID_LENGTH - i, where i is the index of the first set bit of this xor to;
+         * worked out a word at a time without making the xor.
          */
-        return ID_LENGTH - this.xor(to).getFirstSetBitIndex();
+        Words a = this.words();
+        Words b = to.words();
+        return ID_LENGTH - leadingZeros(a.high ^ b.high, a.middle ^ b.middle, a.low ^ b.low);
+    }
+
+    /**
+     * Compare how far two NodeIds are from this NodeId
+     *
+     * @param a The first NodeId
+     * @param b The second NodeId
+     *
+     * @return Negative if a is closer to this NodeId, positive if b is, 0 if they are the same
+     */
+    public int compareDistance(KademliaId a, KademliaId b)
+    {
+        Words k = this.words();
+        Words wa = a.words();
+        Words wb = b.words();
+
+        int c = Long.compareUnsigned(wa.high ^ k.high, wb.high ^ k.high);
+        if (c != 0)
+        {
+            return c;
+        }
+        c = Long.compareUnsigned(wa.middle ^ k.middle, wb.middle ^ k.middle);
+        if (c != 0)
+        {
+            return c;
+        }
+        return Integer.compareUnsigned(wa.low ^ k.low, wb.low ^ k.low);
+    }
+
+    /**
+     * @return Bits 0 to 63 of this NodeId, the most significant first
+     */
+    public long getHighWord()
+    {
+        return this.words().high;
+    }
+
+    /**
+     * @return Bits 64 to 127 of this NodeId
+     */
+    public long getMiddleWord()
+    {
+        return this.words().middle;
+    }
+
+    /**
+     * @return Bits 128 to 159 of this NodeId, the least significant last
+     */
+    public int getLowWord()
+    {
+        return this.words().low;
+    }
+
+    private static int leadingZeros(long high, long middle, int low)
+    {
+        if (high != 0)
+        {
+            return Long.numberOfLeadingZeros(high);
+        }
+        if (middle != 0)
+        {
+            return 64 + Long.numberOfLeadingZeros(middle);
+        }
+        return 128 + Integer.numberOfLeadingZeros(low);
+    }
+
+    private Words words()
+    {
+        Words w = this.words;
+        if (w == null)
+        {
+            w = new Words(this.keyBytes);
+            this.words = w;
+        }
+        return w;
     }
 
     @Override
@@ -245,13 +310,27 @@ public class KademliaId implements Streamable, Serializable
         byte[] input = new byte[ID_LENGTH / 8];
         in.readFully(input);
         this.keyBytes = input;
+        this.hash = 0;
+        this.hex = null;
+        this.words = null;
     }
 
     public String hexRepresentation()
     {
         /* Returns the hex format of this NodeId */
-        BigInteger bi = new BigInteger(1, this.keyBytes);
-        return String.format("%0" + (this.keyBytes.length << 1) + "X", bi);
+        String h = this.hex;
+        if (h == null)
+        {
+            char[] chars = new char[this.keyBytes.length << 1];
+            for (int i = 0; i < this.keyBytes.length; i++)
+            {
+                chars[2 * i] = HEX_DIGITS[(this.keyBytes[i] >> 4) & 0x0F];
+                chars[2 * i + 1] = HEX_DIGITS[this.keyBytes[i] & 0x0F];
+            }
+            h = new String(chars);
+            this.hex = h;
+        }
+        return h;
     }
 
     @Override
@@ -260,4 +339,32 @@ public class KademliaId implements Streamable, Serializable
         return this.hexRepresentation();
     }
 
+    /**
+     * The 160 bits of an ID, most significant first; the fields are final so an ID can be shared between threads
+     * before its words are worked out
+     */
+    private static final class Words
+    {
+
+        private final long high;
+        private final long middle;
+        private final int low;
+
+        private Words(byte[] id)
+        {
+            this.high = word(id, 0, 8);
+            this.middle = word(id, 8, 8);
+            this.low = (int) word(id, 16, 4);
+        }
+
+        private static long word(byte[] id, int offset, int length)
+        {
+            long w = 0;
+            for (int i = offset; i < offset + length; i++)
+            {
+                w = (w << 8) | (id[i] & 0xFFL);
+            }
+            return w;
+        }
+    }
 }
@@ -1,6 +1,5 @@
 package kademlia.node;
 
-import java.math.BigInteger;
 import java.util.Comparator;
 
 /**
@@ -12,14 +11,14 @@ import java.util.Comparator;
 public class KeyComparator implements Comparator<Node>
 {
 
-    private final BigInteger key;
+    private final KademliaId key;
 
     /**
      * @param key The NodeId relative to which the distance should be measured.
      */
     public KeyComparator(KademliaId key)
     {
-        this.key = key.getInt();
+        this.key = key;
     }
 
     /**
@@ -33,12 +32,6 @@ public class KeyComparator implements Comparator<Node>
     @Override
     public int compare(Node n1, Node n2)
     {
-        BigInteger b1 = n1.getNodeId().getInt();
-        BigInteger b2 = n2.getNodeId().getInt();
-
-        b1 = b1.xor(key);
-        b2 = b2.xor(key);
-
-        return b1.abs().compareTo(b2.abs());
+        return this.key.compareDistance(n1.getNodeId(), n2.getNodeId());
     }
 }
@@ -21,14 +21,15 @@ public class Node implements Streamable, Serializable
     private KademliaId nodeId;
     private InetAddress inetAddress;
     private int port;
-    private final String strRep;
+
+    /* Made on first use and kept, nodes are sent to over and over */
+    private transient InetSocketAddress socketAddress;
 
     public Node(KademliaId nid, InetAddress ip, int port)
     {
         this.nodeId = nid;
         this.inetAddress = ip;
         this.port = port;
-        this.strRep = this.nodeId.toString();
     }
 
     /**
@@ -41,7 +42,20 @@ public class Node implements Streamable, Serializable
     public Node(DataInputStream in) throws IOException
     {
         this.fromStream(in);
-        this.strRep = this.nodeId.toString();
+    }
+
+    /**
+     * Read a node written by toStream(), returning the node we already have if it was read before
+     *
+     * @param in
+     *
+     * @return The node
+     *
+     * @throws IOException
+     */
+    public static Node read(DataInputStream in) throws IOException
+    {
+        return NodeRegistry.read(in, false);
     }
 
     /**
@@ -52,6 +66,7 @@ public class Node implements Streamable, Serializable
     public void setInetAddress(InetAddress addr)
     {
         this.inetAddress = addr;
+        this.socketAddress = null;
     }
 
     /**
@@ -69,7 +84,13 @@ public class Node implements Streamable, Serializable
      */
     public InetSocketAddress getSocketAddress()
     {
-        return new InetSocketAddress(this.inetAddress, this.port);
+        InetSocketAddress address = this.socketAddress;
+        if (address == null)
+        {
+            address = new InetSocketAddress(this.inetAddress, this.port);
+            this.socketAddress = address;
+        }
+        return address;
     }
 
     @Override
@@ -103,6 +124,7 @@ public class Node implements Streamable, Serializable
 
         /* Read in the port */
         this.port = in.readInt();
+        this.socketAddress = null;
     }
 
     @Override
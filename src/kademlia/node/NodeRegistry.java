@@ -0,0 +1,118 @@
+package kademlia.node;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns the nodes read off the network, so a peer we hear about again is decoded into the Node we already have
+ * instead of a new Node, KademliaId and InetAddress every time.
+ *
+ * The registry is a fixed-size table indexed by a hash of the ID, address and port; each slot holds the last node
+ * read that hashed to it. A node is only returned if its ID, address and port all match what was read,
+ * so a node that moved to another address is decoded anew. Nodes are compared without allocating,
+ * which makes reading a known node allocation-free.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class NodeRegistry
+{
+
+    /* Number of slots, a power of 2 */
+    private static final int SIZE = 16 * 1024;
+
+    private static final int ID_BYTES = KademliaId.ID_LENGTH / 8;
+
+    private static final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(SIZE);
+
+    /* Each thread reads IDs into its own buffer, which a node only keeps a copy of */
+    private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[ID_BYTES];
+        }
+    };
+
+    /**
+     * Read a node as its ID, its IPv4 address and its port
+     *
+     * @param in
+     * @param shortPort Whether the port is written in 2 bytes instead of 4
+     *
+     * @return The node read, the same instance as before if it was read before
+     *
+     * @throws java.io.IOException
+     */
+    public static Node read(DataInputStream in, boolean shortPort) throws IOException
+    {
+        byte[] id = scratch.get();
+        in.readFully(id);
+        int address = in.readInt();
+        int port = shortPort ? in.readUnsignedShort() : in.readInt();
+        return intern(id, address, port);
+    }
+
+    /**
+     * Get the node with the given ID, address and port, creating it if it isn't known
+     *
+     * @param id      The ID of the node; not kept, so the caller may re-use the array
+     * @param address The IPv4 address of the node
+     * @param port    The port of the node
+     *
+     * @return The node
+     *
+     * @throws java.io.IOException
+     */
+    public static Node intern(byte[] id, int address, int port) throws IOException
+    {
+        int slot = index(id, address, port);
+        Entry e = entries.get(slot);
+        if (e != null && e.port == port && e.address == address && Arrays.equals(e.id, id))
+        {
+            return e.node;
+        }
+
+        byte[] ip =
+        {
+            (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address
+        };
+        byte[] copy = Arrays.copyOf(id, ID_BYTES);
+        Node n = new Node(new KademliaId(copy), InetAddress.getByAddress(ip), port);
+        entries.set(slot, new Entry(n, copy, address, port));
+        return n;
+    }
+
+    private static int index(byte[] id, int address, int port)
+    {
+        /* IDs are random, so their first bytes spread well enough */
+        int h = ((id[0] & 0xFF) << 24) | ((id[1] & 0xFF) << 16) | ((id[2] & 0xFF) << 8) | (id[3] & 0xFF);
+        h ^= address * 31 + port;
+        h ^= (h >>> 16);
+        return h & (SIZE - 1);
+    }
+
+    /**
+     * A node with what it was read from, so nodes can be compared to what's read without asking them
+     */
+    private static class Entry
+    {
+
+        private final Node node;
+        private final byte[] id;
+        private final int address;
+        private final int port;
+
+        public Entry(Node node, byte[] id, int address, int port)
+        {
+            this.node = node;
+            this.id = id;
+            this.address = address;
+            this.port = port;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package kademlia.node;
+
+import java.util.Comparator;
+import kademlia.RoundTripTimes;
+
+/**
+ * A Comparator that puts the nodes answering fastest first; nodes we have not measured yet come last
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class RttComparator implements Comparator<Node>
+{
+
+    private final RoundTripTimes rtts;
+
+    /**
+     * @param rtts The round trip times measured to the nodes
+     */
+    public RttComparator(RoundTripTimes rtts)
+    {
+        this.rtts = rtts;
+    }
+
+    @Override
+    public int compare(Node n1, Node n2)
+    {
+        return Double.compare(this.rtts.expectedRtt(n1), this.rtts.expectedRtt(n2));
+    }
+}
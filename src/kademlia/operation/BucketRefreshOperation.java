@@ -4,6 +4,7 @@ import java.io.IOException;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import kademlia.KademliaNode;
+import kademlia.RpcPriority;
 import kademlia.node.KademliaId;
 
 /**
@@ -45,22 +46,22 @@ public class BucketRefreshOperation implements Operation
             /* Construct a NodeId that is i bits away from the current node Id */
             final KademliaId current = this.localNode.getNode().getNodeId().generateNodeIdByDistance(i);
 
-            /* Run the Node Lookup Operation, each in a different thread to speed up things */
-            new Thread()
+            /* Run the Node Lookup Operation, each as a separate task on the node's executor to speed up things */
+            this.localNode.getExecutor().execute(new Runnable()
             {
                 @Override
                 public void run()
                 {
                     try
                     {
-                        new NodeLookupOperation(server, localNode, current, BucketRefreshOperation.this.config).execute();
+                        new NodeLookupOperation(server, localNode, current, BucketRefreshOperation.this.config, RpcPriority.MAINTENANCE).execute();
                     }
                     catch (IOException e)
                     {
                         //System.err.println("Bucket Refresh Operation Failed. Msg: " + e.getMessage());
                     }
                 }
-            }.start();
+            });
         }
     }
 }
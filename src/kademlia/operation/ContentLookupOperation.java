@@ -10,6 +10,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import kademlia.JKademliaNode;
 import kademlia.dht.GetParameter;
 import kademlia.KadConfiguration;
@@ -24,6 +26,7 @@ import kademlia.message.ContentMessage;
 import kademlia.message.Message;
 import kademlia.message.NodeReplyMessage;
 import kademlia.node.KeyComparator;
+import kademlia.node.RttComparator;
 import kademlia.node.Node;
 import kademlia.util.RouteLengthChecker;
 
@@ -49,7 +52,7 @@ public class ContentLookupOperation implements Operation, Receiver
 
     private final ContentLookupMessage lookupMessage;
 
-    private boolean isContentFound;
+    private volatile boolean isContentFound;
     private final SortedMap<Node, Byte> nodes;
 
     /* Tracks messages in transit and awaiting reply */
@@ -57,13 +60,18 @@ public class ContentLookupOperation implements Operation, Receiver
 
     /* Used to sort nodes */
     private final Comparator comparator;
+    private final Comparator<Node> rttComparator;
 
     /* Statistical information */
     private final RouteLengthChecker routeLengthChecker;
 
+    /* Released when the content is found or the lookup runs out of nodes to ask */
+    private final CountDownLatch finished;
+
     
     {
         messagesTransiting = new HashMap<>();
+        finished = new CountDownLatch(1);
         isContentFound = false;
         routeLengthChecker = new RouteLengthChecker();
     }
@@ -87,6 +95,7 @@ public class ContentLookupOperation implements Operation, Receiver
          * We initialize a TreeMap to store nodes.
          * This map will be sorted by which nodes are closest to the lookupId
          */
+        this.rttComparator = new RttComparator(server.getRoundTripTimes());
         this.comparator = new KeyComparator(params.getKey());
         this.nodes = new TreeMap(this.comparator);
     }
@@ -96,41 +105,33 @@ public class ContentLookupOperation implements Operation, Receiver
      * @throws kademlia.exceptions.RoutingException
      */
     @Override
-    public synchronized void execute() throws IOException, RoutingException
+    public void execute() throws IOException, RoutingException
     {
         try
         {
-            /* Set the local node as already asked */
-            nodes.put(this.localNode.getNode(), ASKED);
+            synchronized (this)
+            {
+                /* Set the local node as already asked */
+                nodes.put(this.localNode.getNode(), ASKED);
 
-            /**
-             * We add all nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
-             * - The operation takes care of looking at the K-Closest.
-             */
-            List<Node> allNodes = this.localNode.getRoutingTable().getAllNodes();
-            this.addNodes(allNodes);
-            
-            /* Also add the initial set of nodes to the routeLengthChecker */
-            this.routeLengthChecker.addInitialNodes(allNodes);
+                /**
+                 * We add all nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
+                 * - The operation takes care of looking at the K-Closest.
+                 */
+                List<Node> allNodes = this.localNode.getRoutingTable().getAllNodes();
+                this.addNodes(allNodes);
+
+                /* Also add the initial set of nodes to the routeLengthChecker */
+                this.routeLengthChecker.addInitialNodes(allNodes);
+
+                this.askNodesorFinish();
+            }
 
             /**
              * If we haven't found the requested amount of content as yet,
-             * keey trying until config.operationTimeout() time has expired
+             * wait until config.operationTimeout() time has expired; replies and timeouts release us early.
              */
-            int totalTimeWaited = 0;
-            int timeInterval = 10;     // We re-check every n milliseconds
-            while (totalTimeWaited < this.config.operationTimeout())
-            {
-                if (!this.askNodesorFinish() && !isContentFound)
-                {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                }
-                else
-                {
-                    break;
-                }
-            }
+            this.finished.await(this.config.operationTimeout(), TimeUnit.MILLISECONDS);
         }
         catch (InterruptedException e)
         {
@@ -180,12 +181,16 @@ public class ContentLookupOperation implements Operation, Receiver
         if (unasked.isEmpty() && this.messagesTransiting.isEmpty())
         {
             /* We have no unasked nodes nor any messages in transit, we're finished! */
+            this.finished.countDown();
             return true;
         }
 
         /* Sort nodes according to criteria */
         Collections.sort(unasked, this.comparator);
 
+        /* Among the closest, ask the ones that answer fastest first; the sort is stable so closer nodes win ties */
+        Collections.sort(unasked, this.rttComparator);
+
         /**
          * Send messages to nodes in the list;
          * making sure than no more than CONCURRENCY messsages are in transit
@@ -257,6 +262,7 @@ public class ContentLookupOperation implements Operation, Receiver
             JKademliaStorageEntry content = msg.getContent();
             this.contentFound = content;
             this.isContentFound = true;
+            this.finished.countDown();
         }
         else
         {
@@ -3,19 +3,24 @@ package kademlia.operation;
 import kademlia.message.Receiver;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import kademlia.KadConfiguration;
 import kademlia.KadServer;
 import kademlia.KademliaNode;
+import kademlia.RpcPriority;
 import kademlia.exceptions.RoutingException;
 import kademlia.message.Message;
 import kademlia.message.NodeLookupMessage;
 import kademlia.message.NodeReplyMessage;
 import kademlia.node.KeyComparator;
+import kademlia.node.RttComparator;
 import kademlia.node.Node;
 import kademlia.node.KademliaId;
 
@@ -41,6 +46,7 @@ public class NodeLookupOperation implements Operation, Receiver
     private final KadConfiguration config;
 
     private final Message lookupMessage;        // Message sent to each peer
+    private final RpcPriority priority;         // How urgent the lookup is when the node has many requests in flight
     private final Map<Node, String> nodes;
 
     /* Tracks messages in transit and awaiting reply */
@@ -48,10 +54,15 @@ public class NodeLookupOperation implements Operation, Receiver
 
     /* Used to sort nodes */
     private final Comparator comparator;
+    private final Comparator<Node> rttComparator;
+
+    /* Released when the lookup finishes so the executing thread doesn't have to poll */
+    private final CountDownLatch finished;
 
     
     {
         messagesTransiting = new HashMap<>();
+        finished = new CountDownLatch(1);
     }
 
     /**
@@ -61,8 +72,21 @@ public class NodeLookupOperation implements Operation, Receiver
      * @param config
      */
     public NodeLookupOperation(KadServer server, KademliaNode localNode, KademliaId lookupId, KadConfiguration config)
+    {
+        this(server, localNode, lookupId, config, RpcPriority.INTERACTIVE);
+    }
+
+    /**
+     * @param server    KadServer used for communication
+     * @param localNode The local node making the communication
+     * @param lookupId  The ID for which to find nodes close to
+     * @param config
+     * @param priority  How urgent the lookup's messages are
+     */
+    public NodeLookupOperation(KadServer server, KademliaNode localNode, KademliaId lookupId, KadConfiguration config, RpcPriority priority)
     {
         this.server = server;
+        this.priority = priority;
         this.localNode = localNode;
         this.config = config;
 
@@ -72,6 +96,7 @@ public class NodeLookupOperation implements Operation, Receiver
          * We initialize a TreeMap to store nodes.
          * This map will be sorted by which nodes are closest to the lookupId
          */
+        this.rttComparator = new RttComparator(server.getRoundTripTimes());
         this.comparator = new KeyComparator(lookupId);
         this.nodes = new TreeMap(this.comparator);
     }
@@ -81,38 +106,35 @@ public class NodeLookupOperation implements Operation, Receiver
      * @throws kademlia.exceptions.RoutingException
      */
     @Override
-    public synchronized void execute() throws IOException, RoutingException
+    public void execute() throws IOException, RoutingException
     {
         try
         {
-            /* Set the local node as already asked */
-            nodes.put(this.localNode.getNode(), ASKED);
+            synchronized (this)
+            {
+                /* Set the local node as already asked */
+                nodes.put(this.localNode.getNode(), ASKED);
+
+                /**
+                 * We add all nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
+                 * - The operation takes care of looking at the K-Closest.
+                 */
+                this.addNodes(this.localNode.getRoutingTable().getAllNodes());
+                this.askNodesorFinish();
+            }
 
             /**
-             * We add all nodes here instead of the K-Closest because there may be the case that the K-Closest are offline
-             * - The operation takes care of looking at the K-Closest.
+             * Wait for a maximum of config.operationTimeout() time for the lookup to finish;
+             * replies and timeouts keep the lookup going and release us when it's done.
+             * We block on a latch instead of the monitor so waiting lookups don't pin virtual threads.
              */
-            this.addNodes(this.localNode.getRoutingTable().getAllNodes());
+            this.finished.await(this.config.operationTimeout(), TimeUnit.MILLISECONDS);
 
-            /* If we haven't finished as yet, wait for a maximum of config.operationTimeout() time */
-            int totalTimeWaited = 0;
-            int timeInterval = 10;     // We re-check every n milliseconds
-            while (totalTimeWaited < this.config.operationTimeout())
+            /* Now after we've finished, we would have an idea of offline nodes, lets update our routing table */
+            synchronized (this)
             {
-                if (!this.askNodesorFinish())
-                {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                }
-                else
-                {
-                    break;
-                }
+                this.localNode.getRoutingTable().setUnresponsiveContacts(this.getFailedNodes());
             }
-
-            /* Now after we've finished, we would have an idea of offline nodes, lets update our routing table */
-            this.localNode.getRoutingTable().setUnresponsiveContacts(this.getFailedNodes());
-
         }
         catch (InterruptedException e)
         {
@@ -167,9 +189,13 @@ public class NodeLookupOperation implements Operation, Receiver
         if (unasked.isEmpty() && this.messagesTransiting.isEmpty())
         {
             /* We have no unasked nodes nor any messages in transit, we're finished! */
+            this.finished.countDown();
             return true;
         }
 
+        /* Among the closest, ask the ones that answer fastest first; the sort is stable so closer nodes win ties */
+        Collections.sort(unasked, this.rttComparator);
+
         /**
          * Send messages to nodes in the list;
          * making sure than no more than CONCURRENCY messsages are in transit
@@ -178,7 +204,7 @@ public class NodeLookupOperation implements Operation, Receiver
         {
             Node n = (Node) unasked.get(i);
 
-            int comm = server.sendMessage(n, lookupMessage, this);
+            int comm = server.sendMessage(n, lookupMessage, this, this.priority);
 
             this.nodes.put(n, AWAITING);
             this.messagesTransiting.put(comm, n);
@@ -28,6 +28,10 @@ public class Contact implements Comparable<Contact>
      */
     private int staleCount;
 
+    /* The contacts seen just before and just after this one in the ContactList holding it */
+    transient Contact older;
+    transient Contact newer;
+
     /**
      * Create a contact object
      *
@@ -0,0 +1,90 @@
+package kademlia.routing;
+
+import java.util.List;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+
+/**
+ * The first words of the node IDs of a set of contacts laid out flat in a primitive array next to the nodes,
+ * so finding the contacts closest to a key is a straight scan through memory instead of a walk over
+ * tree entries, contacts, nodes and IDs.
+ *
+ * The scan keeps the closest nodes found so far; most contacts are ruled out on the XOR of their first word alone,
+ * and only the few that might make the cut are compared in full. An index never changes once made,
+ * so any number of threads can scan it without locking; a bucket makes a new one when its contacts change.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ContactIndex
+{
+
+    private final long[] high;
+    private final Node[] nodes;
+
+    /**
+     * @param nodes The nodes to index; the array must not be changed afterwards
+     */
+    public ContactIndex(Node[] nodes)
+    {
+        this.nodes = nodes;
+        this.high = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+        {
+            this.high[i] = nodes[i].getNodeId().getHighWord();
+        }
+    }
+
+    /**
+     * @return Number of nodes in the index
+     */
+    public int size()
+    {
+        return this.nodes.length;
+    }
+
+    /**
+     * Merge the nodes in the index into a list of the nodes closest to a key
+     *
+     * @param key     The ID the distances are measured from
+     * @param closest The nodes closest to the key so far, closest first; stays that way
+     * @param max     Most nodes to keep in the list; the farthest ones fall off
+     */
+    public void addClosest(KademliaId key, List<Node> closest, int max)
+    {
+        long kh = key.getHighWord();
+
+        /* The first word of the distance of the farthest node in the list, once the list is full */
+        long worst = closest.size() < max ? -1L : closest.get(max - 1).getNodeId().getHighWord() ^ kh;
+
+        for (int i = 0; i < this.nodes.length; i++)
+        {
+            if (Long.compareUnsigned(this.high[i] ^ kh, worst) > 0)
+            {
+                /* Farther than everything in the list */
+                continue;
+            }
+
+            Node n = this.nodes[i];
+            KademliaId id = n.getNodeId();
+            int pos = closest.size();
+            while (pos > 0 && key.compareDistance(id, closest.get(pos - 1).getNodeId()) < 0)
+            {
+                pos--;
+            }
+
+            if (pos < max)
+            {
+                if (closest.size() == max)
+                {
+                    closest.remove(max - 1);
+                }
+                closest.add(pos, n);
+                if (closest.size() == max)
+                {
+                    worst = closest.get(max - 1).getNodeId().getHighWord() ^ kh;
+                }
+            }
+        }
+    }
+}
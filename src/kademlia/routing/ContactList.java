@@ -0,0 +1,183 @@
+package kademlia.routing;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import kademlia.node.Node;
+
+/**
+ * Contacts kept in the order they were last seen, from the least to the most recently seen.
+ *
+ * The contacts are found by their node through a hash map and are linked to each other through their own fields,
+ * so finding, adding, removing or moving a contact to the most recently seen end takes constant time.
+ * Contacts seen at the same time keep the order they were seen in, unlike ordering by timestamp.
+ * A contact can be in only one list at a time. Not thread safe; the bucket guards it.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ContactList implements Iterable<Contact>
+{
+
+    private final Map<Node, Contact> contacts;
+
+    /* The least and the most recently seen contacts */
+    private Contact oldest;
+    private Contact newest;
+
+
+    {
+        contacts = new HashMap<>();
+    }
+
+    /**
+     * @param n The node of the contact
+     *
+     * @return The contact of the node, or null if it isn't in the list
+     */
+    public Contact get(Node n)
+    {
+        return this.contacts.get(n);
+    }
+
+    public boolean contains(Node n)
+    {
+        return this.contacts.containsKey(n);
+    }
+
+    public int size()
+    {
+        return this.contacts.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return this.contacts.isEmpty();
+    }
+
+    /**
+     * @return The least recently seen contact, or null if the list is empty
+     */
+    public Contact leastRecent()
+    {
+        return this.oldest;
+    }
+
+    /**
+     * @return The most recently seen contact, or null if the list is empty
+     */
+    public Contact mostRecent()
+    {
+        return this.newest;
+    }
+
+    /**
+     * Add a contact as the most recently seen one; the list must not have a contact for its node yet
+     *
+     * @param c The contact to add
+     */
+    public void add(Contact c)
+    {
+        this.contacts.put(c.getNode(), c);
+        this.link(c);
+    }
+
+    /**
+     * Move a contact in the list to the most recently seen end
+     *
+     * @param c The contact, as held by the list
+     */
+    public void touch(Contact c)
+    {
+        if (c != this.newest)
+        {
+            this.unlink(c);
+            this.link(c);
+        }
+    }
+
+    /**
+     * @param n The node of the contact to remove
+     *
+     * @return The removed contact, or null if it wasn't in the list
+     */
+    public Contact remove(Node n)
+    {
+        Contact c = this.contacts.remove(n);
+        if (c != null)
+        {
+            this.unlink(c);
+        }
+        return c;
+    }
+
+    private void link(Contact c)
+    {
+        c.older = this.newest;
+        c.newer = null;
+        if (this.newest == null)
+        {
+            this.oldest = c;
+        }
+        else
+        {
+            this.newest.newer = c;
+        }
+        this.newest = c;
+    }
+
+    private void unlink(Contact c)
+    {
+        if (c.older == null)
+        {
+            this.oldest = c.newer;
+        }
+        else
+        {
+            c.older.newer = c.newer;
+        }
+
+        if (c.newer == null)
+        {
+            this.newest = c.older;
+        }
+        else
+        {
+            c.newer.older = c.older;
+        }
+
+        c.older = null;
+        c.newer = null;
+    }
+
+    /**
+     * @return An iterator from the least to the most recently seen contact; the list must not change while it's used
+     */
+    @Override
+    public Iterator<Contact> iterator()
+    {
+        return new Iterator<Contact>()
+        {
+            private Contact next = oldest;
+
+            @Override
+            public boolean hasNext()
+            {
+                return this.next != null;
+            }
+
+            @Override
+            public Contact next()
+            {
+                if (this.next == null)
+                {
+                    throw new NoSuchElementException();
+                }
+                Contact c = this.next;
+                this.next = c.newer;
+                return c;
+            }
+        };
+    }
+}
@@ -1,15 +1,27 @@
 package kademlia.routing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.Set;
 import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
 import kademlia.node.Node;
 
 /**
  * A bucket in the Kademlia routing table
  *
+ * Changes to the bucket take the bucket's lock. Every change to which nodes are in the bucket publishes
+ * a new immutable snapshot of them, which readers such as findClosest use without taking any lock.
+ *
+ * The contacts and the replacement cache are each kept from the least to the most recently seen,
+ * so seeing a contact again, evicting one or promoting a replacement doesn't search or re-sort anything.
+ * Stale contacts are also kept grouped by their stale count, so the stalest one is found without looking at the others.
+ *
  * @author Joshua Kissoon
  * @created 20140215
  */
@@ -20,17 +32,26 @@ public class JKademliaBucket implements KademliaBucket
     private final int depth;
 
     /* Contacts stored in this routing table */
-    private final TreeSet<Contact> contacts;
+    private final ContactList contacts;
 
     /* A set of last seen contacts that can replace any current contact that is unresponsive */
-    private final TreeSet<Contact> replacementCache;
+    private final ContactList replacementCache;
+
+    /* The stale contacts by their stale count, each group in the order its contacts reached it, and the highest count of any group */
+    private final transient Map<Integer, Set<Contact>> staleContacts;
+    private transient int stalestCount;
+
+    /* The nodes of the contacts as of the last change, and their index if the configuration asks for one; never changed, only replaced */
+    private transient volatile Node[] nodes;
+    private transient volatile ContactIndex index;
 
     private final KadConfiguration config;
 
     
     {
-        contacts = new TreeSet<>();
-        replacementCache = new TreeSet<>();
+        contacts = new ContactList();
+        replacementCache = new ContactList();
+        staleContacts = new HashMap<>();
     }
 
     /**
@@ -41,21 +62,39 @@ public class JKademliaBucket implements KademliaBucket
     {
         this.depth = depth;
         this.config = config;
+        this.publish();
+    }
+
+    /**
+     * Publish a new snapshot of the nodes in the bucket; called with the lock held after they changed
+     */
+    private void publish()
+    {
+        Node[] snapshot = new Node[this.contacts.size()];
+        int i = 0;
+        for (Contact c : this.contacts)
+        {
+            snapshot[i++] = c.getNode();
+        }
+
+        if (this.config.useContactIndex())
+        {
+            this.index = new ContactIndex(snapshot);
+        }
+        this.nodes = snapshot;
     }
 
     @Override
     public synchronized void insert(Contact c)
     {
-        if (this.contacts.contains(c))
+        Contact known = this.contacts.get(c.getNode());
+        if (known != null)
         {
-            /**
-             * If the contact is already in the bucket, lets update that we've seen it
-             * We need to remove and re-add the contact to get the Sorted Set to update sort order
-             */
-            Contact tmp = this.removeFromContacts(c.getNode());
-            tmp.setSeenNow();
-            tmp.resetStaleCount();
-            this.contacts.add(tmp);
+            /* If the contact is already in the bucket, lets update that we've seen it; the nodes stay the same */
+            known.setSeenNow();
+            this.unmarkStale(known);
+            known.resetStaleCount();
+            this.contacts.touch(known);
         }
         else
         {
@@ -63,28 +102,16 @@ public class JKademliaBucket implements KademliaBucket
             if (contacts.size() >= this.config.k())
             {
                 /* If the cache is empty, we check if any contacts are stale and replace the stalest one */
-                Contact stalest = null;
-                for (Contact tmp : this.contacts)
-                {
-                    if (tmp.staleCount() >= this.config.stale())
-                    {
-                        /* Contact is stale */
-                        if (stalest == null)
-                        {
-                            stalest = tmp;
-                        }
-                        else if (tmp.staleCount() > stalest.staleCount())
-                        {
-                            stalest = tmp;
-                        }
-                    }
-                }
+                Contact stalest = this.stalest();
 
                 /* If we have a stale contact, remove it and add the new contact to the bucket */
                 if (stalest != null)
                 {
-                    this.contacts.remove(stalest);
-                    this.contacts.add(c);
+                    this.unmarkStale(stalest);
+                    this.contacts.remove(stalest.getNode());
+                    this.replacementCache.remove(c.getNode());
+                    this.addContact(c);
+                    this.publish();
                 }
                 else
                 {
@@ -94,7 +121,9 @@ public class JKademliaBucket implements KademliaBucket
             }
             else
             {
-                this.contacts.add(c);
+                this.replacementCache.remove(c.getNode());
+                this.addContact(c);
+                this.publish();
             }
         }
     }
@@ -108,7 +137,7 @@ public class JKademliaBucket implements KademliaBucket
     @Override
     public synchronized boolean containsContact(Contact c)
     {
-        return this.contacts.contains(c);
+        return this.contacts.contains(c.getNode());
     }
 
     @Override
@@ -121,7 +150,8 @@ public class JKademliaBucket implements KademliaBucket
     public synchronized boolean removeContact(Contact c)
     {
         /* If the contact does not exist, then we failed to remove it */
-        if (!this.contacts.contains(c))
+        Contact known = this.contacts.get(c.getNode());
+        if (known == null)
         {
             return false;
         }
@@ -129,50 +159,24 @@ public class JKademliaBucket implements KademliaBucket
         /* Contact exist, lets remove it only if our replacement cache has a replacement */
         if (!this.replacementCache.isEmpty())
         {
-            /* Replace the contact with one from the replacement cache */
-            this.contacts.remove(c);
-            Contact replacement = this.replacementCache.first();
-            this.contacts.add(replacement);
-            this.replacementCache.remove(replacement);
+            /* Replace the contact with the most recently seen one from the replacement cache */
+            this.unmarkStale(known);
+            this.contacts.remove(known.getNode());
+            Contact replacement = this.replacementCache.remove(this.replacementCache.mostRecent().getNode());
+            this.addContact(replacement);
+            this.publish();
         }
         else
         {
             /* There is no replacement, just increment the contact's stale count */
-            this.getFromContacts(c.getNode()).incrementStaleCount();
+            this.unmarkStale(known);
+            known.incrementStaleCount();
+            this.markStale(known);
         }
 
         return true;
     }
 
-    private synchronized Contact getFromContacts(Node n)
-    {
-        for (Contact c : this.contacts)
-        {
-            if (c.getNode().equals(n))
-            {
-                return c;
-            }
-        }
-
-        /* This contact does not exist */
-        throw new NoSuchElementException("The contact does not exist in the contacts list.");
-    }
-
-    private synchronized Contact removeFromContacts(Node n)
-    {
-        for (Contact c : this.contacts)
-        {
-            if (c.getNode().equals(n))
-            {
-                this.contacts.remove(c);
-                return c;
-            }
-        }
-
-        /* We got here means this element does not exist */
-        throw new NoSuchElementException("Node does not exist in the replacement cache. ");
-    }
-
     @Override
     public synchronized boolean removeNode(Node n)
     {
@@ -180,13 +184,13 @@ public class JKademliaBucket implements KademliaBucket
     }
 
     @Override
-    public synchronized int numContacts()
+    public int numContacts()
     {
-        return this.contacts.size();
+        return this.nodes.length;
     }
 
     @Override
-    public synchronized int getDepth()
+    public int getDepth()
     {
         return this.depth;
     }
@@ -211,26 +215,127 @@ public class JKademliaBucket implements KademliaBucket
         return ret;
     }
 
+    @Override
+    public List<Node> getNodes()
+    {
+        return Collections.unmodifiableList(Arrays.asList(this.nodes));
+    }
+
+    @Override
+    public int addClosest(KademliaId key, List<Node> closest, int max)
+    {
+        ContactIndex idx = this.index;
+        if (idx != null)
+        {
+            idx.addClosest(key, closest, max);
+            return idx.size();
+        }
+
+        Node[] snapshot = this.nodes;
+        for (Node n : snapshot)
+        {
+            KademliaId id = n.getNodeId();
+
+            /* The routing table hands us buckets from close to far, so most nodes go at the end, if at all */
+            int pos = closest.size();
+            while (pos > 0 && key.compareDistance(id, closest.get(pos - 1).getNodeId()) < 0)
+            {
+                pos--;
+            }
+
+            if (pos < max)
+            {
+                if (closest.size() == max)
+                {
+                    closest.remove(max - 1);
+                }
+                closest.add(pos, n);
+            }
+        }
+        return snapshot.length;
+    }
+
+    /**
+     * Add a contact to the bucket's contacts; a contact restored from a saved routing table may already be stale
+     */
+    private void addContact(Contact c)
+    {
+        this.contacts.add(c);
+        this.markStale(c);
+    }
+
+    /**
+     * @return The contact with the highest stale count, or null if no contact is stale
+     */
+    private Contact stalest()
+    {
+        Set<Contact> group = this.staleContacts.get(this.stalestCount);
+        if (group != null)
+        {
+            return group.iterator().next();
+        }
+
+        /* If contacts are stale without failing at all, the least recently seen one is the first to go */
+        return this.config.stale() <= 0 ? this.contacts.leastRecent() : null;
+    }
+
+    /**
+     * Start tracking a contact if its stale count makes it stale; called with the lock held
+     */
+    private void markStale(Contact c)
+    {
+        int count = c.staleCount();
+        if (count < 1 || count < this.config.stale())
+        {
+            return;
+        }
+
+        Set<Contact> group = this.staleContacts.get(count);
+        if (group == null)
+        {
+            group = new LinkedHashSet<>();
+            this.staleContacts.put(count, group);
+        }
+        group.add(c);
+        this.stalestCount = Math.max(this.stalestCount, count);
+    }
+
+    /**
+     * Stop tracking a contact before its stale count changes or it leaves the bucket; called with the lock held
+     */
+    private void unmarkStale(Contact c)
+    {
+        Set<Contact> group = this.staleContacts.get(c.staleCount());
+        if (group == null || !group.remove(c) || !group.isEmpty())
+        {
+            return;
+        }
+
+        this.staleContacts.remove(c.staleCount());
+
+        /* Every count stepped down over was first stepped up to by an increment, so this is constant time on average */
+        while (this.stalestCount > 0 && !this.staleContacts.containsKey(this.stalestCount))
+        {
+            this.stalestCount--;
+        }
+    }
+
     /**
      * When the bucket is filled, we keep extra contacts in the replacement cache.
      */
     private synchronized void insertIntoReplacementCache(Contact c)
     {
-        /* Just return if this contact is already in our replacement cache */
-        if (this.replacementCache.contains(c))
+        /* If this contact is already in our replacement cache, lets update that we've seen it */
+        Contact known = this.replacementCache.get(c.getNode());
+        if (known != null)
         {
-            /**
-             * If the contact is already in the bucket, lets update that we've seen it
-             * We need to remove and re-add the contact to get the Sorted Set to update sort order
-             */
-            Contact tmp = this.removeFromReplacementCache(c.getNode());
-            tmp.setSeenNow();
-            this.replacementCache.add(tmp);
+            known.setSeenNow();
+            this.replacementCache.touch(known);
         }
         else if (this.replacementCache.size() > this.config.k())
         {
             /* if our cache is filled, we remove the least recently seen contact */
-            this.replacementCache.remove(this.replacementCache.last());
+            this.replacementCache.remove(this.replacementCache.leastRecent().getNode());
             this.replacementCache.add(c);
         }
         else
@@ -239,21 +344,6 @@ public class JKademliaBucket implements KademliaBucket
         }
     }
 
-    private synchronized Contact removeFromReplacementCache(Node n)
-    {
-        for (Contact c : this.replacementCache)
-        {
-            if (c.getNode().equals(n))
-            {
-                this.replacementCache.remove(c);
-                return c;
-            }
-        }
-
-        /* We got here means this element does not exist */
-        throw new NoSuchElementException("Node does not exist in the replacement cache. ");
-    }
-
     @Override
     public synchronized String toString()
     {
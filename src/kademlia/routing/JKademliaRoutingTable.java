@@ -2,15 +2,17 @@ package kademlia.routing;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeSet;
 import kademlia.KadConfiguration;
-import kademlia.node.KeyComparator;
 import kademlia.node.Node;
 import kademlia.node.KademliaId;
 
 /**
  * Implementation of a Kademlia routing table
  *
+ * The table itself takes no lock: each bucket locks its own changes, so inserts into different buckets don't
+ * contend, and lookups read the buckets' snapshots without locking at all. A reader therefore sees each bucket
+ * as of its last change, not the whole table at one instant.
+ *
  * @author Joshua Kissoon
  * @created 20140215
  */
@@ -18,7 +20,7 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
 {
 
     private final Node localNode;  // The current node
-    private transient KademliaBucket[] buckets;
+    private transient volatile KademliaBucket[] buckets;
 
     private transient KadConfiguration config;
 
@@ -40,11 +42,12 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
     @Override
     public final void initialize()
     {
-        this.buckets = new KademliaBucket[KademliaId.ID_LENGTH];
+        KademliaBucket[] fresh = new KademliaBucket[KademliaId.ID_LENGTH];
         for (int i = 0; i < KademliaId.ID_LENGTH; i++)
         {
-            buckets[i] = new JKademliaBucket(i, this.config);
+            fresh[i] = new JKademliaBucket(i, this.config);
         }
+        this.buckets = fresh;
     }
 
     @Override
@@ -59,7 +62,7 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
      * @param c The contact to add
      */
     @Override
-    public synchronized final void insert(Contact c)
+    public final void insert(Contact c)
     {
         this.buckets[this.getBucketId(c.getNode().getNodeId())].insert(c);
     }
@@ -70,7 +73,7 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
      * @param n The node to add
      */
     @Override
-    public synchronized final void insert(Node n)
+    public final void insert(Node n)
     {
         this.buckets[this.getBucketId(n.getNodeId())].insert(n);
     }
@@ -94,46 +97,71 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
     /**
      * Find the closest set of contacts to a given NodeId
      *
+     * Bucket i holds the nodes whose distance from us has its highest bit at i, so the buckets can be visited
+     * from the closest to the target outwards without sorting the table: the buckets whose bit is set in
+     * our distance to the target come first, highest bit first, then the others, lowest bit first.
+     * Every bucket visited is farther from the target than the ones before it, so once we have seen
+     * enough nodes the rest of the table can't make the cut.
+     *
      * @param target           The NodeId to find contacts close to
      * @param numNodesRequired The number of contacts to find
      *
      * @return List A List of contacts closest to target
      */
     @Override
-    public synchronized final List<Node> findClosest(KademliaId target, int numNodesRequired)
+    public final List<Node> findClosest(KademliaId target, int numNodesRequired)
     {
-        TreeSet<Node> sortedSet = new TreeSet<>(new KeyComparator(target));
-        sortedSet.addAll(this.getAllNodes());
+        List<Node> closest = new ArrayList<>(Math.max(0, numNodesRequired));
+        if (numNodesRequired <= 0)
+        {
+            return closest;
+        }
 
-        List<Node> closest = new ArrayList<>(numNodesRequired);
+        KademliaBucket[] table = this.buckets;
+        byte[] key = target.getBytes();
+        byte[] local = this.localNode.getNodeId().getBytes();
 
-        /* Now we have the sorted set, lets get the top numRequired */
-        int count = 0;
-        for (Node n : sortedSet)
+        /* Bucket 0 also holds ourself, who doesn't fit the order; it has room for one other node, so just take it in */
+        table[0].addClosest(target, closest, numNodesRequired);
+
+        int seen = 0;
+        for (int i = KademliaId.ID_LENGTH - 1; i > 0 && seen < numNodesRequired; i--)
+        {
+            if (isSet(local, key, i))
+            {
+                seen += table[i].addClosest(target, closest, numNodesRequired);
+            }
+        }
+        for (int i = 1; i < KademliaId.ID_LENGTH && seen < numNodesRequired; i++)
         {
-            closest.add(n);
-            if (++count == numNodesRequired)
+            if (!isSet(local, key, i))
             {
-                break;
+                seen += table[i].addClosest(target, closest, numNodesRequired);
             }
         }
         return closest;
     }
 
+    /**
+     * @return Whether bit i, counted from the least significant, is set in the distance between two IDs
+     */
+    private static boolean isSet(byte[] a, byte[] b, int i)
+    {
+        int index = a.length - 1 - (i >>> 3);
+        return (((a[index] ^ b[index]) >>> (i & 7)) & 1) != 0;
+    }
+
     /**
      * @return List A List of all Nodes in this JKademliaRoutingTable
      */
     @Override
-    public synchronized final List<Node> getAllNodes()
+    public final List<Node> getAllNodes()
     {
         List<Node> nodes = new ArrayList<>();
 
         for (KademliaBucket b : this.buckets)
         {
-            for (Contact c : b.getContacts())
-            {
-                nodes.add(c.getNode());
-            }
+            nodes.addAll(b.getNodes());
         }
 
         return nodes;
@@ -198,7 +226,7 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
      * @param n
      */
     @Override
-    public synchronized void setUnresponsiveContact(Node n)
+    public void setUnresponsiveContact(Node n)
     {
         int bucketId = this.getBucketId(n.getNodeId());
 
@@ -207,7 +235,7 @@ public class JKademliaRoutingTable implements KademliaRoutingTable
     }
 
     @Override
-    public synchronized final String toString()
+    public final String toString()
     {
         StringBuilder sb = new StringBuilder("\nPrinting Routing Table Started ***************** \n");
         int totalContacts = 0;
@@ -1,6 +1,7 @@
 package kademlia.routing;
 
 import java.util.List;
+import kademlia.node.KademliaId;
 import kademlia.node.Node;
 
 /**
@@ -84,4 +85,20 @@ public interface KademliaBucket
      * @return An Iterable structure with all contacts in this bucket
      */
     public List<Contact> getContacts();
+
+    /**
+     * @return The nodes in this bucket as of the last change to them; the list never changes
+     */
+    public List<Node> getNodes();
+
+    /**
+     * Merge the nodes in this bucket into a list of the nodes closest to a key
+     *
+     * @param key     The ID the distances are measured from
+     * @param closest The nodes closest to the key so far, closest first; stays that way
+     * @param max     Most nodes to keep in the list; the farthest ones fall off
+     *
+     * @return The number of nodes in this bucket
+     */
+    public int addClosest(KademliaId key, List<Node> closest, int max);
 }
@@ -0,0 +1,149 @@
+package kademlia.simulations;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.Semaphore;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.message.ConnectMessage;
+import kademlia.message.Message;
+import kademlia.message.Receiver;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.transport.TransportType;
+
+/**
+ * Measure how many bytes are allocated on the heap per RPC.
+ *
+ * Two nodes in this JVM ping each other with ConnectMessages; the bytes allocated by all threads
+ * are read from the JVM before and after and divided by the number of RPCs, so the figure covers both ends.
+ *
+ * Usage: AllocationBenchmark [numRpcs] [DATAGRAM_SOCKET|NIO] [heap|direct]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class AllocationBenchmark
+{
+
+    /* Number of RPCs in flight at a time */
+    private static final int WINDOW = 32;
+
+    public static void main(String[] args)
+    {
+        final int numRpcs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final TransportType transport = args.length > 1 ? TransportType.valueOf(args[1]) : TransportType.DATAGRAM_SOCKET;
+        final boolean direct = args.length > 2 && "direct".equals(args[2]);
+
+        KadConfiguration config = new DefaultConfiguration()
+        {
+            @Override
+            public TransportType transport()
+            {
+                return transport;
+            }
+
+            @Override
+            public boolean useDirectBuffers()
+            {
+                return direct;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+
+            @Override
+            public double inboundRateLimit()
+            {
+                /* One node floods the other on purpose */
+                return 0;
+            }
+        };
+
+        try
+        {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            JKademliaNode kad1 = new JKademliaNode("Alloc1", new Node(new KademliaId(), local, 12149), 12149, config);
+            JKademliaNode kad2 = new JKademliaNode("Alloc2", new Node(new KademliaId(), local, 12150), 12150, config);
+
+            /* Warm up so class loading and JIT don't show up in the numbers */
+            run(kad1, kad2.getNode(), numRpcs / 10);
+
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            run(kad1, kad2.getNode(), numRpcs);
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+            allocated = allocatedBytes() - allocated;
+
+            System.out.println("Transport: " + transport + (direct ? " (direct buffers)" : "") + "; RPCs: " + numRpcs + "; Total time: " + elapsed + " ms");
+            System.out.println("Allocated: " + (allocated / 1024 / 1024) + " MB; Per RPC: " + (allocated / numRpcs) + " bytes");
+
+            kad1.shutdown(false);
+            kad2.shutdown(false);
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Send the RPCs, keeping WINDOW of them in flight
+     */
+    private static void run(JKademliaNode from, Node to, int numRpcs) throws Exception
+    {
+        final Semaphore window = new Semaphore(WINDOW);
+        Receiver recv = new Receiver()
+        {
+            @Override
+            public void receive(Message incoming, int conversationId)
+            {
+                window.release();
+            }
+
+            @Override
+            public void timeout(int conversationId)
+            {
+                window.release();
+            }
+        };
+
+        ConnectMessage msg = new ConnectMessage(from.getNode());
+        for (int i = 0; i < numRpcs; i++)
+        {
+            window.acquire();
+            try
+            {
+                from.getServer().sendMessage(to, msg, recv);
+            }
+            catch (IOException e)
+            {
+                window.release();
+            }
+        }
+        window.acquire(WINDOW);
+    }
+
+    /**
+     * @return Bytes allocated so far by all live threads
+     */
+    private static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+        {
+            if (bytes > 0)
+            {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
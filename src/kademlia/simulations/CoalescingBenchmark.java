@@ -0,0 +1,137 @@
+package kademlia.simulations;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.Semaphore;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.message.Message;
+import kademlia.message.NodeLookupMessage;
+import kademlia.message.Receiver;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+
+/**
+ * Measure the throughput of a burst of lookup RPCs to one node, with and without batching small messages.
+ *
+ * Like a bucket refresh, the sending node keeps many NodeLookupMessages in flight to the same node.
+ * One pair of nodes sends every message in its own datagram, the other batches them within a window.
+ *
+ * Usage: CoalescingBenchmark [numRpcs] [windowMicros]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class CoalescingBenchmark
+{
+
+    /* Number of RPCs in flight at a time */
+    private static final int IN_FLIGHT = 256;
+
+    public static void main(String[] args)
+    {
+        int numRpcs = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        long window = args.length > 1 ? Long.parseLong(args[1]) : 200;
+
+        try
+        {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            JKademliaNode plain1 = new JKademliaNode("Plain1", new Node(new KademliaId(), local, 12349), 12349, configuration(0));
+            JKademliaNode plain2 = new JKademliaNode("Plain2", new Node(new KademliaId(), local, 12350), 12350, configuration(0));
+            JKademliaNode batch1 = new JKademliaNode("Batch1", new Node(new KademliaId(), local, 12351), 12351, configuration(window));
+            JKademliaNode batch2 = new JKademliaNode("Batch2", new Node(new KademliaId(), local, 12352), 12352, configuration(window));
+
+            /* Bootstrapping lets the nodes learn each other's features */
+            plain1.bootstrap(plain2.getNode());
+            batch1.bootstrap(batch2.getNode());
+
+            /* Warm up so class loading and JIT don't show up in the numbers */
+            run(plain1, plain2.getNode(), numRpcs / 10);
+            run(batch1, batch2.getNode(), numRpcs / 10);
+
+            long plain = run(plain1, plain2.getNode(), numRpcs);
+            long batched = run(batch1, batch2.getNode(), numRpcs);
+
+            System.out.println("RPCs: " + numRpcs + "; In flight: " + IN_FLIGHT + "; Window: " + window + " us");
+            System.out.println(String.format("%10s %12s %12s", "", "Time (ms)", "RPCs/s"));
+            System.out.println(String.format("%10s %12d %12d", "Unbatched", plain, numRpcs * 1000L / Math.max(1, plain)));
+            System.out.println(String.format("%10s %12d %12d", "Batched", batched, numRpcs * 1000L / Math.max(1, batched)));
+
+            plain1.shutdown(false);
+            plain2.shutdown(false);
+            batch1.shutdown(false);
+            batch2.shutdown(false);
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static KadConfiguration configuration(final long window)
+    {
+        return new DefaultConfiguration()
+        {
+            @Override
+            public long coalescingWindow()
+            {
+                return window;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+
+            @Override
+            public double inboundRateLimit()
+            {
+                /* One node floods the other on purpose */
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Send the RPCs, keeping IN_FLIGHT of them in flight
+     *
+     * @return Milliseconds it took
+     */
+    private static long run(JKademliaNode from, Node to, int numRpcs) throws Exception
+    {
+        final Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        Receiver recv = new Receiver()
+        {
+            @Override
+            public void receive(Message incoming, int conversationId)
+            {
+                inFlight.release();
+            }
+
+            @Override
+            public void timeout(int conversationId)
+            {
+                inFlight.release();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < numRpcs; i++)
+        {
+            inFlight.acquire();
+            try
+            {
+                from.getServer().sendMessage(to, new NodeLookupMessage(from.getNode(), new KademliaId()), recv);
+            }
+            catch (IOException e)
+            {
+                inFlight.release();
+            }
+        }
+        inFlight.acquire(IN_FLIGHT);
+        return (System.nanoTime() - start) / 1000000L;
+    }
+}
@@ -0,0 +1,125 @@
+package kademlia.simulations;
+
+import java.net.InetAddress;
+import java.util.Random;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+
+/**
+ * Measure the bytes put on the wire to store text content, with and without compression.
+ *
+ * One pair of nodes has compression turned off, the other has it on; each pair stores the same
+ * text values and we compare how much the storing node sent.
+ *
+ * Usage: CompressionBenchmark [valuesPerSize]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class CompressionBenchmark
+{
+
+    private static final int[] SIZES =
+    {
+        512, 2 * 1024, 16 * 1024, 64 * 1024, 256 * 1024
+    };
+
+    private static final String[] WORDS =
+    {
+        "kademlia", "node", "bucket", "contact", "lookup", "the", "a", "of", "to", "content", "store", "value",
+        "distance", "closest", "routing", "table", "refresh", "network", "peer", "message", "reply", "and"
+    };
+
+    public static void main(String[] args)
+    {
+        int valuesPerSize = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+        try
+        {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            JKademliaNode plain1 = new JKademliaNode("Plain1", new Node(new KademliaId(), local, 12249), 12249, configuration(0));
+            JKademliaNode plain2 = new JKademliaNode("Plain2", new Node(new KademliaId(), local, 12250), 12250, configuration(0));
+            JKademliaNode comp1 = new JKademliaNode("Comp1", new Node(new KademliaId(), local, 12251), 12251, configuration(1024));
+            JKademliaNode comp2 = new JKademliaNode("Comp2", new Node(new KademliaId(), local, 12252), 12252, configuration(1024));
+
+            /* Bootstrapping lets the nodes learn each other's features */
+            plain1.bootstrap(plain2.getNode());
+            comp1.bootstrap(comp2.getNode());
+
+            System.out.println(String.format("%10s %16s %16s %8s", "Value size", "Plain B/store", "Deflate B/store", "Ratio"));
+            Random random = new Random(20261017);
+            for (int size : SIZES)
+            {
+                String[] values = new String[valuesPerSize];
+                for (int i = 0; i < valuesPerSize; i++)
+                {
+                    values[i] = text(random, size);
+                }
+
+                long plain = store(plain1, values);
+                long compressed = store(comp1, values);
+                System.out.println(String.format("%10d %16d %16d %7.1fx", size, plain / valuesPerSize, compressed / valuesPerSize, (double) plain / compressed));
+            }
+
+            plain1.shutdown(false);
+            plain2.shutdown(false);
+            comp1.shutdown(false);
+            comp2.shutdown(false);
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static KadConfiguration configuration(final int compressionThreshold)
+    {
+        return new DefaultConfiguration()
+        {
+            @Override
+            public int compressionThreshold()
+            {
+                return compressionThreshold;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Store the values from the given node
+     *
+     * @return Bytes the node sent doing so
+     */
+    private static long store(JKademliaNode kad, String[] values) throws Exception
+    {
+        long before = kad.getStatistician().getTotalDataSent();
+        for (String value : values)
+        {
+            kad.put(new DHTContentImpl(kad.getOwnerId(), value));
+        }
+        return (kad.getStatistician().getTotalDataSent() - before) * 1000L;
+    }
+
+    /**
+     * Generate some text of the given length
+     */
+    private static String text(Random random, int length)
+    {
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length)
+        {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(10) == 0 ? ". " : " ");
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
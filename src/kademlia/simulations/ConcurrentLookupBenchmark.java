@@ -0,0 +1,119 @@
+package kademlia.simulations;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.operation.NodeLookupOperation;
+
+/**
+ * Benchmark how many node lookups a single node can hold in flight at the same time.
+ *
+ * The node knows one live peer and one dead contact; every lookup waits on the dead contact
+ * until it times out, so all lookups are in flight together.
+ *
+ * Usage: ConcurrentLookupBenchmark [numLookups] [virtual|platform]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ConcurrentLookupBenchmark
+{
+
+    public static void main(String[] args)
+    {
+        final int numLookups = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final boolean virtual = args.length < 2 || "virtual".equals(args[1]);
+
+        KadConfiguration config = new DefaultConfiguration()
+        {
+            @Override
+            public boolean useVirtualThreads()
+            {
+                return virtual;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+
+            @Override
+            public double inboundRateLimit()
+            {
+                /* One node floods the other on purpose */
+                return 0;
+            }
+        };
+
+        try
+        {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            final JKademliaNode kad1 = new JKademliaNode("Bench1", new Node(new KademliaId(), local, 12049), 12049, config);
+            final JKademliaNode kad2 = new JKademliaNode("Bench2", new Node(new KademliaId(), local, 12050), 12050, config);
+            kad1.bootstrap(kad2.getNode());
+
+            /* A contact nobody listens for; lookups will wait on it until the response timeout */
+            kad1.getRoutingTable().insert(new Node(new KademliaId(), local, 12051));
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(numLookups);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < numLookups; i++)
+            {
+                kad1.getExecutor().execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        int now = inFlight.incrementAndGet();
+                        int max;
+                        while (now > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, now))
+                        {
+                        }
+
+                        try
+                        {
+                            new NodeLookupOperation(kad1.getServer(), kad1, new KademliaId(), kad1.getCurrentConfiguration()).execute();
+                        }
+                        catch (Exception e)
+                        {
+                            System.err.println("Lookup failed: " + e.getMessage());
+                        }
+                        finally
+                        {
+                            inFlight.decrementAndGet();
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            done.await();
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+
+            System.out.println("Mode: " + (virtual ? "virtual" : "platform") + " threads");
+            System.out.println("Lookups: " + numLookups + "; Max in flight: " + maxInFlight.get() + "; Total time: " + elapsed + " ms");
+            System.out.println("Peak live threads: " + threads.getPeakThreadCount());
+
+            kad1.shutdown(false);
+            kad2.shutdown(false);
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
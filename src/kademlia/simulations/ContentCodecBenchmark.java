@@ -0,0 +1,150 @@
+package kademlia.simulations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Random;
+import kademlia.dht.GetParameter;
+import kademlia.dht.JKademliaStorageEntry;
+import kademlia.message.CompactMessage;
+import kademlia.message.ContentLookupMessage;
+import kademlia.message.ContentMessage;
+import kademlia.message.Message;
+import kademlia.message.MessageFactory;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+
+/**
+ * Measure how fast content messages are encoded and decoded with the JSON codec and with the binary one.
+ *
+ * Each case runs untimed first so the JIT has compiled it, then runs for a fixed time; the table shows
+ * operations per second and the size of the message body.
+ *
+ * Usage: ContentCodecBenchmark [millisPerCase]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ContentCodecBenchmark
+{
+
+    private static final int[] SIZES =
+    {
+        64, 1024, 16 * 1024
+    };
+
+    public static void main(String[] args)
+    {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        try
+        {
+            Node origin = new Node(new KademliaId(), InetAddress.getLoopbackAddress(), 7574);
+            MessageFactory factory = new MessageFactory(null, null, null);
+            Random random = new Random(20261017);
+
+            System.out.println(String.format("%-22s %8s %8s %14s %14s", "Message", "Codec", "Bytes", "Encode ops/s", "Decode ops/s"));
+            for (int size : SIZES)
+            {
+                char[] data = new char[size];
+                for (int i = 0; i < size; i++)
+                {
+                    data[i] = (char) ('a' + random.nextInt(26));
+                }
+                DHTContentImpl content = new DHTContentImpl(new KademliaId(), "Owner" + size);
+                content.setData(new String(data));
+
+                ContentMessage msg = new ContentMessage(origin, new JKademliaStorageEntry(content));
+                run("ContentMessage " + size + "B", msg, factory, millis);
+            }
+
+            GetParameter params = new GetParameter(new KademliaId(), DHTContentImpl.TYPE, "Owner");
+            run("ContentLookupMessage", new ContentLookupMessage(origin, params), factory, millis);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static void run(String name, CompactMessage msg, MessageFactory factory, long millis) throws IOException
+    {
+        for (boolean compact : new boolean[]
+        {
+            false, true
+        })
+        {
+            byte code = compact ? msg.compactCode() : msg.code();
+            byte[] encoded = encode(msg, compact);
+
+            /* Warm up, then measure */
+            encodeRate(msg, compact, millis / 2);
+            double encodes = encodeRate(msg, compact, millis);
+            decodeRate(encoded, code, factory, millis / 2);
+            double decodes = decodeRate(encoded, code, factory, millis);
+
+            System.out.println(String.format("%-22s %8s %8d %14.0f %14.0f", name, compact ? "Binary" : "JSON", encoded.length, encodes, decodes));
+        }
+    }
+
+    private static byte[] encode(CompactMessage msg, boolean compact) throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        if (compact)
+        {
+            msg.toCompactStream(out);
+        }
+        else
+        {
+            msg.toStream(out);
+        }
+        out.flush();
+        return bout.toByteArray();
+    }
+
+    private static double encodeRate(CompactMessage msg, boolean compact, long millis) throws IOException
+    {
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        do
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                encode(msg, compact);
+            }
+            ops += 100;
+        }
+        while ((now = System.nanoTime()) < end);
+        return ops * 1e9 / (now - start);
+    }
+
+    private static double decodeRate(byte[] encoded, byte code, MessageFactory factory, long millis) throws IOException
+    {
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long now;
+        Message last = null;
+        do
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                last = factory.createMessage(code, new DataInputStream(new ByteArrayInputStream(encoded)));
+            }
+            ops += 100;
+        }
+        while ((now = System.nanoTime()) < end);
+
+        if (last == null)
+        {
+            throw new IllegalStateException();
+        }
+        return ops * 1e9 / (now - start);
+    }
+}
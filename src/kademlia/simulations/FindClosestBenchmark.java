@@ -0,0 +1,187 @@
+package kademlia.simulations;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import kademlia.DefaultConfiguration;
+import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
+import kademlia.node.Node;
+import kademlia.routing.JKademliaRoutingTable;
+
+/**
+ * Measure the time and heap allocated to find the K closest contacts to a random key, in routing tables of 100 to 100000 contacts.
+ *
+ * The routing table walks its buckets outwards from the key, iterating the contacts of each bucket or scanning
+ * the bucket's flat contact index; both are compared to sorting every contact in the table by its distance to the key,
+ * which is how the closest contacts used to be found. All must come up with the same contacts.
+ *
+ * Usage: FindClosestBenchmark [numLookups] [k]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class FindClosestBenchmark
+{
+
+    private static final int[] TABLE_SIZES =
+    {
+        100, 1000, 10000, 100000
+    };
+
+    public static void main(String[] args)
+    {
+        int numLookups = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        try
+        {
+            System.out.println(String.format("%10s %14s %14s %14s %14s %14s", "Contacts", "Method", "ns/lookup", "Bytes/lookup", "Speedup", "Mismatches"));
+            for (int size : TABLE_SIZES)
+            {
+                Node[] nodes = nodes(size);
+                JKademliaRoutingTable table = table(nodes, false);
+                JKademliaRoutingTable indexed = table(nodes, true);
+                KademliaId[] targets = new KademliaId[Math.min(numLookups, 1000)];
+                for (int i = 0; i < targets.length; i++)
+                {
+                    targets[i] = new KademliaId();
+                }
+
+                /* Fewer lookups on big tables, sorting all of them takes a while */
+                int lookups = (int) Math.max(100, Math.min(numLookups, numLookups * 1000L / size));
+
+                /* Warm up */
+                walk(table, targets, k, lookups);
+                walk(indexed, targets, k, lookups);
+                sortAll(table, targets, k, Math.max(1, lookups / 10));
+
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                sortAll(table, targets, k, lookups);
+                long sortTime = (System.nanoTime() - start) / lookups;
+                long sortBytes = (allocatedBytes() - allocated) / lookups;
+                System.out.println(String.format("%10d %14s %14d %14d %14s %14s", size, "Sort all", sortTime, sortBytes, "", ""));
+
+                report(size, "Bucket walk", table, targets, k, lookups, sortTime);
+                report(size, "Contact index", indexed, targets, k, lookups, sortTime);
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static void report(int size, String method, JKademliaRoutingTable table, KademliaId[] targets, int k, int lookups, long sortTime)
+    {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        walk(table, targets, k, lookups);
+        long time = (System.nanoTime() - start) / lookups;
+        long bytes = (allocatedBytes() - allocated) / lookups;
+
+        int mismatches = 0;
+        for (KademliaId target : targets)
+        {
+            if (!table.findClosest(target, k).equals(sortAll(table, target, k)))
+            {
+                mismatches++;
+            }
+        }
+
+        System.out.println(String.format("%10d %14s %14d %14d %13.1fx %14d", size, method, time, bytes, (double) sortTime / Math.max(1, time), mismatches));
+    }
+
+    private static Node[] nodes(int size) throws Exception
+    {
+        InetAddress local = InetAddress.getLoopbackAddress();
+        Node[] nodes = new Node[size];
+        for (int i = 0; i < size; i++)
+        {
+            nodes[i] = new Node(new KademliaId(), local, 7574 + i % 50000);
+        }
+        return nodes;
+    }
+
+    /**
+     * A routing table of the given nodes, the first one being the local node; buckets are made big enough to keep them all
+     */
+    private static JKademliaRoutingTable table(Node[] nodes, final boolean index)
+    {
+        final int size = nodes.length;
+        KadConfiguration config = new DefaultConfiguration()
+        {
+            @Override
+            public int k()
+            {
+                return size;
+            }
+
+            @Override
+            public boolean useContactIndex()
+            {
+                return index;
+            }
+        };
+
+        JKademliaRoutingTable table = new JKademliaRoutingTable(nodes[0], config);
+        for (int i = 1; i < size; i++)
+        {
+            table.insert(nodes[i]);
+        }
+        return table;
+    }
+
+    private static int walk(JKademliaRoutingTable table, KademliaId[] targets, int k, int lookups)
+    {
+        int total = 0;
+        for (int i = 0; i < lookups; i++)
+        {
+            total += table.findClosest(targets[i % targets.length], k).size();
+        }
+        return total;
+    }
+
+    private static int sortAll(JKademliaRoutingTable table, KademliaId[] targets, int k, int lookups)
+    {
+        int total = 0;
+        for (int i = 0; i < lookups; i++)
+        {
+            total += sortAll(table, targets[i % targets.length], k).size();
+        }
+        return total;
+    }
+
+    /**
+     * The closest contacts the way they used to be found: sort every contact in the table, then take the first K
+     */
+    private static List<Node> sortAll(JKademliaRoutingTable table, KademliaId target, int k)
+    {
+        TreeSet<Node> sortedSet = new TreeSet<>(new KeyComparator(target));
+        sortedSet.addAll(table.getAllNodes());
+
+        List<Node> closest = new ArrayList<>(k);
+        for (Node n : sortedSet)
+        {
+            closest.add(n);
+            if (closest.size() == k)
+            {
+                break;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return Bytes allocated so far by this thread
+     */
+    private static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,199 @@
+package kademlia.simulations;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import kademlia.node.KademliaId;
+
+/**
+ * Measure the time and heap allocated by the distance operations on KademliaIds, word at a time against the way
+ * they used to be done: getDistance() by making the xor and counting its leading zeros a bit at a time,
+ * and distance comparisons by turning the IDs into BigIntegers.
+ *
+ * Each operation runs a few rounds so the JIT has settled; the last round is reported.
+ *
+ * Usage: KademliaIdBenchmark [numOperations]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class KademliaIdBenchmark
+{
+
+    private static final int NUM_IDS = 1024;
+    private static final int ROUNDS = 5;
+
+    private static final KademliaId[] IDS = new KademliaId[NUM_IDS];
+    private static final KademliaId[] COPIES = new KademliaId[NUM_IDS];
+
+    /* Results are summed up here so the JIT can't drop the work */
+    private static long sink;
+
+    public static void main(String[] args)
+    {
+        int numOperations = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        for (int i = 0; i < NUM_IDS; i++)
+        {
+            IDS[i] = new KademliaId();
+            COPIES[i] = new KademliaId(IDS[i].getBytes().clone());
+        }
+
+        System.out.println(String.format("%-28s %10s %10s", "Operation", "ns/op", "Bytes/op"));
+        for (final Operation op : Operation.values())
+        {
+            long time = 0;
+            long bytes = 0;
+            for (int round = 0; round < ROUNDS; round++)
+            {
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                sink += op.run(numOperations);
+                time = System.nanoTime() - start;
+                bytes = allocatedBytes() - allocated;
+            }
+            System.out.println(String.format("%-28s %10.1f %10.1f", op.label, (double) time / numOperations, (double) bytes / numOperations));
+        }
+        System.out.println("(" + sink + ")");
+    }
+
+    private enum Operation
+    {
+
+        DISTANCE_BITS("getDistance, xor + bit loop")
+        {
+            @Override
+            long run(int n)
+            {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                {
+                    KademliaId a = IDS[i & (NUM_IDS - 1)];
+                    KademliaId b = IDS[(i * 7 + 1) & (NUM_IDS - 1)];
+                    sum += KademliaId.ID_LENGTH - firstSetBitIndex(xor(a, b));
+                }
+                return sum;
+            }
+        },
+        DISTANCE_WORDS("getDistance, words")
+        {
+            @Override
+            long run(int n)
+            {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                {
+                    sum += IDS[i & (NUM_IDS - 1)].getDistance(IDS[(i * 7 + 1) & (NUM_IDS - 1)]);
+                }
+                return sum;
+            }
+        },
+        COMPARE_BIGINTEGER("compare distance, BigInteger")
+        {
+            @Override
+            long run(int n)
+            {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                {
+                    BigInteger key = IDS[i & (NUM_IDS - 1)].getInt();
+                    BigInteger a = IDS[(i * 7 + 1) & (NUM_IDS - 1)].getInt().xor(key);
+                    BigInteger b = IDS[(i * 13 + 5) & (NUM_IDS - 1)].getInt().xor(key);
+                    sum += a.abs().compareTo(b.abs());
+                }
+                return sum;
+            }
+        },
+        COMPARE_WORDS("compare distance, words")
+        {
+            @Override
+            long run(int n)
+            {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                {
+                    KademliaId key = IDS[i & (NUM_IDS - 1)];
+                    sum += Integer.signum(key.compareDistance(IDS[(i * 7 + 1) & (NUM_IDS - 1)], IDS[(i * 13 + 5) & (NUM_IDS - 1)]));
+                }
+                return sum;
+            }
+        },
+        EQUALS("equals, equal IDs")
+        {
+            @Override
+            long run(int n)
+            {
+                long sum = 0;
+                for (int i = 0; i < n; i++)
+                {
+                    sum += IDS[i & (NUM_IDS - 1)].equals(COPIES[i & (NUM_IDS - 1)]) ? 1 : 0;
+                }
+                return sum;
+            }
+        };
+
+        private final String label;
+
+        private Operation(String label)
+        {
+            this.label = label;
+        }
+
+        abstract long run(int n);
+    }
+
+    /**
+     * The xor of two IDs, as KademliaId.xor() makes it
+     */
+    private static byte[] xor(KademliaId a, KademliaId b)
+    {
+        byte[] x = a.getBytes();
+        byte[] y = b.getBytes();
+        byte[] result = new byte[x.length];
+        for (int i = 0; i < x.length; i++)
+        {
+            result[i] = (byte) (x[i] ^ y[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Leading zeros counted a bit at a time, as getFirstSetBitIndex() used to
+     */
+    private static int firstSetBitIndex(byte[] id)
+    {
+        int prefixLength = 0;
+        for (byte b : id)
+        {
+            if (b == 0)
+            {
+                prefixLength += 8;
+            }
+            else
+            {
+                int count = 0;
+                for (int i = 7; i >= 0; i--)
+                {
+                    if ((b & (1 << i)) == 0)
+                    {
+                        count++;
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+                prefixLength += count;
+                break;
+            }
+        }
+        return prefixLength;
+    }
+
+    /**
+     * @return Bytes allocated so far by this thread
+     */
+    private static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
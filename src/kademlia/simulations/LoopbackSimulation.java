@@ -0,0 +1,227 @@
+package kademlia.simulations;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.exceptions.RoutingException;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
+import kademlia.node.Node;
+import kademlia.operation.NodeLookupOperation;
+import kademlia.transport.LoopbackNetwork;
+import kademlia.transport.TransportType;
+
+/**
+ * Run a whole network of nodes in one JVM over the in-memory loopback network, and see how well lookups find
+ * the node closest to a random key.
+ *
+ * Nodes join off a random node that joined before them, and once the traffic from joining has died down
+ * random nodes look up random keys; a lookup is correct
+ * if the closest node it found is the closest node in the network.
+ *
+ * Usage: LoopbackSimulation [numNodes] [numLookups] [minLatencyMs] [maxLatencyMs] [lossPercent]
+ *
+ * Every node still keeps its own routing table, pending RPC table and buffers; 10000 nodes need a heap of about 5GB.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class LoopbackSimulation
+{
+
+    /* Nodes joining at the same time */
+    private static final int BOOTSTRAP_THREADS = 4;
+
+    /* Lookups running at the same time */
+    private static final int LOOKUP_THREADS = 32;
+
+    /* Milliseconds between refreshes; longer than a run */
+    private static final long RESTORE_INTERVAL = 60 * 60 * 1000;
+
+    /* Milliseconds between checking whether the network has gone quiet after joining */
+    private static final long SETTLE_INTERVAL = 1000;
+
+    private static final int FIRST_PORT = 20000;
+
+    public static void main(String[] args)
+    {
+        final int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long minLatency = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long maxLatency = args.length > 3 ? Long.parseLong(args[3]) : minLatency;
+        double loss = args.length > 4 ? Double.parseDouble(args[4]) / 100 : 0;
+
+        LoopbackNetwork network = LoopbackNetwork.getDefault();
+        network.setLatencyModel(LoopbackNetwork.LatencyModel.uniform(minLatency, maxLatency));
+        network.setLossModel(LoopbackNetwork.LossModel.random(loss));
+
+        KadConfiguration config = new DefaultConfiguration()
+        {
+            @Override
+            public TransportType transport()
+            {
+                return TransportType.LOOPBACK;
+            }
+
+            @Override
+            public int inboundWorkerThreads()
+            {
+                /* Handle messages on the network's threads, not on a pool per node */
+                return 0;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+
+            @Override
+            public double inboundRateLimit()
+            {
+                /* Early nodes take the brunt of the joins */
+                return 0;
+            }
+
+            @Override
+            public long restoreInterval()
+            {
+                /* Keep the periodic refreshes of thousands of nodes out of the measurements */
+                return RESTORE_INTERVAL;
+            }
+        };
+
+        try
+        {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            final JKademliaNode[] nodes = new JKademliaNode[numNodes];
+            long start = System.nanoTime();
+            for (int i = 0; i < numNodes; i++)
+            {
+                int port = FIRST_PORT + i;
+                nodes[i] = new JKademliaNode("Loopback" + port, new Node(new KademliaId(), local, port), port, config);
+            }
+            System.out.println("Created " + numNodes + " nodes in " + (System.nanoTime() - start) / 1000000L + " ms");
+
+            /* Join every node off a node that joined before it, so the first node isn't flooded */
+            final Random random = new Random();
+            final AtomicInteger failed = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(BOOTSTRAP_THREADS);
+            start = System.nanoTime();
+            for (int i = 1; i < numNodes; i++)
+            {
+                final JKademliaNode node = nodes[i];
+                final Node bootstrap = nodes[random.nextInt(i)].getNode();
+                pool.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            join(node, bootstrap);
+                        }
+                        catch (Exception e)
+                        {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.HOURS);
+            System.out.println("Joined " + (numNodes - 1 - failed.get()) + "/" + (numNodes - 1) + " nodes in "
+                    + (System.nanoTime() - start) / 1000000L + " ms");
+
+            /* Let the traffic from joining die down */
+            long delivered;
+            do
+            {
+                delivered = network.delivered();
+                Thread.sleep(SETTLE_INTERVAL);
+            }
+            while (network.delivered() - delivered > numNodes);
+            System.out.println("Network settled after " + (System.nanoTime() - start) / 1000000L + " ms; " + network);
+
+            /* Lookups */
+            final List<Node> all = new ArrayList<>();
+            for (JKademliaNode node : nodes)
+            {
+                all.add(node.getNode());
+            }
+            final AtomicInteger correct = new AtomicInteger();
+            final AtomicLong lookupTime = new AtomicLong();
+            pool = Executors.newFixedThreadPool(LOOKUP_THREADS);
+            start = System.nanoTime();
+            for (int i = 0; i < numLookups; i++)
+            {
+                final JKademliaNode from = nodes[random.nextInt(numNodes)];
+                final KademliaId key = new KademliaId();
+                pool.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            long begin = System.nanoTime();
+                            NodeLookupOperation lookup = new NodeLookupOperation(from.getServer(), from, key, from.getCurrentConfiguration());
+                            lookup.execute();
+                            lookupTime.addAndGet(System.nanoTime() - begin);
+
+                            List<Node> found = lookup.getClosestNodes();
+                            if (!found.isEmpty() && found.get(0).equals(Collections.min(all, new KeyComparator(key))))
+                            {
+                                correct.incrementAndGet();
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            System.err.println("Lookup failed: " + e.getMessage());
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.HOURS);
+            long elapsed = (System.nanoTime() - start) / 1000000L;
+
+            System.out.println(String.format("Lookups: %d; Found the closest node: %d; Average lookup: %.1f ms; Total time: %d ms",
+                    numLookups, correct.get(), lookupTime.get() / 1e6 / numLookups, elapsed));
+            System.out.println(network);
+
+            for (JKademliaNode node : nodes)
+            {
+                node.shutdown(false);
+            }
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Join a node to the network the way the Kademlia paper does: know the bootstrap node and look up our own ID.
+     *
+     * JKademliaNode.bootstrap() also refreshes every bucket right away, which costs a lookup per bucket for each node
+     * that joins; that traffic is quadratic in the size of the network and would keep large simulations from ever settling.
+     */
+    private static void join(JKademliaNode node, Node bootstrap) throws IOException, RoutingException
+    {
+        node.getRoutingTable().insert(bootstrap);
+        new NodeLookupOperation(node.getServer(), node, node.getNode().getNodeId(), node.getCurrentConfiguration()).execute();
+    }
+}
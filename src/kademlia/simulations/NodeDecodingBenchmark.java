@@ -0,0 +1,129 @@
+package kademlia.simulations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import kademlia.message.NodeReplyMessage;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+
+/**
+ * Measure the time and heap allocated to decode a NodeReplyMessage, for replies listing nodes we have read before
+ * and replies listing nodes we haven't.
+ *
+ * Known nodes come out of the node registry, so their decoding should allocate little beyond the message and its list;
+ * unknown nodes cost a Node, a KademliaId and an InetAddress each.
+ *
+ * Usage: NodeDecodingBenchmark [numDecodes] [nodesPerReply]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class NodeDecodingBenchmark
+{
+
+    public static void main(String[] args)
+    {
+        int numDecodes = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        try
+        {
+            System.out.println(String.format("%10s %8s %14s %14s", "Format", "Nodes", "ns/decode", "Bytes/decode"));
+            for (boolean compact : new boolean[]
+            {
+                false, true
+            })
+            {
+                /* The same reply over and over: every node is known after the first decode */
+                byte[][] known = new byte[][]
+                {
+                    encode(reply(k, 0), compact)
+                };
+                decode(known, compact, numDecodes);
+                report(compact, "known", known, numDecodes);
+
+                /* A different reply every time: no node has been seen before */
+                int distinct = Math.min(numDecodes, 20000);
+                byte[][] unknown = new byte[distinct][];
+                for (int i = 0; i < distinct; i++)
+                {
+                    unknown[i] = encode(reply(k, i + 1), compact);
+                }
+                report(compact, "unknown", unknown, distinct);
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static void report(boolean compact, String nodes, byte[][] replies, int numDecodes) throws IOException
+    {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        decode(replies, compact, numDecodes);
+        long elapsed = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+
+        System.out.println(String.format("%10s %8s %14d %14d", compact ? "Compact" : "Standard", nodes, elapsed / numDecodes, allocated / numDecodes));
+    }
+
+    private static NodeReplyMessage reply(int k, int seed) throws IOException
+    {
+        List<Node> nodes = new ArrayList<>(k);
+        for (int i = 0; i < k; i++)
+        {
+            byte[] ip =
+            {
+                10, (byte) (seed >> 8), (byte) seed, (byte) i
+            };
+            nodes.add(new Node(new KademliaId(), InetAddress.getByAddress(ip), 7574 + i));
+        }
+        return new NodeReplyMessage(nodes.get(0), nodes);
+    }
+
+    private static byte[] encode(NodeReplyMessage msg, boolean compact) throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        if (compact)
+        {
+            msg.toCompactStream(out);
+        }
+        else
+        {
+            msg.toStream(out);
+        }
+        out.flush();
+        return bout.toByteArray();
+    }
+
+    private static int decode(byte[][] replies, boolean compact, int numDecodes) throws IOException
+    {
+        int total = 0;
+        for (int i = 0; i < numDecodes; i++)
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(replies[i % replies.length]));
+            NodeReplyMessage msg = compact ? NodeReplyMessage.fromCompactStream(in) : new NodeReplyMessage(in);
+            total += msg.getNodes().size();
+        }
+        return total;
+    }
+
+    /**
+     * @return Bytes allocated so far by this thread
+     */
+    private static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
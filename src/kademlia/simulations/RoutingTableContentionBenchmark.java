@@ -0,0 +1,162 @@
+package kademlia.simulations;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import kademlia.DefaultConfiguration;
+import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.routing.JKademliaRoutingTable;
+
+/**
+ * Measure how many routing table operations many threads get through together, mixing inserts with closest-contact queries.
+ *
+ * Most inserts are of nodes the table has seen before, like the origin of every received message;
+ * the rest are of new nodes. The routing table is run as it is, then with every call locking the whole table,
+ * which is how the table used to be guarded.
+ *
+ * Usage: RoutingTableContentionBenchmark [seconds] [threads] [insertPercent] [newNodePercent]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class RoutingTableContentionBenchmark
+{
+
+    private static final int KNOWN_NODES = 5000;
+
+    public static void main(String[] args)
+    {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int insertPercent = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int newNodePercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        try
+        {
+            KadConfiguration config = new DefaultConfiguration();
+            InetAddress local = InetAddress.getLoopbackAddress();
+            Node[] known = new Node[KNOWN_NODES];
+            for (int i = 0; i < known.length; i++)
+            {
+                known[i] = new Node(new KademliaId(), local, 7574 + i);
+            }
+
+            System.out.println(String.format("%14s %8s %10s %14s", "Locking", "Threads", "Inserts", "ops/s"));
+            for (int round = 0; round < 2; round++)
+            {
+                /* The first round warms up */
+                int time = round == 0 ? 1 : seconds;
+                for (boolean tableLock : new boolean[]
+                {
+                    true, false
+                })
+                {
+                    JKademliaRoutingTable table = new JKademliaRoutingTable(new Node(new KademliaId(), local, 7573), config);
+                    for (Node n : known)
+                    {
+                        table.insert(n);
+                    }
+
+                    long ops = run(table, known, tableLock, numThreads, insertPercent, newNodePercent, time);
+                    if (round > 0)
+                    {
+                        System.out.println(String.format("%14s %8d %9d%% %14d", tableLock ? "Whole table" : "Per bucket", numThreads, insertPercent, ops / seconds));
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The number of operations all threads completed in the given time
+     */
+    private static long run(final JKademliaRoutingTable table, final Node[] known, final boolean tableLock, int numThreads,
+            final int insertPercent, final int newNodePercent, int seconds) throws InterruptedException
+    {
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(numThreads);
+        final long[] deadline = new long[1];
+
+        for (int t = 0; t < numThreads; t++)
+        {
+            final Random random = new Random(t);
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    long count = 0;
+                    try
+                    {
+                        start.await();
+                        InetAddress local = InetAddress.getLoopbackAddress();
+                        while (System.nanoTime() < deadline[0])
+                        {
+                            /* A batch between clock reads */
+                            for (int i = 0; i < 64; i++)
+                            {
+                                if (random.nextInt(100) < insertPercent)
+                                {
+                                    Node n = random.nextInt(100) < newNodePercent
+                                            ? new Node(new KademliaId(), local, 7574)
+                                            : known[random.nextInt(known.length)];
+                                    if (tableLock)
+                                    {
+                                        synchronized (table)
+                                        {
+                                            table.insert(n);
+                                        }
+                                    }
+                                    else
+                                    {
+                                        table.insert(n);
+                                    }
+                                }
+                                else
+                                {
+                                    KademliaId target = new KademliaId();
+                                    if (tableLock)
+                                    {
+                                        synchronized (table)
+                                        {
+                                            table.findClosest(target, 20);
+                                        }
+                                    }
+                                    else
+                                    {
+                                        table.findClosest(target, 20);
+                                    }
+                                }
+                            }
+                            count += 64;
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        ops.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        deadline[0] = System.nanoTime() + seconds * 1000000000L;
+        start.countDown();
+        done.await();
+        return ops.get();
+    }
+}
@@ -0,0 +1,197 @@
+package kademlia.simulations;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.Semaphore;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.message.ConnectMessage;
+import kademlia.message.Message;
+import kademlia.message.Receiver;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.transport.ReusePort;
+import kademlia.transport.TransportType;
+
+/**
+ * Measure how many RPCs per second one node answers when it receives on one or more sockets sharing its port.
+ *
+ * A number of sender nodes flood the receiving node with ConnectMessages at the same time, each keeping
+ * a window of RPCs in flight; the receiving node is set up again for each number of sockets.
+ * The kernel spreads the senders over the sockets by their address, so use at least as many senders as sockets.
+ *
+ * Usage: ShardedReceiveBenchmark [rpcsPerSender] [numSenders] [maxChannels] [DATAGRAM_SOCKET|NIO]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ShardedReceiveBenchmark
+{
+
+    /* Number of RPCs each sender keeps in flight */
+    private static final int WINDOW = 32;
+
+    private static final int FIRST_PORT = 12500;
+
+    public static void main(String[] args)
+    {
+        int rpcsPerSender = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int numSenders = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int maxChannels = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        TransportType transport = args.length > 3 ? TransportType.valueOf(args[3]) : TransportType.NIO;
+
+        if (!ReusePort.isSupported())
+        {
+            System.out.println("Sockets can't share a port on this platform; every run uses a single socket.");
+        }
+
+        try
+        {
+            InetAddress local = InetAddress.getLoopbackAddress();
+            JKademliaNode[] senders = new JKademliaNode[numSenders];
+            for (int i = 0; i < numSenders; i++)
+            {
+                int port = FIRST_PORT + 1 + i;
+                senders[i] = new JKademliaNode("Sender" + port, new Node(new KademliaId(), local, port), port, configuration(1, transport));
+            }
+
+            System.out.println(String.format("%10s %12s %12s", "Sockets", "RPCs/s", "Speedup"));
+            double base = 0;
+            int port = FIRST_PORT - 1;
+            for (int channels = 1; channels <= Math.max(1, maxChannels); channels *= 2)
+            {
+                JKademliaNode receiver = new JKademliaNode("Receiver" + port, new Node(new KademliaId(), local, port), port, configuration(channels, transport));
+
+                /* Warm up so class loading and JIT don't show up in the numbers */
+                flood(senders, receiver.getNode(), rpcsPerSender / 10);
+
+                long start = System.nanoTime();
+                flood(senders, receiver.getNode(), rpcsPerSender);
+                double rate = (double) rpcsPerSender * numSenders * 1e9 / (System.nanoTime() - start);
+                if (channels == 1)
+                {
+                    base = rate;
+                }
+                System.out.println(String.format("%10d %12.0f %11.2fx", channels, rate, rate / base));
+
+                receiver.shutdown(false);
+                port--;
+            }
+
+            for (JKademliaNode sender : senders)
+            {
+                sender.shutdown(false);
+            }
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private static KadConfiguration configuration(final int channels, final TransportType transport)
+    {
+        return new DefaultConfiguration()
+        {
+            @Override
+            public int receiveChannels()
+            {
+                return channels;
+            }
+
+            @Override
+            public TransportType transport()
+            {
+                return transport;
+            }
+
+            @Override
+            public int inboundWorkerThreads()
+            {
+                /* Handle messages on the receiving threads, so the sockets are what scales */
+                return 0;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+
+            @Override
+            public double inboundRateLimit()
+            {
+                /* The senders flood the receiver on purpose */
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Have every sender send its RPCs at the same time, and wait for all of them to be answered
+     */
+    private static void flood(JKademliaNode[] senders, final Node to, final int rpcsPerSender) throws InterruptedException
+    {
+        Thread[] threads = new Thread[senders.length];
+        for (int i = 0; i < senders.length; i++)
+        {
+            final JKademliaNode from = senders[i];
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        send(from, to, rpcsPerSender);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        /* Stop sending */
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+    }
+
+    private static void send(JKademliaNode from, Node to, int numRpcs) throws InterruptedException
+    {
+        final Semaphore window = new Semaphore(WINDOW);
+        Receiver recv = new Receiver()
+        {
+            @Override
+            public void receive(Message incoming, int conversationId)
+            {
+                window.release();
+            }
+
+            @Override
+            public void timeout(int conversationId)
+            {
+                window.release();
+            }
+        };
+
+        ConnectMessage msg = new ConnectMessage(from.getNode());
+        for (int i = 0; i < numRpcs; i++)
+        {
+            window.acquire();
+            try
+            {
+                from.getServer().sendMessage(to, msg, recv);
+            }
+            catch (IOException e)
+            {
+                window.release();
+            }
+        }
+        window.acquire(WINDOW);
+    }
+}
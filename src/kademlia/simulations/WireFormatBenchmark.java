@@ -0,0 +1,170 @@
+package kademlia.simulations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.message.NodeReplyMessage;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
+import kademlia.node.Node;
+import kademlia.operation.NodeLookupOperation;
+
+/**
+ * Compare the size of routing messages in the standard and the compact wire format.
+ *
+ * First a NodeReplyMessage is encoded in both formats for replies of different sizes, with the nodes
+ * closest to random keys out of a set of random nodes, as a lookup would get them. Then a small network
+ * is started in each format and the bytes sent by all of its nodes are counted over a number of lookups.
+ *
+ * Usage: WireFormatBenchmark [numNodes] [numLookups]
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class WireFormatBenchmark
+{
+
+    /* Every message carries a communication ID, a code and the feature trailer */
+    private static final int OVERHEAD = 4 + 1 + 5;
+
+    private static final int[] REPLY_SIZES =
+    {
+        5, 20, 100
+    };
+
+    private static final int FIRST_PORT = 12401;
+
+    public static void main(String[] args)
+    {
+        int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        try
+        {
+            replySizes();
+
+            long standard = bytesPerLookup(false, numNodes, numLookups, FIRST_PORT);
+            long compact = bytesPerLookup(true, numNodes, numLookups, FIRST_PORT + numNodes);
+            System.out.println();
+            System.out.println("Lookups: " + numLookups + " in a network of " + numNodes + " nodes");
+            System.out.println(String.format("%10s %16s", "Format", "Bytes/lookup"));
+            System.out.println(String.format("%10s %16d", "Standard", standard));
+            System.out.println(String.format("%10s %16d", "Compact", compact));
+            System.exit(0);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Print the size of NodeReplyMessages in both formats
+     */
+    private static void replySizes() throws IOException
+    {
+        InetAddress local = InetAddress.getLoopbackAddress();
+        List<Node> network = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            network.add(new Node(new KademliaId(), local, 1024 + i));
+        }
+        Node origin = new Node(new KademliaId(), local, 7574);
+
+        System.out.println(String.format("%8s %16s %16s %8s", "Nodes", "Standard bytes", "Compact bytes", "Saved"));
+        for (int size : REPLY_SIZES)
+        {
+            long standard = 0;
+            long compact = 0;
+            int samples = 100;
+            for (int i = 0; i < samples; i++)
+            {
+                /* The nodes closest to a key, like a NodeLookupReceiver replies with */
+                Collections.sort(network, new KeyComparator(new KademliaId()));
+                NodeReplyMessage reply = new NodeReplyMessage(origin, new ArrayList<>(network.subList(0, size)));
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                reply.toStream(new DataOutputStream(bout));
+                standard += OVERHEAD + bout.size();
+
+                bout.reset();
+                reply.toCompactStream(new DataOutputStream(bout));
+                compact += OVERHEAD + bout.size();
+            }
+            System.out.println(String.format("%8d %16d %16d %7.1f%%", size, standard / samples, compact / samples, 100.0 * (standard - compact) / standard));
+        }
+    }
+
+    /**
+     * Start a network in the given format and run lookups on it
+     *
+     * @return Bytes sent by all nodes per lookup
+     */
+    private static long bytesPerLookup(final boolean compact, int numNodes, int numLookups, int firstPort) throws Exception
+    {
+        KadConfiguration config = new DefaultConfiguration()
+        {
+            @Override
+            public boolean useCompactFormat()
+            {
+                return compact;
+            }
+
+            @Override
+            public boolean isTesting()
+            {
+                return false;
+            }
+        };
+
+        InetAddress local = InetAddress.getLoopbackAddress();
+        List<JKademliaNode> nodes = new ArrayList<>();
+        for (int i = 0; i < numNodes; i++)
+        {
+            int port = firstPort + i;
+            JKademliaNode kad = new JKademliaNode("Wire" + port, new Node(new KademliaId(), local, port), port, config);
+            if (!nodes.isEmpty())
+            {
+                kad.bootstrap(nodes.get(0).getNode());
+            }
+            nodes.add(kad);
+        }
+
+        /* Let every node learn every other's features before counting */
+        JKademliaNode kad = nodes.get(nodes.size() - 1);
+        for (int i = 0; i < 10; i++)
+        {
+            new NodeLookupOperation(kad.getServer(), kad, new KademliaId(), config).execute();
+        }
+
+        long before = totalSent(nodes);
+        for (int i = 0; i < numLookups; i++)
+        {
+            new NodeLookupOperation(kad.getServer(), kad, new KademliaId(), config).execute();
+        }
+        long sent = totalSent(nodes) - before;
+
+        for (JKademliaNode n : nodes)
+        {
+            n.shutdown(false);
+        }
+        return sent / numLookups;
+    }
+
+    private static long totalSent(List<JKademliaNode> nodes)
+    {
+        long total = 0;
+        for (JKademliaNode n : nodes)
+        {
+            total += n.getStatistician().getTotalDataSent() * 1000L;
+        }
+        return total;
+    }
+}
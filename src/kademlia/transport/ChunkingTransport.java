@@ -0,0 +1,695 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import kademlia.PeerFeatures;
+import kademlia.exceptions.MessageTooBigException;
+import kademlia.util.HashedWheelTimer;
+
+/**
+ * A transport that carries datagrams too big for one packet by splitting them into chunks.
+ *
+ * Datagrams up to maxDatagram bytes pass through to the underlying transport untouched.
+ * Bigger ones to peers that told us they reassemble chunks become a transfer: the chunks are sent a window at a time, and the receiving side acknowledges
+ * them with a bitmap of the chunks it has. Chunks the bitmap shows as missing below the highest one received
+ * are sent again, as is the whole window if no acknowledgement arrives in time, so only lost chunks are re-sent.
+ * Once all chunks are in, the receiving side hands the reassembled datagram to its handler like any other.
+ *
+ * Peers we don't know to reassemble chunks get bigger datagrams whole, up to the largest datagram the network carries,
+ * the way they always have.
+ *
+ * A new incoming transfer is only taken on if the handler admits it. Its buffer grows as chunks arrive,
+ * and chunks further ahead than the sender's window are ignored, so a transfer holds little more memory than it has been sent.
+ * Reassembly memory is bounded; a transfer that would go over the bound is dropped and the sender gives up on it.
+ * Acknowledgements are only taken from the peer a transfer is sent to.
+ *
+ * A chunk is laid out as: comm, CHUNK_CODE, transfer ID, total length, chunk index, data.
+ * An acknowledgement as: comm, ACK_CODE, transfer ID, number of bitmap words, bitmap words.
+ * The comm is the one of the message being carried, so chunks go down the same path as the message would.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ChunkingTransport implements KadTransport
+{
+
+    /* Message codes reserved for chunks and their acknowledgements */
+    public static final byte CHUNK_CODE = 0x20;
+    public static final byte ACK_CODE = 0x21;
+
+    private static final int CHUNK_HEADER = 17;
+    private static final int ACK_HEADER = 11;
+
+    /* Number of chunks sent ahead of the acknowledgements */
+    private static final int WINDOW = 32;
+
+    /* The receiver acknowledges after this many chunks, or right away on a gap */
+    private static final int ACK_EVERY = 8;
+
+    /* Times the sender re-sends a window without hearing back before giving up */
+    private static final int MAX_RETRIES = 8;
+
+    private final KadTransport transport;
+    private final PeerFeatures features;
+    private final HashedWheelTimer timer;
+    private final int maxDatagram;
+    private final int maxUnchunkedDatagram;
+    private final int chunkSize;
+    private final int maxTransferSize;
+    private final long maxReassemblyMemory;
+    private final long retransmitTimeout;
+    private final long reassemblyTimeout;
+
+    private final Map<Integer, OutboundTransfer> outbound;
+    private final Map<TransferKey, InboundTransfer> inbound;
+    private final AtomicInteger nextTransferId;
+    private final AtomicLong reassemblyMemory;
+
+    private PacketHandler handler;
+
+
+    {
+        outbound = new ConcurrentHashMap<>();
+        inbound = new ConcurrentHashMap<>();
+        nextTransferId = new AtomicInteger(new Random().nextInt());
+        reassemblyMemory = new AtomicLong();
+    }
+
+    /**
+     * @param transport            The transport to send chunks over
+     * @param features             What our peers support
+     * @param timer                Timer used for re-sending and for dropping stalled transfers
+     * @param maxDatagram          Datagrams bigger than this are chunked
+     * @param maxUnchunkedDatagram Largest datagram sent whole to peers that don't reassemble chunks
+     * @param chunkSize            Bytes of data per chunk
+     * @param maxTransferSize      Largest datagram that can be sent or received in chunks
+     * @param maxReassemblyMemory  Most bytes held for incomplete incoming transfers at a time
+     * @param retransmitTimeout    Milliseconds to wait for an acknowledgement before re-sending
+     * @param reassemblyTimeout    Milliseconds an incoming transfer may stall before it is dropped
+     */
+    public ChunkingTransport(KadTransport transport, PeerFeatures features, HashedWheelTimer timer, int maxDatagram, int maxUnchunkedDatagram,
+            int chunkSize, int maxTransferSize, long maxReassemblyMemory, long retransmitTimeout, long reassemblyTimeout)
+    {
+        this.transport = transport;
+        this.features = features;
+        this.timer = timer;
+        this.maxDatagram = maxDatagram;
+        this.maxUnchunkedDatagram = maxUnchunkedDatagram;
+        this.chunkSize = chunkSize;
+        this.maxTransferSize = maxTransferSize;
+        this.maxReassemblyMemory = maxReassemblyMemory;
+        this.retransmitTimeout = retransmitTimeout;
+        this.reassemblyTimeout = reassemblyTimeout;
+    }
+
+    @Override
+    public void start(final PacketHandler handler)
+    {
+        this.handler = handler;
+        this.transport.start(new PacketHandler()
+        {
+            @Override
+            public void packetReceived(ByteBuffer packet, InetSocketAddress source)
+            {
+                received(packet, source);
+            }
+        });
+    }
+
+    /**
+     * Sort out chunks and acknowledgements from ordinary datagrams
+     */
+    private void received(ByteBuffer packet, InetSocketAddress source)
+    {
+        if (packet.remaining() >= ACK_HEADER)
+        {
+            byte code = packet.get(packet.position() + 4);
+            if (code == CHUNK_CODE && packet.remaining() >= CHUNK_HEADER)
+            {
+                this.chunkReceived(packet, source);
+                return;
+            }
+            if (code == ACK_CODE)
+            {
+                this.ackReceived(packet, source);
+                return;
+            }
+        }
+        this.handler.packetReceived(packet, source);
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        if (packet.remaining() <= this.maxDatagram)
+        {
+            this.transport.send(packet, to);
+            return;
+        }
+
+        if (!this.features.supports(to, PeerFeatures.CHUNK))
+        {
+            /* The peer couldn't put chunks back together, send it the datagram whole if the network can carry it */
+            if (packet.remaining() > this.maxUnchunkedDatagram)
+            {
+                throw new MessageTooBigException();
+            }
+            this.transport.send(packet, to);
+            return;
+        }
+
+        if (packet.remaining() > this.maxTransferSize)
+        {
+            throw new MessageTooBigException();
+        }
+
+        /* The caller may re-use its buffer once we return, keep a copy until the transfer is done */
+        byte[] data = new byte[packet.remaining()];
+        int comm = packet.getInt(packet.position());
+        packet.get(data);
+
+        OutboundTransfer transfer = new OutboundTransfer(this.nextTransferId.getAndIncrement(), comm, data, to);
+        this.outbound.put(transfer.id, transfer);
+        transfer.start();
+    }
+
+    @Override
+    public void close()
+    {
+        this.transport.close();
+        for (OutboundTransfer t : this.outbound.values())
+        {
+            this.timer.cancel(t);
+        }
+        this.outbound.clear();
+        for (InboundTransfer t : this.inbound.values())
+        {
+            this.timer.cancel(t);
+        }
+        this.inbound.clear();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.transport.isOpen();
+    }
+
+    /**
+     * @return Number of transfers we are currently sending
+     */
+    public int outboundTransfers()
+    {
+        return this.outbound.size();
+    }
+
+    /**
+     * @return Bytes currently held for reassembling incoming transfers
+     */
+    public long reassemblyMemory()
+    {
+        return this.reassemblyMemory.get();
+    }
+
+    private void chunkReceived(ByteBuffer packet, InetSocketAddress source)
+    {
+        int start = packet.position();
+        int comm = packet.getInt(start);
+        int transferId = packet.getInt(start + 5);
+        int totalLength = packet.getInt(start + 9);
+        int index = packet.getInt(start + 13);
+
+        TransferKey key = new TransferKey(source, transferId);
+        InboundTransfer transfer = this.inbound.get(key);
+        if (transfer == null)
+        {
+            /* A new transfer; only take it on if the handler wants it, its memory is taken as its chunks arrive */
+            if (totalLength <= 0 || totalLength > this.maxTransferSize || !this.handler.admitTransfer(comm, totalLength, source))
+            {
+                return;
+            }
+            transfer = new InboundTransfer(key, comm, totalLength);
+            this.inbound.put(key, transfer);
+            try
+            {
+                this.timer.schedule(transfer, this.reassemblyTimeout);
+            }
+            catch (IllegalStateException e)
+            {
+                /* The timer is already stopped so we cannot do anything here really */
+            }
+        }
+
+        packet.position(start + CHUNK_HEADER);
+        byte[] complete = transfer.add(index, packet);
+        if (transfer.isDropped())
+        {
+            /* Out of reassembly memory; the sender gives up without acknowledgements */
+            this.timer.cancel(transfer);
+            this.inbound.remove(key, transfer);
+        }
+        else if (complete != null)
+        {
+            this.handler.packetReceived(ByteBuffer.wrap(complete), source);
+        }
+        else
+        {
+            this.handler.transferProgress(comm, source);
+        }
+    }
+
+    private void ackReceived(ByteBuffer packet, InetSocketAddress source)
+    {
+        int start = packet.position();
+        int transferId = packet.getInt(start + 5);
+        int words = packet.getShort(start + 9) & 0xFFFF;
+        if (packet.remaining() < ACK_HEADER + words * 8)
+        {
+            return;
+        }
+
+        /* Transfer IDs are easy to guess, only the peer a transfer goes to may acknowledge it */
+        OutboundTransfer transfer = this.outbound.get(transferId);
+        if (transfer == null || !transfer.to.equals(source))
+        {
+            return;
+        }
+
+        long[] bitmap = new long[words];
+        for (int i = 0; i < words; i++)
+        {
+            bitmap[i] = packet.getLong(start + ACK_HEADER + i * 8);
+        }
+        transfer.acknowledged(BitSet.valueOf(bitmap));
+    }
+
+    /**
+     * Take memory for an incoming transfer, if the bound allows
+     */
+    private boolean reserve(int bytes)
+    {
+        long used;
+        do
+        {
+            used = this.reassemblyMemory.get();
+            if (used + bytes > this.maxReassemblyMemory)
+            {
+                return false;
+            }
+        }
+        while (!this.reassemblyMemory.compareAndSet(used, used + bytes));
+        return true;
+    }
+
+    /**
+     * A datagram being sent in chunks
+     */
+    private class OutboundTransfer extends HashedWheelTimer.Task
+    {
+
+        private final int id;
+        private final int comm;
+        private final byte[] data;
+        private final InetSocketAddress to;
+        private final int numChunks;
+
+        private final BitSet sent;      // Sent and not known to be lost; includes all acknowledged chunks
+        private final BitSet acked;
+        private final ByteBuffer chunk;
+        private int retries;
+        private boolean done;
+
+        public OutboundTransfer(int id, int comm, byte[] data, InetSocketAddress to)
+        {
+            this.id = id;
+            this.comm = comm;
+            this.data = data;
+            this.to = to;
+            this.numChunks = (data.length + chunkSize - 1) / chunkSize;
+            this.sent = new BitSet(this.numChunks);
+            this.acked = new BitSet(this.numChunks);
+            this.chunk = ByteBuffer.allocate(CHUNK_HEADER + chunkSize);
+            this.retries = 0;
+            this.done = false;
+        }
+
+        private synchronized void start() throws IOException
+        {
+            try
+            {
+                this.fillWindow();
+                this.reschedule();
+            }
+            catch (IOException e)
+            {
+                this.finish();
+                throw e;
+            }
+        }
+
+        /**
+         * The receiver told us which chunks it has
+         */
+        private synchronized void acknowledged(BitSet received)
+        {
+            if (this.done)
+            {
+                return;
+            }
+
+            this.acked.or(received);
+            this.sent.or(received);
+            if (this.acked.cardinality() >= this.numChunks)
+            {
+                this.finish();
+                return;
+            }
+
+            /* Chunks missing below the highest one received were lost, send them again */
+            int highest = received.length() - 1;
+            for (int i = this.sent.nextSetBit(0); i >= 0 && i < highest; i = this.sent.nextSetBit(i + 1))
+            {
+                if (!this.acked.get(i))
+                {
+                    this.sent.clear(i);
+                }
+            }
+
+            this.retries = 0;
+            try
+            {
+                this.fillWindow();
+                this.reschedule();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error while sending a chunk. Message: " + e.getMessage());
+                this.finish();
+            }
+        }
+
+        /**
+         * Nothing heard back in time; send everything not acknowledged yet again
+         */
+        @Override
+        public synchronized void run()
+        {
+            if (this.done)
+            {
+                return;
+            }
+            if (++this.retries > MAX_RETRIES)
+            {
+                this.finish();
+                return;
+            }
+
+            this.sent.clear();
+            this.sent.or(this.acked);
+            try
+            {
+                this.fillWindow();
+                this.reschedule();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error while sending a chunk. Message: " + e.getMessage());
+                this.finish();
+            }
+        }
+
+        /**
+         * Send chunks that are not in flight, lowest first, until the window is full
+         */
+        private void fillWindow() throws IOException
+        {
+            int inFlight = this.sent.cardinality() - this.acked.cardinality();
+            int index = this.sent.nextClearBit(0);
+            while (inFlight < WINDOW && index < this.numChunks)
+            {
+                int offset = index * chunkSize;
+                int length = Math.min(chunkSize, this.data.length - offset);
+
+                this.chunk.clear();
+                this.chunk.putInt(this.comm).put(CHUNK_CODE).putInt(this.id).putInt(this.data.length).putInt(index);
+                this.chunk.put(this.data, offset, length);
+                this.chunk.flip();
+                transport.send(this.chunk, this.to);
+
+                this.sent.set(index);
+                inFlight++;
+                index = this.sent.nextClearBit(index + 1);
+            }
+        }
+
+        private void reschedule()
+        {
+            timer.cancel(this);
+            try
+            {
+                timer.schedule(this, retransmitTimeout);
+            }
+            catch (IllegalStateException e)
+            {
+                /* The timer is already stopped so we cannot do anything here really */
+            }
+        }
+
+        private void finish()
+        {
+            this.done = true;
+            timer.cancel(this);
+            outbound.remove(this.id);
+        }
+    }
+
+    /**
+     * A datagram being reassembled from chunks
+     */
+    private class InboundTransfer extends HashedWheelTimer.Task
+    {
+
+        private final TransferKey key;
+        private final int comm;
+        private final int totalLength;
+        private final int numChunks;
+        private byte[] data;        // Grows as chunks arrive; null once complete or dropped
+        private boolean dropped;
+        private final BitSet received;
+        private int count;
+        private int sinceAck;
+        private int highest;
+        private volatile long lastActivity;
+
+        public InboundTransfer(TransferKey key, int comm, int totalLength)
+        {
+            this.key = key;
+            this.comm = comm;
+            this.totalLength = totalLength;
+            this.data = new byte[0];
+            this.dropped = false;
+            this.numChunks = (totalLength + chunkSize - 1) / chunkSize;
+            this.received = new BitSet(this.numChunks);
+            this.count = 0;
+            this.sinceAck = 0;
+            this.highest = -1;
+            this.lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Copy a chunk in
+         *
+         * @return The whole datagram if this chunk completed it
+         */
+        private synchronized byte[] add(int index, ByteBuffer chunk)
+        {
+            this.lastActivity = System.nanoTime();
+
+            if (this.dropped)
+            {
+                return null;
+            }
+            if (this.data == null)
+            {
+                /* Already complete; the sender missed our last acknowledgement */
+                this.acknowledge();
+                return null;
+            }
+
+            /* The sender never has more than a window of chunks beyond those we have in flight */
+            if (index < 0 || index >= this.numChunks || index >= this.count + WINDOW)
+            {
+                return null;
+            }
+
+            int offset = index * chunkSize;
+            int length = Math.min(chunkSize, this.totalLength - offset);
+            if (!this.received.get(index) && chunk.remaining() == length)
+            {
+                if (!this.grow(offset + length))
+                {
+                    this.drop();
+                    return null;
+                }
+
+                chunk.get(this.data, offset, length);
+                this.received.set(index);
+                this.count++;
+                this.sinceAck++;
+            }
+
+            if (this.count == this.numChunks)
+            {
+                /* Keep the transfer around without its data, so duplicate chunks still get acknowledged until it expires */
+                byte[] complete = this.data;
+                this.data = null;
+                reassemblyMemory.addAndGet(-complete.length);
+                this.acknowledge();
+                return complete;
+            }
+
+            /* A gap means chunks got lost, tell the sender straight away */
+            boolean gap = index > this.highest + 1;
+            this.highest = Math.max(this.highest, index);
+            if (gap || this.sinceAck >= ACK_EVERY)
+            {
+                this.acknowledge();
+            }
+            return null;
+        }
+
+        /**
+         * Make room in the buffer for data up to the given end, at least doubling it so it isn't copied for every chunk
+         *
+         * @return Whether the reassembly memory had room
+         */
+        private boolean grow(int end)
+        {
+            if (end <= this.data.length)
+            {
+                return true;
+            }
+
+            int size = (int) Math.min(this.totalLength, Math.max(end, 2L * this.data.length));
+            if (!reserve(size - this.data.length))
+            {
+                return false;
+            }
+            this.data = Arrays.copyOf(this.data, size);
+            return true;
+        }
+
+        /**
+         * Give back the transfer's memory; called with the lock held
+         */
+        private void drop()
+        {
+            if (this.data != null)
+            {
+                reassemblyMemory.addAndGet(-this.data.length);
+                this.data = null;
+            }
+            this.dropped = true;
+        }
+
+        private synchronized boolean isDropped()
+        {
+            return this.dropped;
+        }
+
+        private void acknowledge()
+        {
+            this.sinceAck = 0;
+
+            long[] bitmap = this.received.toLongArray();
+            ByteBuffer ack = ByteBuffer.allocate(ACK_HEADER + bitmap.length * 8);
+            ack.putInt(this.comm).put(ACK_CODE).putInt(this.key.transferId).putShort((short) bitmap.length);
+            for (long word : bitmap)
+            {
+                ack.putLong(word);
+            }
+            ack.flip();
+
+            try
+            {
+                transport.send(ack, this.key.source);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error while acknowledging chunks. Message: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Drop the transfer once it has been idle for the reassembly timeout
+         */
+        @Override
+        public void run()
+        {
+            long idle = (System.nanoTime() - this.lastActivity) / 1000000L;
+            if (idle < reassemblyTimeout)
+            {
+                try
+                {
+                    timer.schedule(this, reassemblyTimeout - idle);
+                }
+                catch (IllegalStateException e)
+                {
+                    /* The timer is already stopped so we cannot do anything here really */
+                }
+                return;
+            }
+
+            synchronized (this)
+            {
+                if (this.data != null)
+                {
+                    reassemblyMemory.addAndGet(-this.data.length);
+                    this.data = null;
+                }
+            }
+            inbound.remove(this.key, this);
+        }
+    }
+
+    /**
+     * Identifies an incoming transfer: transfer IDs are only unique per sender
+     */
+    private static class TransferKey
+    {
+
+        private final InetSocketAddress source;
+        private final int transferId;
+
+        public TransferKey(InetSocketAddress source, int transferId)
+        {
+            this.source = source;
+            this.transferId = transferId;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof TransferKey))
+            {
+                return false;
+            }
+            TransferKey other = (TransferKey) o;
+            return this.transferId == other.transferId && this.source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * this.source.hashCode() + this.transferId;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+import kademlia.PeerFeatures;
+import kademlia.util.BufferPool;
+import kademlia.util.PooledBuffer;
+
+/**
+ * A transport that packs small datagrams sent to the same peer within a short window into one datagram.
+ *
+ * The first small datagram to a peer opens a batch, and everything else sent to the peer before the window closes
+ * or the batch is full goes into it. A flusher thread sends batches as their windows close; a batch that holds
+ * a single datagram is sent as that datagram. Batches are only made for peers that told us they can take them apart.
+ *
+ * A batch is laid out as: comm 0, BATCH_CODE, then for each datagram its length as an unsigned short followed by the datagram.
+ * Incoming batches are always taken apart and each datagram handed to the handler on its own,
+ * so a window of 0 turns batching off for sending only.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class CoalescingTransport implements KadTransport
+{
+
+    /* Message code reserved for batches */
+    public static final byte BATCH_CODE = 0x22;
+
+    private static final int BATCH_HEADER = 5;
+    private static final int LENGTH_SIZE = 2;
+
+    /* Free batch buffers kept around */
+    private static final int POOLED_BATCHES = 64;
+
+    private final KadTransport transport;
+    private final PeerFeatures features;
+    private final long window;
+    private final int batchSize;
+    private final BufferPool buffers;
+
+    private final Map<InetSocketAddress, Batch> open;
+    private final LinkedBlockingQueue<Batch> closing;      // Open batches, in the order their windows close
+
+    private volatile boolean isRunning;
+    private Thread flusher;
+
+
+    {
+        open = new ConcurrentHashMap<>();
+        closing = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * @param transport The transport to send batches over
+     * @param features  What our peers support
+     * @param window    Microseconds to hold a batch open for more datagrams; 0 sends every datagram right away
+     * @param batchSize Largest batch in bytes
+     * @param direct    Whether to allocate batch buffers outside the Java heap
+     */
+    public CoalescingTransport(KadTransport transport, PeerFeatures features, long window, int batchSize, boolean direct)
+    {
+        this.transport = transport;
+        this.features = features;
+        this.window = window;
+        this.batchSize = batchSize;
+        this.buffers = new BufferPool(batchSize, POOLED_BATCHES, direct);
+        this.isRunning = true;
+    }
+
+    @Override
+    public void start(final PacketHandler handler)
+    {
+        this.transport.start(new PacketHandler()
+        {
+            @Override
+            public void packetReceived(ByteBuffer packet, InetSocketAddress source)
+            {
+                received(packet, source, handler);
+            }
+
+            @Override
+            public void transferProgress(int comm, InetSocketAddress source)
+            {
+                handler.transferProgress(comm, source);
+            }
+
+            @Override
+            public boolean admitTransfer(int comm, int length, InetSocketAddress source)
+            {
+                return handler.admitTransfer(comm, length, source);
+            }
+        });
+
+        if (this.window > 0)
+        {
+            this.flusher = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    flushLoop();
+                }
+            };
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Take batches apart, pass everything else through
+     */
+    private void received(ByteBuffer packet, InetSocketAddress source, PacketHandler handler)
+    {
+        int start = packet.position();
+        if (packet.remaining() < BATCH_HEADER || packet.get(start + 4) != BATCH_CODE)
+        {
+            handler.packetReceived(packet, source);
+            return;
+        }
+
+        int end = packet.limit();
+        int offset = start + BATCH_HEADER;
+        while (offset + LENGTH_SIZE <= end)
+        {
+            int length = packet.getShort(offset) & 0xFFFF;
+            offset += LENGTH_SIZE;
+            if (length == 0 || offset + length > end)
+            {
+                /* A broken batch; what came before was fine */
+                return;
+            }
+
+            packet.limit(offset + length);
+            packet.position(offset);
+            handler.packetReceived(packet, source);
+            packet.limit(end);
+
+            offset += length;
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        if (this.window <= 0 || !isRunning || packet.remaining() > this.batchSize - BATCH_HEADER - LENGTH_SIZE
+                || !this.features.supports(to, PeerFeatures.BATCH))
+        {
+            this.transport.send(packet, to);
+            return;
+        }
+
+        while (true)
+        {
+            Batch batch = this.open.get(to);
+            if (batch == null)
+            {
+                Batch created = new Batch(to);
+                batch = this.open.putIfAbsent(to, created);
+                if (batch == null)
+                {
+                    batch = created;
+                    this.closing.add(batch);
+                }
+            }
+
+            if (batch.add(packet))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send batches as their windows close
+     */
+    private void flushLoop()
+    {
+        while (isRunning)
+        {
+            try
+            {
+                Batch batch = this.closing.take();
+
+                /* Windows are all the same length, so the batch opened first closes first */
+                long wait;
+                while ((wait = batch.closesAt - System.nanoTime()) > 0 && isRunning)
+                {
+                    LockSupport.parkNanos(wait);
+                }
+                batch.flush();
+            }
+            catch (InterruptedException e)
+            {
+                /* Closing */
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        this.isRunning = false;
+        if (this.flusher != null)
+        {
+            this.flusher.interrupt();
+        }
+
+        Batch batch;
+        while ((batch = this.closing.poll()) != null)
+        {
+            batch.flush();
+        }
+        this.transport.close();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isRunning;
+    }
+
+    /**
+     * Datagrams waiting to be sent to one peer
+     */
+    private class Batch
+    {
+
+        private final InetSocketAddress to;
+        private final long closesAt;
+        private PooledBuffer buf;
+        private int count;
+        private int firstLength;
+        private boolean flushed;
+
+        public Batch(InetSocketAddress to)
+        {
+            this.to = to;
+            this.closesAt = System.nanoTime() + window * 1000L;
+            this.count = 0;
+            this.flushed = false;
+        }
+
+        /**
+         * Add a datagram to the batch; a full batch is sent right away
+         *
+         * @return false if the batch was already sent and the datagram needs a new one
+         */
+        private synchronized boolean add(ByteBuffer packet) throws IOException
+        {
+            if (this.flushed)
+            {
+                return false;
+            }
+
+            if (this.buf == null)
+            {
+                this.buf = buffers.acquire();
+                ByteBuffer data = this.buf.buffer();
+                data.clear();
+                data.putInt(0);
+                data.put(BATCH_CODE);
+            }
+
+            ByteBuffer data = this.buf.buffer();
+            if (data.remaining() < LENGTH_SIZE + packet.remaining())
+            {
+                /* Full; send it and let the datagram open a new batch */
+                this.flush();
+                return false;
+            }
+
+            if (this.count == 0)
+            {
+                this.firstLength = packet.remaining();
+            }
+            data.putShort((short) packet.remaining());
+            data.put(packet);
+            this.count++;
+            return true;
+        }
+
+        private synchronized void flush()
+        {
+            if (this.flushed)
+            {
+                return;
+            }
+            this.flushed = true;
+            open.remove(this.to, this);
+
+            if (this.buf == null)
+            {
+                return;
+            }
+
+            try
+            {
+                ByteBuffer data = this.buf.buffer();
+                data.flip();
+                if (this.count == 1)
+                {
+                    /* Nothing joined, send the datagram as it is */
+                    data.position(BATCH_HEADER + LENGTH_SIZE);
+                    data.limit(BATCH_HEADER + LENGTH_SIZE + this.firstLength);
+                }
+                transport.send(data, this.to);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error while sending a batch of messages. Message: " + e.getMessage());
+            }
+            finally
+            {
+                this.buf.release();
+                this.buf = null;
+            }
+        }
+    }
+}
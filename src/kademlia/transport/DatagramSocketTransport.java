@@ -0,0 +1,143 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * A transport that blocks a single listener thread on a java.net.DatagramSocket
+ *
+ * The listener receives every datagram into the same buffer.
+ * Datagrams to send should be in heap buffers, others are copied into one first.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class DatagramSocketTransport implements KadTransport
+{
+
+    private final DatagramSocket socket;
+    private final int bufferSize;
+    private volatile boolean isRunning;
+
+    /**
+     * @param port       The UDP port to listen on
+     * @param bufferSize Maximum size of a datagram
+     *
+     * @throws java.net.SocketException
+     */
+    public DatagramSocketTransport(int port, int bufferSize) throws SocketException
+    {
+        this.socket = new DatagramSocket(port);
+        this.bufferSize = bufferSize;
+        this.isRunning = true;
+    }
+
+    /**
+     * @param port       The UDP port to listen on
+     * @param bufferSize Maximum size of a datagram
+     * @param reusePort  Whether other sockets may bind the same port; see ReusePort
+     *
+     * @throws java.io.IOException
+     */
+    public DatagramSocketTransport(int port, int bufferSize, boolean reusePort) throws IOException
+    {
+        this.socket = new DatagramSocket(null);
+        if (reusePort)
+        {
+            ReusePort.enable(this.socket);
+        }
+        this.socket.bind(new InetSocketAddress(port));
+        this.bufferSize = bufferSize;
+        this.isRunning = true;
+    }
+
+    @Override
+    public void start(final PacketHandler handler)
+    {
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                listen(handler);
+            }
+        }.start();
+    }
+
+    /**
+     * Listen for incoming datagrams in a separate thread
+     */
+    private void listen(PacketHandler handler)
+    {
+        /* The handler only uses the buffer while it is called, so one buffer does for all datagrams */
+        byte[] buffer = new byte[this.bufferSize];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        ByteBuffer received = ByteBuffer.wrap(buffer);
+
+        try
+        {
+            while (isRunning)
+            {
+                try
+                {
+                    /* Wait for a packet */
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+
+                    received.clear();
+                    received.limit(packet.getLength());
+                    handler.packetReceived(received, (InetSocketAddress) packet.getSocketAddress());
+                }
+                catch (IOException e)
+                {
+                    if (isRunning)
+                    {
+                        System.err.println("Server ran into a problem in listener method. Message: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        finally
+        {
+            this.close();
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        DatagramPacket pkt;
+        if (packet.hasArray())
+        {
+            pkt = new DatagramPacket(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining());
+        }
+        else
+        {
+            byte[] data = new byte[packet.remaining()];
+            packet.get(data);
+            pkt = new DatagramPacket(data, data.length);
+        }
+        pkt.setSocketAddress(to);
+        socket.send(pkt);
+    }
+
+    @Override
+    public void close()
+    {
+        this.isRunning = false;
+        if (!socket.isClosed())
+        {
+            socket.close();
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isRunning;
+    }
+}
@@ -0,0 +1,44 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * The network layer underneath a KadServer; moves raw datagrams to and from other nodes.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public interface KadTransport
+{
+
+    /**
+     * Start reading datagrams from the network and hand them over to the handler.
+     *
+     * @param handler The handler that receives every datagram read
+     */
+    public void start(PacketHandler handler);
+
+    /**
+     * Send a datagram.
+     *
+     * Implementations must allow concurrent callers.
+     *
+     * @param packet The datagram, from the buffer's position to its limit
+     * @param to     The address to send the datagram to
+     *
+     * @throws java.io.IOException
+     */
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException;
+
+    /**
+     * Stop reading and release the underlying socket.
+     */
+    public void close();
+
+    /**
+     * @return Whether the transport is still open
+     */
+    public boolean isOpen();
+}
@@ -0,0 +1,347 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import kademlia.util.HashedWheelTimer;
+
+/**
+ * An in-memory network of LoopbackTransports in the same JVM, so simulations can run thousands of nodes
+ * without a socket or a listener thread per node.
+ *
+ * Endpoints are identified by their port, as if all nodes ran on one host; a datagram is reported as coming
+ * from the address it was sent to with the sender's port, which is what the kernel does on a single host.
+ * Datagrams go into the receiving endpoint's lock-free inbox and a pool of threads shared by all endpoints
+ * hands them to the endpoints' handlers, one datagram at a time per endpoint. Handlers may block, as they do
+ * on a socket's listener thread; the pool then grows, and shrinks again once they're done.
+ *
+ * A latency model delays datagrams and a loss model drops them; both can be changed while the network runs.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class LoopbackNetwork
+{
+
+    private static final LoopbackNetwork DEFAULT = new LoopbackNetwork();
+
+    /* Delayed datagrams are delivered with millisecond precision */
+    private static final long TIMER_TICK = 1;
+    private static final int TIMER_WHEEL_SIZE = 1024;
+
+    private final Map<Integer, LoopbackTransport> endpoints;
+    private final ExecutorService executor;
+    private volatile HashedWheelTimer timer;
+
+    private volatile LatencyModel latency;
+    private volatile LossModel loss;
+
+    /* Counters */
+    private final AtomicLong delivered;
+    private final AtomicLong dropped;
+
+
+    {
+        endpoints = new ConcurrentHashMap<>();
+        latency = LatencyModel.NONE;
+        loss = LossModel.NONE;
+        delivered = new AtomicLong();
+        dropped = new AtomicLong();
+    }
+
+    public LoopbackNetwork()
+    {
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "LoopbackNetwork");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @return The network nodes using the LOOPBACK transport type join
+     */
+    public static LoopbackNetwork getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Add an endpoint to the network
+     *
+     * @param port The port of the endpoint
+     *
+     * @return The endpoint's transport
+     *
+     * @throws java.net.BindException If the port is taken
+     */
+    public LoopbackTransport bind(int port) throws BindException
+    {
+        LoopbackTransport transport = new LoopbackTransport(this, port);
+        if (this.endpoints.putIfAbsent(port, transport) != null)
+        {
+            throw new BindException("Loopback port " + port + " is already in use");
+        }
+        return transport;
+    }
+
+    void unbind(int port, LoopbackTransport transport)
+    {
+        this.endpoints.remove(port, transport);
+    }
+
+    /**
+     * Route a datagram to the endpoint it is addressed to; like UDP, datagrams to nobody are dropped silently
+     */
+    void send(int fromPort, ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        InetSocketAddress source = new InetSocketAddress(to.getAddress(), fromPort);
+        if (this.loss.drop(source, to))
+        {
+            this.dropped.incrementAndGet();
+            return;
+        }
+
+        LoopbackTransport destination = this.endpoints.get(to.getPort());
+        if (destination == null)
+        {
+            this.dropped.incrementAndGet();
+            return;
+        }
+
+        /* The sender re-uses its buffer, the receiver gets a copy */
+        byte[] data = new byte[packet.remaining()];
+        packet.get(data);
+        Datagram datagram = new Datagram(data, source);
+
+        long delay = this.latency.delay(source, to);
+        if (delay <= 0)
+        {
+            destination.deliver(datagram);
+        }
+        else
+        {
+            try
+            {
+                this.timer().schedule(new DelayedDatagram(destination, datagram), delay);
+            }
+            catch (IllegalStateException e)
+            {
+                throw new IOException("Loopback network is shut down.");
+            }
+        }
+    }
+
+    /**
+     * @return A millisecond timer shared by everything on the network; it is never stopped
+     */
+    public HashedWheelTimer timer()
+    {
+        HashedWheelTimer t = this.timer;
+        if (t == null)
+        {
+            synchronized (this)
+            {
+                t = this.timer;
+                if (t == null)
+                {
+                    t = new HashedWheelTimer(TIMER_TICK, TIMER_WHEEL_SIZE);
+                    this.timer = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    void countDelivered()
+    {
+        this.delivered.incrementAndGet();
+    }
+
+    ExecutorService executor()
+    {
+        return this.executor;
+    }
+
+    /**
+     * @param latency How long datagrams take from one endpoint to another
+     */
+    public void setLatencyModel(LatencyModel latency)
+    {
+        this.latency = latency;
+    }
+
+    /**
+     * @param loss Which datagrams get lost
+     */
+    public void setLossModel(LossModel loss)
+    {
+        this.loss = loss;
+    }
+
+    /**
+     * @return Number of endpoints on the network
+     */
+    public int size()
+    {
+        return this.endpoints.size();
+    }
+
+    /**
+     * @return Number of datagrams handed to a handler
+     */
+    public long delivered()
+    {
+        return this.delivered.get();
+    }
+
+    /**
+     * @return Number of datagrams lost, or sent to a port nobody is bound to
+     */
+    public long dropped()
+    {
+        return this.dropped.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LoopbackNetwork: [Endpoints: " + this.size() + "; Delivered: " + this.delivered() + "; Dropped: " + this.dropped() + "; ]";
+    }
+
+    /**
+     * Decides how long a datagram takes to arrive
+     */
+    public interface LatencyModel
+    {
+
+        /* Datagrams arrive right away */
+        public static final LatencyModel NONE = fixed(0);
+
+        /**
+         * @param from Where the datagram comes from
+         * @param to   Where the datagram goes
+         *
+         * @return Milliseconds before the datagram arrives
+         */
+        public long delay(InetSocketAddress from, InetSocketAddress to);
+
+        /**
+         * @param millis Milliseconds every datagram takes
+         *
+         * @return A latency model where every datagram takes the same time
+         */
+        public static LatencyModel fixed(final long millis)
+        {
+            return new LatencyModel()
+            {
+                @Override
+                public long delay(InetSocketAddress from, InetSocketAddress to)
+                {
+                    return millis;
+                }
+            };
+        }
+
+        /**
+         * @param min Least milliseconds a datagram takes
+         * @param max Most milliseconds a datagram takes
+         *
+         * @return A latency model where datagrams take a time picked evenly between min and max
+         */
+        public static LatencyModel uniform(final long min, final long max)
+        {
+            return new LatencyModel()
+            {
+                @Override
+                public long delay(InetSocketAddress from, InetSocketAddress to)
+                {
+                    return min + ThreadLocalRandom.current().nextLong(max - min + 1);
+                }
+            };
+        }
+    }
+
+    /**
+     * Decides which datagrams get lost
+     */
+    public interface LossModel
+    {
+
+        /* Nothing gets lost */
+        public static final LossModel NONE = random(0);
+
+        /**
+         * @param from Where the datagram comes from
+         * @param to   Where the datagram goes
+         *
+         * @return Whether to drop the datagram
+         */
+        public boolean drop(InetSocketAddress from, InetSocketAddress to);
+
+        /**
+         * @param probability Chance that a datagram gets lost, between 0 and 1
+         *
+         * @return A loss model where every datagram gets lost with the same chance
+         */
+        public static LossModel random(final double probability)
+        {
+            return new LossModel()
+            {
+                @Override
+                public boolean drop(InetSocketAddress from, InetSocketAddress to)
+                {
+                    return probability > 0 && ThreadLocalRandom.current().nextDouble() < probability;
+                }
+            };
+        }
+    }
+
+    /**
+     * A datagram on its way to an endpoint
+     */
+    static class Datagram
+    {
+
+        final byte[] data;
+        final InetSocketAddress source;
+
+        Datagram(byte[] data, InetSocketAddress source)
+        {
+            this.data = data;
+            this.source = source;
+        }
+    }
+
+    private static class DelayedDatagram extends HashedWheelTimer.Task
+    {
+
+        private final LoopbackTransport destination;
+        private final Datagram datagram;
+
+        public DelayedDatagram(LoopbackTransport destination, Datagram datagram)
+        {
+            this.destination = destination;
+            this.datagram = datagram;
+        }
+
+        @Override
+        public void run()
+        {
+            this.destination.deliver(this.datagram);
+        }
+    }
+}
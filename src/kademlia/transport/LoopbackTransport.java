@@ -0,0 +1,139 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An endpoint on a LoopbackNetwork; moves datagrams between nodes in the same JVM without a socket.
+ *
+ * Incoming datagrams wait in a lock-free inbox until one of the network's threads hands them to the handler.
+ * The handler is never called by two threads at once, as with a listener thread on a socket.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class LoopbackTransport implements KadTransport
+{
+
+    /* How many datagrams an endpoint handles before giving its thread to another endpoint */
+    private static final int MAX_DATAGRAMS_PER_RUN = 64;
+
+    private final LoopbackNetwork network;
+    private final int port;
+    private final Queue<LoopbackNetwork.Datagram> inbox;
+    private final AtomicBoolean scheduled;
+    private final Runnable drainer;
+
+    private volatile PacketHandler handler;
+    private volatile boolean isRunning;
+
+
+    {
+        inbox = new ConcurrentLinkedQueue<>();
+        scheduled = new AtomicBoolean(false);
+        drainer = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        };
+    }
+
+    LoopbackTransport(LoopbackNetwork network, int port)
+    {
+        this.network = network;
+        this.port = port;
+        this.isRunning = true;
+    }
+
+    @Override
+    public void start(PacketHandler handler)
+    {
+        this.handler = handler;
+        this.schedule();
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        if (!isRunning)
+        {
+            throw new IOException("Transport is closed.");
+        }
+        this.network.send(this.port, packet, to);
+    }
+
+    /**
+     * A datagram arrived for this endpoint
+     */
+    void deliver(LoopbackNetwork.Datagram datagram)
+    {
+        if (!isRunning)
+        {
+            return;
+        }
+        this.inbox.add(datagram);
+        this.schedule();
+    }
+
+    private void schedule()
+    {
+        if (this.handler != null && !this.inbox.isEmpty() && this.scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                this.network.executor().execute(this.drainer);
+            }
+            catch (RejectedExecutionException e)
+            {
+                this.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Hand waiting datagrams to the handler
+     */
+    private void drain()
+    {
+        LoopbackNetwork.Datagram datagram;
+        int count = 0;
+        while (isRunning && count++ < MAX_DATAGRAMS_PER_RUN && (datagram = this.inbox.poll()) != null)
+        {
+            try
+            {
+                this.handler.packetReceived(ByteBuffer.wrap(datagram.data), datagram.source);
+                this.network.countDelivered();
+            }
+            catch (RuntimeException e)
+            {
+                System.err.println("Loopback endpoint " + this.port + " failed to handle a datagram. Message: " + e.getMessage());
+            }
+        }
+
+        /* Let the endpoint be scheduled again, and re-schedule it ourselves if datagrams came in meanwhile */
+        this.scheduled.set(false);
+        this.schedule();
+    }
+
+    @Override
+    public void close()
+    {
+        this.isRunning = false;
+        this.network.unbind(this.port, this);
+        this.inbox.clear();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isRunning;
+    }
+}
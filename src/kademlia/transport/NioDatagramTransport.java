@@ -0,0 +1,244 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A non-blocking transport built on a DatagramChannel and a Selector.
+ *
+ * Reads happen on a single selector thread into a re-used ByteBuffer.
+ * Writes go straight to the channel from the calling thread; if the socket's send buffer is full,
+ * the datagram is queued and the selector thread flushes it once the channel becomes writable,
+ * so a sender never waits on a server-wide monitor.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class NioDatagramTransport implements KadTransport
+{
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final ByteBuffer receiveBuffer;
+
+    /* Datagrams the socket could not take immediately, flushed by the selector thread */
+    private final Queue<PendingDatagram> outbound;
+    private volatile boolean writePending;
+
+    private volatile boolean isRunning;
+
+
+    {
+        outbound = new ConcurrentLinkedQueue<>();
+        writePending = false;
+    }
+
+    /**
+     * @param port       The UDP port to listen on
+     * @param bufferSize Maximum size of a datagram
+     * @param direct     Whether to receive into a direct buffer
+     *
+     * @throws java.io.IOException
+     */
+    public NioDatagramTransport(int port, int bufferSize, boolean direct) throws IOException
+    {
+        this(port, bufferSize, direct, false);
+    }
+
+    /**
+     * @param port       The UDP port to listen on
+     * @param bufferSize Maximum size of a datagram
+     * @param direct     Whether to receive into a direct buffer
+     * @param reusePort  Whether other sockets may bind the same port; see ReusePort
+     *
+     * @throws java.io.IOException
+     */
+    public NioDatagramTransport(int port, int bufferSize, boolean direct, boolean reusePort) throws IOException
+    {
+        this.channel = DatagramChannel.open();
+        if (reusePort)
+        {
+            ReusePort.enable(this.channel);
+        }
+        this.channel.socket().bind(new InetSocketAddress(port));
+        this.channel.configureBlocking(false);
+
+        this.selector = Selector.open();
+        this.key = this.channel.register(this.selector, SelectionKey.OP_READ);
+        this.receiveBuffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        this.isRunning = true;
+    }
+
+    @Override
+    public void start(final PacketHandler handler)
+    {
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                selectLoop(handler);
+            }
+        }.start();
+    }
+
+    /**
+     * The selector loop; reads all available datagrams and flushes queued writes
+     */
+    private void selectLoop(PacketHandler handler)
+    {
+        try
+        {
+            while (isRunning)
+            {
+                try
+                {
+                    selector.select();
+
+                    /* Other threads only flag that they queued something, the interest set is only changed from this thread */
+                    if (this.writePending)
+                    {
+                        this.writePending = false;
+                        this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext())
+                    {
+                        SelectionKey k = it.next();
+                        it.remove();
+
+                        if (k.isValid() && k.isReadable())
+                        {
+                            this.read(handler);
+                        }
+                        if (k.isValid() && k.isWritable())
+                        {
+                            this.flush();
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    if (isRunning)
+                    {
+                        System.err.println("Server ran into a problem in listener method. Message: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        finally
+        {
+            this.close();
+            try
+            {
+                /* The selector is only closed by the thread that selects on it */
+                this.selector.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error while closing the NIO transport. Message: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Drain every datagram currently available on the channel
+     */
+    private void read(PacketHandler handler) throws IOException
+    {
+        InetSocketAddress source;
+        while ((source = (InetSocketAddress) this.channel.receive(this.receiveBuffer)) != null)
+        {
+            this.receiveBuffer.flip();
+            handler.packetReceived(this.receiveBuffer, source);
+            this.receiveBuffer.clear();
+        }
+    }
+
+    /**
+     * Write out queued datagrams until the queue is empty or the socket's send buffer fills up again
+     */
+    private void flush() throws IOException
+    {
+        PendingDatagram pd;
+        while ((pd = this.outbound.peek()) != null)
+        {
+            if (this.channel.send(pd.data, pd.to) == 0)
+            {
+                /* Still no room, keep OP_WRITE and wait to be selected again */
+                return;
+            }
+            this.outbound.poll();
+        }
+        this.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        if (!isRunning)
+        {
+            throw new IOException("Transport is closed.");
+        }
+
+        /* Only write directly if nothing is queued; otherwise we'd overtake earlier datagrams */
+        if (this.outbound.isEmpty() && this.channel.send(packet, to) > 0)
+        {
+            return;
+        }
+
+        /* The socket's send buffer is full, hand a copy to the selector thread */
+        ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+        copy.put(packet);
+        copy.flip();
+        this.outbound.add(new PendingDatagram(copy, to));
+        this.writePending = true;
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void close()
+    {
+        this.isRunning = false;
+        try
+        {
+            this.channel.close();
+            this.selector.wakeup();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error while closing the NIO transport. Message: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isRunning;
+    }
+
+    /**
+     * A datagram waiting for room in the socket's send buffer
+     */
+    private static class PendingDatagram
+    {
+
+        private final ByteBuffer data;
+        private final InetSocketAddress to;
+
+        public PendingDatagram(ByteBuffer data, InetSocketAddress to)
+        {
+            this.data = data;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package kademlia.transport;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Handles raw datagrams read by a KadTransport
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public interface PacketHandler
+{
+
+    /**
+     * A datagram has been read from the network.
+     *
+     * The buffer is only valid for the duration of this call, the transport re-uses it for the next datagram.
+     *
+     * @param packet The datagram, positioned at the start of the data and limited to the end of the data
+     * @param source Where the datagram came from
+     */
+    public void packetReceived(ByteBuffer packet, InetSocketAddress source);
+
+    /**
+     * Part of a datagram that is sent in chunks has arrived, the rest is still on its way.
+     *
+     * @param comm   The communication ID of the message being transferred
+     * @param source Where the chunk came from
+     */
+    public default void transferProgress(int comm, InetSocketAddress source)
+    {
+    }
+
+    /**
+     * A datagram is about to be read in over a connection; decide whether it is worth the memory before it arrives.
+     *
+     * @param comm   The communication ID of the datagram
+     * @param length The size of the datagram
+     * @param source Where the datagram comes from
+     *
+     * @return Whether to read the datagram in; if not, it is skipped
+     */
+    public default boolean admitTransfer(int comm, int length, InetSocketAddress source)
+    {
+        return true;
+    }
+}
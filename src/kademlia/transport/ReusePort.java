@@ -0,0 +1,89 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.DatagramSocket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Lets several sockets bind the same UDP port, so the kernel spreads the datagrams coming in on it over all of them.
+ *
+ * SO_REUSEPORT only exists from Java 9 on and not on every platform, so the option is looked up when the class loads;
+ * where it's missing, isSupported() says so and a node has to make do with one socket.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ReusePort
+{
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = lookup();
+
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> lookup()
+    {
+        try
+        {
+            SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            try (DatagramChannel probe = DatagramChannel.open())
+            {
+                return probe.supportedOptions().contains(option) ? option : null;
+            }
+        }
+        catch (ReflectiveOperationException | IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether sockets can share a port on this platform
+     */
+    public static boolean isSupported()
+    {
+        return SO_REUSEPORT != null;
+    }
+
+    /**
+     * Let a channel share its port; call before binding it
+     *
+     * @param channel
+     *
+     * @throws java.io.IOException
+     */
+    public static void enable(DatagramChannel channel) throws IOException
+    {
+        if (!isSupported())
+        {
+            throw new IOException("SO_REUSEPORT is not supported on this platform");
+        }
+        channel.setOption(SO_REUSEPORT, true);
+    }
+
+    /**
+     * Let a socket share its port; call before binding it
+     *
+     * @param socket
+     *
+     * @throws java.io.IOException
+     */
+    public static void enable(DatagramSocket socket) throws IOException
+    {
+        if (!isSupported())
+        {
+            throw new IOException("SO_REUSEPORT is not supported on this platform");
+        }
+        try
+        {
+            /* DatagramSocket.setOption() came with Java 9 as well */
+            Method setOption = DatagramSocket.class.getMethod("setOption", SocketOption.class, Object.class);
+            setOption.invoke(socket, SO_REUSEPORT, true);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IOException("Cannot set SO_REUSEPORT. Message: " + e.getMessage());
+        }
+    }
+}
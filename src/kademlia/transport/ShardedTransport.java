@@ -0,0 +1,72 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A transport made of several transports bound to the same port, each with its own receive thread.
+ *
+ * The kernel spreads incoming datagrams over the sockets by their source, so receiving scales with the number
+ * of sockets instead of being held to the one core a single listener thread runs on. Every shard hands its
+ * datagrams to the same handler, which therefore has to take datagrams from several threads at once.
+ * Datagrams to a peer are always sent from the same shard, so they leave in the order they were sent.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ShardedTransport implements KadTransport
+{
+
+    private final KadTransport[] shards;
+
+    /**
+     * @param shards The transports, all bound to the same port
+     */
+    public ShardedTransport(KadTransport[] shards)
+    {
+        if (shards.length == 0)
+        {
+            throw new IllegalArgumentException("A sharded transport needs at least one shard");
+        }
+        this.shards = shards.clone();
+    }
+
+    @Override
+    public void start(PacketHandler handler)
+    {
+        for (KadTransport shard : this.shards)
+        {
+            shard.start(handler);
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        this.shards[(to.hashCode() & Integer.MAX_VALUE) % this.shards.length].send(packet, to);
+    }
+
+    @Override
+    public void close()
+    {
+        for (KadTransport shard : this.shards)
+        {
+            shard.close();
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.shards[0].isOpen();
+    }
+
+    /**
+     * @return Number of sockets receiving
+     */
+    public int numShards()
+    {
+        return this.shards.length;
+    }
+}
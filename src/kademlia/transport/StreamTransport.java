@@ -0,0 +1,1021 @@
+package kademlia.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import kademlia.exceptions.MessageTooBigException;
+
+/**
+ * A transport that sends bulk datagrams over TCP connections and everything else over an underlying datagram transport.
+ *
+ * Datagrams of at least the threshold size are written as length-prefixed frames onto a persistent connection
+ * to the peer's TCP port with the same number as its UDP port. There is one outgoing connection per peer,
+ * opened on first use and closed once it has been idle for a while. If a peer can't be connected to,
+ * bulk datagrams to it go over the underlying transport for a while before trying again,
+ * so peers that don't listen for connections still get everything.
+ *
+ * Sending never blocks: frames are queued on the connection and written by the selector thread as the socket
+ * takes them. The queue of a connection is bounded; a datagram that doesn't fit goes over the underlying transport.
+ * A connection that doesn't connect in time, or stops taking data for too long, is closed and its queued
+ * datagrams are sent over the underlying transport instead.
+ *
+ * Incoming connections are read by the same selector thread; each complete frame is handed to the handler
+ * just like a datagram. A connection starts with the UDP port of the connecting node, so frames are reported
+ * as coming from the same address as the node's datagrams.
+ *
+ * Memory for incoming frames is only taken as their bytes arrive: a frame is read into a small buffer that grows
+ * as more of it comes in, and the buffers of all connections together are bounded. Before reading a frame in,
+ * the handler is asked whether it would take it; frames it turns down, or that don't fit the bound, are skipped
+ * without being held. The number of incoming connections is bounded too.
+ *
+ * A frame may also be sent with part of its body straight from a file, which the kernel copies onto the connection
+ * without it passing through the Java heap.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class StreamTransport implements KadTransport
+{
+
+    /* Milliseconds before trying to connect to a peer again after connecting failed */
+    private static final long RECONNECT_DELAY = 30 * 1000;
+
+    /* Most milliseconds between checks for idle and overdue connections */
+    private static final long SWEEP_INTERVAL = 1000;
+
+    /* Most frames waiting to be written on a connection */
+    private static final int MAX_QUEUED_FRAMES = 64;
+
+    /* Most incoming connections at a time; more are closed as soon as they are accepted */
+    private static final int MAX_INBOUND_CONNECTIONS = 256;
+
+    /* Incoming frames are read into a buffer this big at first, which doubles whenever the frame outgrows it */
+    private static final int INITIAL_FRAME_BUFFER = 16 * 1024;
+
+    /* Bytes every incoming frame starts with: its length and the communication ID of the datagram */
+    private static final int FRAME_HEADER = 8;
+
+    private final KadTransport transport;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final int port;
+    private final int threshold;
+    private final int maxFrameSize;
+    private final long maxReassemblyMemory;
+    private final long connectTimeout;
+    private final long writeTimeout;
+    private final long idleTimeout;
+    private final long sweepInterval;
+
+    private final Map<InetSocketAddress, Connection> connections;
+    private final Map<InetSocketAddress, Long> unreachable;     // Peers we couldn't connect to, and when to try again
+    private final Queue<Connection> changed;                    // Outgoing connections the selector thread has to look at
+
+    /* Incoming side; only changed by the selector thread */
+    private final ByteBuffer discard;           // Skipped frames are read into this and forgotten
+    private int inboundConnections;
+    private volatile long reassemblyMemory;     // Bytes of buffers holding incoming frames
+
+    private volatile boolean isRunning;
+
+
+    {
+        connections = new ConcurrentHashMap<>();
+        unreachable = new ConcurrentHashMap<>();
+        changed = new ConcurrentLinkedQueue<>();
+        discard = ByteBuffer.allocate(INITIAL_FRAME_BUFFER);
+    }
+
+    /**
+     * @param transport           The transport to send datagrams under the threshold over
+     * @param port                The TCP port to accept connections on
+     * @param threshold           Datagrams of at least this many bytes are sent over a connection
+     * @param maxFrameSize        Largest frame accepted on a connection
+     * @param maxReassemblyMemory Most bytes held for incoming frames of all connections at a time
+     * @param connectTimeout      Milliseconds to wait for a connection to be established
+     * @param writeTimeout        Milliseconds a connection with frames queued may go without taking any data
+     * @param idleTimeout         Milliseconds after which an unused outgoing connection is closed;
+     *                            incoming ones are closed after twice as long, so the sending side normally closes first
+     *
+     * @throws java.io.IOException
+     */
+    public StreamTransport(KadTransport transport, int port, int threshold, int maxFrameSize, long maxReassemblyMemory,
+            long connectTimeout, long writeTimeout, long idleTimeout) throws IOException
+    {
+        this.transport = transport;
+        this.port = port;
+        this.threshold = threshold;
+        this.maxFrameSize = maxFrameSize;
+        this.maxReassemblyMemory = maxReassemblyMemory;
+        this.connectTimeout = connectTimeout;
+        this.writeTimeout = writeTimeout;
+        this.idleTimeout = idleTimeout;
+        this.sweepInterval = Math.max(10, Math.min(SWEEP_INTERVAL, Math.min(connectTimeout, writeTimeout) / 4));
+
+        this.server = ServerSocketChannel.open();
+        this.server.socket().bind(new InetSocketAddress(port));
+        this.server.configureBlocking(false);
+        this.selector = Selector.open();
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.isRunning = true;
+    }
+
+    @Override
+    public void start(final PacketHandler handler)
+    {
+        this.transport.start(handler);
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                selectLoop(handler);
+            }
+        }.start();
+    }
+
+    /**
+     * Accept connections, read frames from them, write queued frames and close idle or overdue connections
+     */
+    private void selectLoop(PacketHandler handler)
+    {
+        long lastSweep = System.nanoTime();
+        try
+        {
+            while (isRunning)
+            {
+                try
+                {
+                    this.selector.select(this.sweepInterval);
+
+                    Connection c;
+                    while ((c = this.changed.poll()) != null)
+                    {
+                        c.register();
+                    }
+
+                    Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                    while (it.hasNext())
+                    {
+                        SelectionKey k = it.next();
+                        it.remove();
+
+                        if (!k.isValid())
+                        {
+                            continue;
+                        }
+                        if (k.isAcceptable())
+                        {
+                            this.accept();
+                        }
+                        else if (k.attachment() instanceof Connection)
+                        {
+                            ((Connection) k.attachment()).ready();
+                        }
+                        else if (k.isReadable())
+                        {
+                            this.read(k, handler);
+                        }
+                    }
+
+                    if ((System.nanoTime() - lastSweep) / 1000000L >= this.sweepInterval)
+                    {
+                        this.sweep();
+                        lastSweep = System.nanoTime();
+                    }
+                }
+                catch (IOException e)
+                {
+                    if (isRunning)
+                    {
+                        System.err.println("Server ran into a problem in stream listener. Message: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        finally
+        {
+            for (SelectionKey k : this.selector.keys())
+            {
+                closeQuietly(k);
+            }
+            try
+            {
+                this.selector.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Error while closing the stream transport. Message: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = this.server.accept()) != null)
+        {
+            if (this.inboundConnections >= MAX_INBOUND_CONNECTIONS)
+            {
+                channel.close();
+                continue;
+            }
+            this.inboundConnections++;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(this.selector, SelectionKey.OP_READ, new InboundConnection((InetSocketAddress) channel.getRemoteAddress()));
+        }
+    }
+
+    /**
+     * Read what's available on a connection, handing over every frame completed
+     */
+    private void read(SelectionKey k, PacketHandler handler)
+    {
+        SocketChannel channel = (SocketChannel) k.channel();
+        InboundConnection in = (InboundConnection) k.attachment();
+        in.lastActivity = System.nanoTime();
+
+        try
+        {
+            while (true)
+            {
+                if (in.skip > 0)
+                {
+                    /* Read past a frame we don't take, so the stream stays in sync */
+                    this.discard.clear();
+                    this.discard.limit((int) Math.min(this.discard.capacity(), in.skip));
+                    int n = channel.read(this.discard);
+                    if (n < 0)
+                    {
+                        this.closeInbound(k);
+                        return;
+                    }
+                    if (n == 0)
+                    {
+                        return;
+                    }
+                    in.skip -= n;
+                    if (in.skip == 0)
+                    {
+                        in.header.clear();
+                    }
+                    continue;
+                }
+
+                if (in.body == null)
+                {
+                    if (channel.read(in.header) < 0)
+                    {
+                        this.closeInbound(k);
+                        return;
+                    }
+                    if (in.header.hasRemaining())
+                    {
+                        return;
+                    }
+
+                    if (!in.hasPreamble)
+                    {
+                        /* The first int on a connection is the port the peer listens on */
+                        int peerPort = in.header.getInt(0);
+                        if (peerPort < 0 || peerPort > 0xFFFF)
+                        {
+                            this.closeInbound(k);
+                            return;
+                        }
+                        in.source = new InetSocketAddress(in.source.getAddress(), peerPort);
+                        in.hasPreamble = true;
+                        in.header.clear();
+                        continue;
+                    }
+
+                    int length = in.header.getInt(0);
+                    if (length < FRAME_HEADER - 4 || length > this.maxFrameSize)
+                    {
+                        /* Not a frame we can take, the stream is out of sync */
+                        this.closeInbound(k);
+                        return;
+                    }
+
+                    int initial = Math.min(length, INITIAL_FRAME_BUFFER);
+                    if (!handler.admitTransfer(in.header.getInt(4), length, in.source) || !this.reserve(initial))
+                    {
+                        /* Not worth the memory or there is none to spare */
+                        in.skip = length - (FRAME_HEADER - 4);
+                        if (in.skip == 0)
+                        {
+                            in.header.clear();
+                        }
+                        continue;
+                    }
+                    in.length = length;
+                    in.body = ByteBuffer.allocate(initial);
+                    in.body.put(in.header.array(), 4, FRAME_HEADER - 4);
+                }
+
+                if (in.body.position() < in.length && !in.body.hasRemaining())
+                {
+                    /* More of the frame keeps coming, make room for it */
+                    int capacity = (int) Math.min(in.length, 2L * in.body.capacity());
+                    if (!this.reserve(capacity - in.body.capacity()))
+                    {
+                        in.skip = in.length - in.body.position();
+                        this.dropFrame(in);
+                        continue;
+                    }
+                    ByteBuffer grown = ByteBuffer.allocate(capacity);
+                    in.body.flip();
+                    grown.put(in.body);
+                    in.body = grown;
+                }
+
+                if (in.body.position() < in.length)
+                {
+                    if (channel.read(in.body) < 0)
+                    {
+                        this.closeInbound(k);
+                        return;
+                    }
+                    if (in.body.position() < in.length)
+                    {
+                        if (in.body.hasRemaining())
+                        {
+                            /* Read all there was */
+                            return;
+                        }
+                        continue;
+                    }
+                }
+
+                in.body.flip();
+                handler.packetReceived(in.body, in.source);
+                this.dropFrame(in);
+                in.header.clear();
+            }
+        }
+        catch (IOException e)
+        {
+            this.closeInbound(k);
+        }
+    }
+
+    /**
+     * Take memory for incoming frames from the bound
+     *
+     * @return Whether there was enough left
+     */
+    private boolean reserve(long bytes)
+    {
+        if (this.reassemblyMemory + bytes > this.maxReassemblyMemory)
+        {
+            return false;
+        }
+        this.reassemblyMemory += bytes;
+        return true;
+    }
+
+    /**
+     * Let go of the frame being read on a connection and give its memory back
+     */
+    private void dropFrame(InboundConnection in)
+    {
+        if (in.body != null)
+        {
+            this.reassemblyMemory -= in.body.capacity();
+            in.body = null;
+        }
+    }
+
+    private void closeInbound(SelectionKey k)
+    {
+        if (k.isValid())
+        {
+            this.dropFrame((InboundConnection) k.attachment());
+            this.inboundConnections--;
+        }
+        closeQuietly(k);
+    }
+
+    /**
+     * Close connections that have been idle for too long, and outgoing ones that missed their deadline
+     */
+    private void sweep()
+    {
+        long now = System.nanoTime();
+        for (SelectionKey k : this.selector.keys())
+        {
+            Object attachment = k.attachment();
+            if (attachment instanceof InboundConnection && (now - ((InboundConnection) attachment).lastActivity) / 1000000L > 2 * this.idleTimeout)
+            {
+                this.closeInbound(k);
+            }
+        }
+
+        for (Connection c : this.connections.values())
+        {
+            c.sweep(now);
+        }
+    }
+
+    private static void closeQuietly(SelectionKey k)
+    {
+        k.cancel();
+        try
+        {
+            k.channel().close();
+        }
+        catch (IOException e)
+        {
+            /* Closing anyways */
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress to) throws IOException
+    {
+        if (packet.remaining() < this.threshold || !isRunning)
+        {
+            this.transport.send(packet, to);
+            return;
+        }
+        if (packet.remaining() > this.maxFrameSize)
+        {
+            throw new MessageTooBigException();
+        }
+
+        if (!this.sendStream(packet, to))
+        {
+            this.transport.send(packet, to);
+        }
+    }
+
+    /**
+     * Send a frame made of a head, a region of a file and a tail over a connection to a peer.
+     *
+     * The file region is transferred by the kernel without being copied into the Java heap.
+     * If the frame is queued, the transport takes over the file channel and closes it once it is done with it;
+     * should the connection fail, the datagram is read from the file and sent over the underlying transport.
+     * If the frame isn't queued, nothing is sent and the caller keeps the file channel.
+     *
+     * @param head     The bytes before the file region, from the buffer's position to its limit
+     * @param file     The file to send a region of
+     * @param position Where the region starts in the file
+     * @param count    Number of bytes in the region
+     * @param tail     The bytes after the file region, from the buffer's position to its limit
+     * @param to       The address of the peer
+     *
+     * @return Whether the frame was queued
+     *
+     * @throws java.io.IOException
+     */
+    public boolean sendFile(ByteBuffer head, FileChannel file, long position, long count, ByteBuffer tail, InetSocketAddress to) throws IOException
+    {
+        if (!isRunning)
+        {
+            return false;
+        }
+        if (head.remaining() + count + tail.remaining() > this.maxFrameSize)
+        {
+            throw new MessageTooBigException();
+        }
+        return this.sendStream(head, file, position, count, tail, to);
+    }
+
+    private boolean sendStream(ByteBuffer packet, InetSocketAddress to)
+    {
+        return this.sendStream(packet, null, 0, 0, null, to);
+    }
+
+    /**
+     * Queue a frame on the connection to a peer, opening a new connection if there is none or the last one just closed
+     *
+     * @return Whether the frame was queued
+     */
+    private boolean sendStream(ByteBuffer packet, FileChannel file, long position, long count, ByteBuffer tail, InetSocketAddress to)
+    {
+        Long retryAt = this.unreachable.get(to);
+        if (retryAt != null)
+        {
+            if (System.nanoTime() - retryAt < 0)
+            {
+                return false;
+            }
+            this.unreachable.remove(to);
+        }
+
+        for (int attempt = 0; attempt < 2; attempt++)
+        {
+            Connection c = this.connections.get(to);
+            if (c == null)
+            {
+                Connection created = new Connection(to);
+                if (!created.open())
+                {
+                    return false;
+                }
+                c = this.connections.putIfAbsent(to, created);
+                if (c == null)
+                {
+                    c = created;
+                }
+                else
+                {
+                    created.close(false);
+                }
+            }
+
+            if (c.enqueue(packet, file, position, count, tail))
+            {
+                return true;
+            }
+            if (!c.isClosed())
+            {
+                /* The connection has as much queued as it may */
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close()
+    {
+        this.isRunning = false;
+        this.transport.close();
+        try
+        {
+            this.server.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error while closing the stream transport. Message: " + e.getMessage());
+        }
+        this.selector.wakeup();
+
+        for (Connection c : this.connections.values())
+        {
+            c.close(false);
+        }
+        this.connections.clear();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isRunning;
+    }
+
+    /**
+     * @return Number of open outgoing connections
+     */
+    public int openConnections()
+    {
+        return this.connections.size();
+    }
+
+    /**
+     * @return Bytes currently held for incoming frames
+     */
+    public long reassemblyMemory()
+    {
+        return this.reassemblyMemory;
+    }
+
+    /**
+     * An outgoing connection to a peer; only ever written to.
+     *
+     * Senders queue frames and write what the socket takes right away; the selector thread connects
+     * and writes the rest as the socket becomes writable.
+     */
+    private class Connection
+    {
+
+        private final InetSocketAddress to;
+        private final Queue<Frame> queue;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private boolean connected;
+        private long queuedBytes;
+        private long deadline;      // When the connection must have connected or written something, while it has work to do
+        private long lastUsed;
+        private boolean closed;
+
+        public Connection(InetSocketAddress to)
+        {
+            this.to = to;
+            this.queue = new ArrayDeque<>();
+            this.connected = false;
+            this.closed = false;
+        }
+
+        /**
+         * Start connecting, with the port we listen on as the first thing to write
+         *
+         * @return Whether connecting started; if not, the peer is left alone for a while
+         */
+        private synchronized boolean open()
+        {
+            long now = System.nanoTime();
+            try
+            {
+                this.channel = SocketChannel.open();
+                this.channel.configureBlocking(false);
+                this.channel.socket().setTcpNoDelay(true);
+                this.connected = this.channel.connect(this.to);
+            }
+            catch (IOException e)
+            {
+                unreachable.put(this.to, now + RECONNECT_DELAY * 1000000L);
+                this.close(false);
+                return false;
+            }
+
+            ByteBuffer preamble = ByteBuffer.allocate(4);
+            preamble.putInt(port);
+            preamble.flip();
+            this.queue.add(new Frame(preamble, null, 0, 0, null, false));
+            this.queuedBytes = 4;
+            this.deadline = now + (this.connected ? writeTimeout : connectTimeout) * 1000000L;
+            this.lastUsed = now;
+            this.changed();
+            return true;
+        }
+
+        /**
+         * Queue a frame and write as much of the queue as the socket takes without blocking
+         *
+         * @param packet   The frame, or its head if a file region follows
+         * @param file     The file to send a region of after the head; null if the packet is the whole frame
+         * @param position Where the region starts in the file
+         * @param count    Number of bytes in the region
+         * @param tail     The bytes after the file region
+         *
+         * @return Whether the frame was queued; if not, the connection is closed or its queue is full
+         */
+        private synchronized boolean enqueue(ByteBuffer packet, FileChannel file, long position, long count, ByteBuffer tail)
+        {
+            long length = packet.remaining() + ((file == null) ? 0 : count + tail.remaining());
+            if (this.closed || this.queue.size() >= MAX_QUEUED_FRAMES || this.queuedBytes + length > maxFrameSize + 4L)
+            {
+                return false;
+            }
+
+            /* The caller may re-use its buffers once we return, keep copies of them with the length in front */
+            ByteBuffer head = ByteBuffer.allocate(4 + packet.remaining());
+            head.putInt((int) length);
+            head.put(packet);
+            head.flip();
+            ByteBuffer tailCopy = null;
+            if (file != null)
+            {
+                tailCopy = ByteBuffer.allocate(tail.remaining());
+                tailCopy.put(tail);
+                tailCopy.flip();
+            }
+
+            long now = System.nanoTime();
+            if (this.queue.isEmpty())
+            {
+                this.deadline = now + writeTimeout * 1000000L;
+            }
+            this.queue.add(new Frame(head, file, position, count, tailCopy, true));
+            this.queuedBytes += length;
+            this.lastUsed = now;
+
+            if (this.connected)
+            {
+                try
+                {
+                    this.flush();
+                }
+                catch (IOException e)
+                {
+                    /* The frame is sent over the underlying transport instead */
+                    this.close(true);
+                    return true;
+                }
+            }
+            if (!this.queue.isEmpty())
+            {
+                this.changed();
+            }
+            return true;
+        }
+
+        /**
+         * Have the selector thread register the connection or watch it for room to write
+         */
+        private void changed()
+        {
+            changed.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Register with the selector, or watch for room to write; runs on the selector thread
+         */
+        private synchronized void register()
+        {
+            if (this.closed)
+            {
+                return;
+            }
+
+            try
+            {
+                if (this.key == null)
+                {
+                    this.key = this.channel.register(selector, this.connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, this);
+                }
+                else if (this.connected && !this.queue.isEmpty() && this.key.isValid())
+                {
+                    this.key.interestOps(SelectionKey.OP_WRITE);
+                }
+            }
+            catch (IOException e)
+            {
+                this.close(true);
+            }
+        }
+
+        /**
+         * The connection got established or has room to write; runs on the selector thread
+         */
+        private synchronized void ready()
+        {
+            if (this.closed)
+            {
+                return;
+            }
+
+            try
+            {
+                if (!this.connected)
+                {
+                    if (!this.channel.finishConnect())
+                    {
+                        return;
+                    }
+                    this.connected = true;
+                    this.deadline = System.nanoTime() + writeTimeout * 1000000L;
+                }
+
+                this.flush();
+                this.key.interestOps(this.queue.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+            }
+            catch (IOException e)
+            {
+                if (!this.connected)
+                {
+                    unreachable.put(this.to, System.nanoTime() + RECONNECT_DELAY * 1000000L);
+                }
+                this.close(true);
+            }
+        }
+
+        /**
+         * Write queued frames until the socket takes no more; every bit written moves the deadline on
+         */
+        private void flush() throws IOException
+        {
+            while (!this.queue.isEmpty())
+            {
+                Frame f = this.queue.peek();
+                if (f.writeTo(this.channel) > 0)
+                {
+                    this.deadline = System.nanoTime() + writeTimeout * 1000000L;
+                }
+                if (!f.isDone())
+                {
+                    return;
+                }
+
+                this.queue.poll();
+                this.queuedBytes -= f.length;
+                f.release();
+            }
+        }
+
+        /**
+         * Close the connection if it missed its deadline or has been idle for too long
+         */
+        private synchronized void sweep(long now)
+        {
+            if (this.closed)
+            {
+                return;
+            }
+
+            if ((!this.connected || !this.queue.isEmpty()) && now - this.deadline > 0)
+            {
+                /* The peer doesn't answer or doesn't read, don't try it again for a while */
+                unreachable.put(this.to, now + RECONNECT_DELAY * 1000000L);
+                this.close(true);
+            }
+            else if (this.queue.isEmpty() && (now - this.lastUsed) / 1000000L > idleTimeout)
+            {
+                this.close(false);
+            }
+        }
+
+        private synchronized boolean isClosed()
+        {
+            return this.closed;
+        }
+
+        /**
+         * @param fallback Whether to send the queued datagrams over the underlying transport
+         */
+        private synchronized void close(boolean fallback)
+        {
+            this.closed = true;
+            connections.remove(this.to, this);
+            if (this.channel != null)
+            {
+                try
+                {
+                    this.channel.close();
+                }
+                catch (IOException e)
+                {
+                    /* Closing anyways */
+                }
+            }
+
+            Frame f;
+            while ((f = this.queue.poll()) != null)
+            {
+                if (fallback && f.isDatagram && isRunning)
+                {
+                    try
+                    {
+                        transport.send(f.datagram(), this.to);
+                    }
+                    catch (IOException e)
+                    {
+                        /* The datagram is lost like any other */
+                    }
+                }
+                f.release();
+            }
+            this.queuedBytes = 0;
+        }
+    }
+
+    /**
+     * A frame waiting to be written: a head, an optional region of a file and a tail
+     */
+    private static class Frame
+    {
+
+        private final ByteBuffer head;
+        private final FileChannel file;
+        private final long start;
+        private final long end;
+        private final ByteBuffer tail;
+        private final boolean isDatagram;   // The head starts with the length of a datagram, as opposed to the preamble
+        private final long length;
+        private long position;
+
+        public Frame(ByteBuffer head, FileChannel file, long position, long count, ByteBuffer tail, boolean isDatagram)
+        {
+            this.head = head;
+            this.file = file;
+            this.start = position;
+            this.end = position + count;
+            this.tail = tail;
+            this.isDatagram = isDatagram;
+            this.length = head.remaining() - (isDatagram ? 4 : 0) + ((file == null) ? 0 : count + tail.remaining());
+            this.position = position;
+        }
+
+        /**
+         * @return Number of bytes written
+         */
+        private long writeTo(SocketChannel channel) throws IOException
+        {
+            long written = 0;
+            if (this.head.hasRemaining())
+            {
+                written += channel.write(this.head);
+                if (this.head.hasRemaining())
+                {
+                    return written;
+                }
+            }
+
+            while (this.file != null && this.position < this.end)
+            {
+                long n = this.file.transferTo(this.position, this.end - this.position, channel);
+                if (n <= 0)
+                {
+                    if (this.position >= this.file.size())
+                    {
+                        throw new IOException("File ended before the frame did");
+                    }
+                    return written;
+                }
+                this.position += n;
+                written += n;
+            }
+
+            if (this.tail != null && this.tail.hasRemaining())
+            {
+                written += channel.write(this.tail);
+            }
+            return written;
+        }
+
+        private boolean isDone()
+        {
+            return !this.head.hasRemaining() && this.position >= this.end && (this.tail == null || !this.tail.hasRemaining());
+        }
+
+        /**
+         * @return The datagram the frame carries, read back in from the file if it has a region of one
+         */
+        private ByteBuffer datagram() throws IOException
+        {
+            ByteBuffer head = this.head.duplicate();
+            head.position(4);
+            if (this.file == null)
+            {
+                return head;
+            }
+
+            ByteBuffer datagram = ByteBuffer.allocate((int) this.length);
+            datagram.put(head);
+            long at = this.start;
+            while (at < this.end)
+            {
+                datagram.limit((int) (datagram.position() + this.end - at));
+                int n = this.file.read(datagram, at);
+                if (n < 0)
+                {
+                    throw new IOException("File ended before the frame did");
+                }
+                at += n;
+            }
+            ByteBuffer tail = this.tail.duplicate();
+            tail.position(0);
+            datagram.limit(datagram.capacity());
+            datagram.put(tail);
+            datagram.flip();
+            return datagram;
+        }
+
+        /**
+         * Close the file, if the frame has one
+         */
+        private void release()
+        {
+            if (this.file != null)
+            {
+                try
+                {
+                    this.file.close();
+                }
+                catch (IOException e)
+                {
+                    /* Done with it anyways */
+                }
+            }
+        }
+    }
+
+    /**
+     * Read state of an incoming connection
+     */
+    private static class InboundConnection
+    {
+
+        private InetSocketAddress source;
+        private boolean hasPreamble;
+        private final ByteBuffer header;
+        private ByteBuffer body;        // The frame read so far, with room for more of it
+        private int length;             // Length of the frame being read
+        private long skip;              // Bytes left of a frame being skipped
+        private long lastActivity;
+
+        public InboundConnection(InetSocketAddress source)
+        {
+            this.source = source;
+            this.hasPreamble = false;
+            this.header = ByteBuffer.allocate(FRAME_HEADER);
+            this.header.limit(4);
+            this.lastActivity = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package kademlia.transport;
+
+/**
+ * The kinds of transports a KadServer can send and receive datagrams over.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public enum TransportType
+{
+
+    /**
+     * A blocking java.net.DatagramSocket read by a single listener thread
+     */
+    DATAGRAM_SOCKET,
+
+    /**
+     * A non-blocking java.nio.channels.DatagramChannel driven by a Selector loop
+     */
+    NIO,
+
+    /**
+     * An in-memory LoopbackNetwork shared by all nodes in the JVM, for simulations; no sockets are opened
+     * and the nodes share the network's timer instead of starting one each
+     */
+    LOOPBACK
+}
@@ -0,0 +1,109 @@
+package kademlia.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of fixed size buffers, so sending and receiving messages doesn't allocate a buffer for every datagram.
+ *
+ * Free buffers sit in an array of slots that threads take from and put back into with compare-and-set,
+ * each thread starting its search at a different slot. If the pool is empty a new buffer is created,
+ * if it is full a released buffer is left to the garbage collector.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class BufferPool
+{
+
+    private final AtomicReferenceArray<PooledBuffer> free;
+    private final int mask;
+    private final int bufferSize;
+    private final boolean direct;
+
+    /**
+     * @param bufferSize Size of each buffer in bytes
+     * @param maxPooled  Maximum number of free buffers kept; rounded up to a power of 2
+     * @param direct     Whether to allocate direct buffers instead of heap buffers
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct)
+    {
+        int size = 1;
+        while (size < maxPooled)
+        {
+            size <<= 1;
+        }
+
+        this.free = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+    }
+
+    /**
+     * @return A buffer from the pool, or a new one if the pool is empty
+     */
+    public PooledBuffer acquire()
+    {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= this.mask; i++)
+        {
+            int index = (start + i) & this.mask;
+            PooledBuffer buf = this.free.get(index);
+            if (buf != null && this.free.compareAndSet(index, buf, null))
+            {
+                return buf;
+            }
+        }
+
+        ByteBuffer buffer = this.direct ? ByteBuffer.allocateDirect(this.bufferSize) : ByteBuffer.allocate(this.bufferSize);
+        return new PooledBuffer(this, buffer);
+    }
+
+    /**
+     * Get a buffer of at least the given size; buffers bigger than the pool's size are not pooled
+     *
+     * @param minSize Minimum size of the buffer in bytes
+     *
+     * @return A buffer
+     */
+    public PooledBuffer acquire(int minSize)
+    {
+        if (minSize <= this.bufferSize)
+        {
+            return this.acquire();
+        }
+        return new PooledBuffer(this, this.direct ? ByteBuffer.allocateDirect(minSize) : ByteBuffer.allocate(minSize));
+    }
+
+    /**
+     * Put a buffer back into the pool
+     *
+     * @param buf The buffer
+     */
+    void release(PooledBuffer buf)
+    {
+        if (buf.buffer().capacity() != this.bufferSize)
+        {
+            return;
+        }
+
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= this.mask; i++)
+        {
+            int index = (start + i) & this.mask;
+            if (this.free.get(index) == null && this.free.compareAndSet(index, null, buf))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Whether this pool hands out direct buffers
+     */
+    public boolean isDirect()
+    {
+        return this.direct;
+    }
+}
@@ -0,0 +1,65 @@
+package kademlia.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads from a ByteBuffer, between its position and limit.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ByteBufferInputStream extends InputStream
+{
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer The buffer to read from
+     */
+    public ByteBufferInputStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read()
+    {
+        if (!this.buffer.hasRemaining())
+        {
+            return -1;
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (!this.buffer.hasRemaining())
+        {
+            return -1;
+        }
+
+        int n = Math.min(len, this.buffer.remaining());
+        this.buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        int skipped = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        return this.buffer.remaining();
+    }
+}
@@ -0,0 +1,109 @@
+package kademlia.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream that writes into a ByteBuffer instead of growing a byte array.
+ *
+ * Whatever doesn't fit into the buffer spills over into a byte array on the heap,
+ * so a caller can check for overflow once it's done writing instead of having to handle an exception halfway.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class ByteBufferOutputStream extends OutputStream
+{
+
+    private final ByteBuffer buffer;
+    private ByteArrayOutputStream overflow;
+
+    /**
+     * @param buffer The buffer to write into, starting at its position
+     */
+    public ByteBufferOutputStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b)
+    {
+        if (this.overflow == null && this.buffer.hasRemaining())
+        {
+            this.buffer.put((byte) b);
+            return;
+        }
+        this.overflow().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+        if (this.overflow == null)
+        {
+            int n = Math.min(len, this.buffer.remaining());
+            this.buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+        if (len > 0)
+        {
+            this.overflow().write(b, off, len);
+        }
+    }
+
+    private ByteArrayOutputStream overflow()
+    {
+        if (this.overflow == null)
+        {
+            this.overflow = new ByteArrayOutputStream(this.buffer.capacity());
+        }
+        return this.overflow;
+    }
+
+    /**
+     * @return Whether more was written than fits into the buffer
+     */
+    public boolean hasOverflow()
+    {
+        return this.overflow != null;
+    }
+
+    /**
+     * @return Number of bytes written since the last reset
+     */
+    public int size()
+    {
+        return this.buffer.position() + (this.overflow == null ? 0 : this.overflow.size());
+    }
+
+    /**
+     * @return Everything written since the last reset: the buffer's content followed by the overflow
+     */
+    public byte[] toByteArray()
+    {
+        int inBuffer = this.buffer.position();
+        int spilled = this.overflow == null ? 0 : this.overflow.size();
+        byte[] data = new byte[inBuffer + spilled];
+
+        ByteBuffer view = this.buffer.duplicate();
+        view.flip();
+        view.get(data, 0, inBuffer);
+        if (spilled > 0)
+        {
+            System.arraycopy(this.overflow.toByteArray(), 0, data, inBuffer, spilled);
+        }
+        return data;
+    }
+
+    /**
+     * Clear the buffer and drop any overflow
+     */
+    public void reset()
+    {
+        this.buffer.clear();
+        this.overflow = null;
+    }
+}
@@ -0,0 +1,87 @@
+package kademlia.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses message payloads with the JDK's Deflater.
+ *
+ * Each thread keeps its own Deflater and Inflater, since creating them allocates native memory every time.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class Deflate
+{
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[8 * 1024];
+        }
+    };
+
+    /**
+     * Compress data and write it to a stream
+     *
+     * @param data   The data to compress
+     * @param offset Offset of the data in the array
+     * @param length Number of bytes to compress
+     * @param out    Stream to write the compressed data to
+     *
+     * @throws java.io.IOException
+     */
+    public static void compress(byte[] data, int offset, int length, DataOutputStream out) throws IOException
+    {
+        Deflater deflater = DEFLATER.get();
+        byte[] scratch = SCRATCH.get();
+
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished())
+        {
+            int n = deflater.deflate(scratch);
+            out.write(scratch, 0, n);
+        }
+    }
+
+    /**
+     * Wrap a stream of compressed data in a stream that decompresses it.
+     * The returned stream must be used up on the calling thread.
+     *
+     * @param in The compressed data
+     *
+     * @return A stream of the decompressed data
+     */
+    public static InputStream decompress(InputStream in)
+    {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        return new InflaterInputStream(in, inflater);
+    }
+}
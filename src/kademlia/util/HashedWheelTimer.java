@@ -0,0 +1,285 @@
+package kademlia.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A timer that keeps scheduled tasks in a ring of buckets, one bucket per tick.
+ *
+ * Scheduling links a task into the bucket of its deadline tick and cancelling unlinks it again,
+ * both in O(1) and only locking that one bucket. A single worker thread visits one bucket per tick
+ * and runs the tasks whose deadline has been reached; tasks that are further away than one
+ * rotation of the wheel simply stay in their bucket until a later rotation.
+ *
+ * The price is resolution: a task fires at most one tick later than asked for.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class HashedWheelTimer
+{
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+
+    /* The last tick the worker has processed */
+    private volatile long currentTick;
+    private volatile boolean isRunning;
+
+    private final Thread worker;
+
+    /**
+     * @param tickDuration  Length of a tick in milliseconds
+     * @param ticksPerWheel Number of buckets in the wheel; rounded up to a power of 2
+     */
+    public HashedWheelTimer(long tickDuration, int ticksPerWheel)
+    {
+        if (tickDuration <= 0)
+        {
+            throw new IllegalArgumentException("Tick duration must be positive. Given: " + tickDuration);
+        }
+
+        int size = 1;
+        while (size < ticksPerWheel)
+        {
+            size <<= 1;
+        }
+
+        this.tickNanos = tickDuration * 1000000L;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+        {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.currentTick = 0;
+        this.isRunning = true;
+
+        this.worker = new Thread("HashedWheelTimer")
+        {
+            @Override
+            public void run()
+            {
+                work();
+            }
+        };
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedule a task to run once after the given delay.
+     * A task can only be scheduled once at a time; it may be scheduled again after it has run or been cancelled.
+     *
+     * @param task  The task to run
+     * @param delay Delay in milliseconds
+     *
+     * @throws IllegalStateException If the timer is stopped or the task is already scheduled
+     */
+    public void schedule(Task task, long delay)
+    {
+        if (!isRunning)
+        {
+            throw new IllegalStateException("Timer already stopped.");
+        }
+        if (task.bucket != null)
+        {
+            throw new IllegalStateException("Task already scheduled.");
+        }
+
+        /* Round up so a task never fires before its delay has passed */
+        long elapsed = System.nanoTime() - this.startTime + Math.max(0, delay) * 1000000L;
+        long deadline = (elapsed + this.tickNanos - 1) / this.tickNanos;
+
+        while (true)
+        {
+            long target = Math.max(deadline, this.currentTick + 1);
+            Bucket bucket = this.wheel[(int) (target & this.mask)];
+            synchronized (bucket)
+            {
+                /* The worker may have processed this tick while we were getting the lock; try the next one */
+                if (target <= this.currentTick)
+                {
+                    continue;
+                }
+                task.deadline = target;
+                bucket.add(task);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cancel a scheduled task
+     *
+     * @param task The task to cancel
+     *
+     * @return Whether the task was still scheduled
+     */
+    public boolean cancel(Task task)
+    {
+        Bucket bucket = task.bucket;
+        if (bucket == null)
+        {
+            return false;
+        }
+
+        synchronized (bucket)
+        {
+            /* The task may have expired or been cancelled meanwhile */
+            if (task.bucket != bucket)
+            {
+                return false;
+            }
+            bucket.remove(task);
+            return true;
+        }
+    }
+
+    /**
+     * Stop the timer; scheduled tasks will not run anymore
+     */
+    public void stop()
+    {
+        this.isRunning = false;
+        this.worker.interrupt();
+    }
+
+    /**
+     * The worker loop; processes one bucket per tick
+     */
+    private void work()
+    {
+        final List<Task> expired = new ArrayList<>();
+
+        while (isRunning)
+        {
+            long tick = this.currentTick + 1;
+
+            /* Sleep until the tick is due */
+            long sleep = this.startTime + tick * this.tickNanos - System.nanoTime();
+            if (sleep > 0)
+            {
+                try
+                {
+                    Thread.sleep(sleep / 1000000L, (int) (sleep % 1000000L));
+                }
+                catch (InterruptedException e)
+                {
+                    /* Stopped */
+                    continue;
+                }
+            }
+
+            Bucket bucket = this.wheel[(int) (tick & this.mask)];
+            synchronized (bucket)
+            {
+                bucket.expire(tick, expired);
+                this.currentTick = tick;
+            }
+
+            /* Run the tasks outside the lock so they can re-schedule themselves */
+            for (Task t : expired)
+            {
+                try
+                {
+                    t.run();
+                }
+                catch (RuntimeException e)
+                {
+                    System.err.println("Timer task failed. Message: " + e.getMessage());
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * A task that can be scheduled on a HashedWheelTimer.
+     *
+     * Tasks link themselves into the wheel, so scheduling and cancelling allocate nothing.
+     */
+    public static abstract class Task implements Runnable
+    {
+
+        private volatile Bucket bucket;
+        private Task prev, next;
+        private long deadline;
+
+        /**
+         * @return Whether this task is currently scheduled
+         */
+        public boolean isScheduled()
+        {
+            return this.bucket != null;
+        }
+    }
+
+    /**
+     * A doubly linked list of the tasks due in one slot of the wheel
+     */
+    private static class Bucket
+    {
+
+        private Task head, tail;
+
+        private void add(Task t)
+        {
+            t.bucket = this;
+            t.prev = this.tail;
+            t.next = null;
+            if (this.tail == null)
+            {
+                this.head = t;
+            }
+            else
+            {
+                this.tail.next = t;
+            }
+            this.tail = t;
+        }
+
+        private void remove(Task t)
+        {
+            if (t.prev == null)
+            {
+                this.head = t.next;
+            }
+            else
+            {
+                t.prev.next = t.next;
+            }
+            if (t.next == null)
+            {
+                this.tail = t.prev;
+            }
+            else
+            {
+                t.next.prev = t.prev;
+            }
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        /**
+         * Unlink all tasks due by the given tick
+         */
+        private void expire(long tick, List<Task> expired)
+        {
+            Task t = this.head;
+            while (t != null)
+            {
+                Task next = t.next;
+                if (t.deadline <= tick)
+                {
+                    this.remove(t);
+                    expired.add(t);
+                }
+                t = next;
+            }
+        }
+    }
+}
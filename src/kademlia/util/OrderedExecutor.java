@@ -0,0 +1,114 @@
+package kademlia.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks on an underlying Executor while keeping tasks submitted with the same key in submission order.
+ *
+ * Keys are spread over a fixed number of lanes; each lane runs at most one task at a time,
+ * so tasks for different keys usually run in parallel while tasks for one key never overtake each other.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class OrderedExecutor
+{
+
+    /* How many tasks a lane runs before giving its thread back to the executor */
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    private final Executor executor;
+    private final Lane[] lanes;
+
+    /**
+     * @param executor The executor that runs the tasks
+     * @param numLanes How many independent lanes keys are spread over
+     */
+    public OrderedExecutor(Executor executor, int numLanes)
+    {
+        this.executor = executor;
+        this.lanes = new Lane[numLanes];
+        for (int i = 0; i < numLanes; i++)
+        {
+            this.lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Run a task after all tasks previously submitted with the same key
+     *
+     * @param key  The ordering key
+     * @param task The task to run
+     */
+    public void execute(int key, Runnable task)
+    {
+        this.lanes[(key & Integer.MAX_VALUE) % this.lanes.length].add(task);
+    }
+
+    /**
+     * A queue of tasks of which at most one is running at any time
+     */
+    private class Lane implements Runnable
+    {
+
+        private final Queue<Runnable> tasks;
+        private final AtomicBoolean scheduled;
+
+
+        {
+            tasks = new ConcurrentLinkedQueue<>();
+            scheduled = new AtomicBoolean(false);
+        }
+
+        public void add(Runnable task)
+        {
+            this.tasks.add(task);
+            this.schedule();
+        }
+
+        private void schedule()
+        {
+            if (this.scheduled.compareAndSet(false, true))
+            {
+                try
+                {
+                    executor.execute(this);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    /* The executor is shutting down, nothing more will run */
+                    this.scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            Runnable task;
+            int count = 0;
+            while (count++ < MAX_TASKS_PER_RUN && (task = this.tasks.poll()) != null)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (RuntimeException e)
+                {
+                    System.err.println("Task failed while running on ordered executor. Message: " + e.getMessage());
+                }
+            }
+
+            /* Allow the lane to be scheduled again, and re-schedule it ourselves if tasks came in meanwhile */
+            this.scheduled.set(false);
+            if (!this.tasks.isEmpty())
+            {
+                this.schedule();
+            }
+        }
+    }
+}
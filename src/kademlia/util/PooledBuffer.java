@@ -0,0 +1,106 @@
+package kademlia.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffer handed out by a BufferPool, together with the data streams used to encode messages into it
+ * and decode messages from it. The streams are bound to the buffer once, so re-using the buffer allocates nothing.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class PooledBuffer
+{
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final ByteBufferOutputStream bout;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer)
+    {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.bout = new ByteBufferOutputStream(buffer);
+        this.out = new DataOutputStream(this.bout);
+        this.in = new DataInputStream(new ByteBufferInputStream(buffer));
+    }
+
+    /**
+     * @return The underlying buffer
+     */
+    public ByteBuffer buffer()
+    {
+        return this.buffer;
+    }
+
+    /**
+     * Clear the buffer and start writing into it; flip the buffer once done writing.
+     * Data that doesn't fit into the buffer goes to an overflow array on the heap, see hasOverflow().
+     *
+     * @return A stream that writes into the buffer
+     */
+    public DataOutputStream output()
+    {
+        this.bout.reset();
+        return this.out;
+    }
+
+    /**
+     * @return Whether more was written to the output stream than fits into the buffer
+     */
+    public boolean hasOverflow()
+    {
+        return this.bout.hasOverflow();
+    }
+
+    /**
+     * @return Number of bytes written to the output stream, including the overflow
+     */
+    public int size()
+    {
+        return this.bout.size();
+    }
+
+    /**
+     * Finish writing
+     *
+     * @return What was written to the output stream, ready to be read or sent; the buffer itself unless it overflowed
+     */
+    public ByteBuffer packet()
+    {
+        if (this.bout.hasOverflow())
+        {
+            return ByteBuffer.wrap(this.bout.toByteArray());
+        }
+        this.buffer.flip();
+        return this.buffer;
+    }
+
+    /**
+     * @return Everything written to the output stream, including the overflow
+     */
+    public byte[] toByteArray()
+    {
+        return this.bout.toByteArray();
+    }
+
+    /**
+     * @return A stream that reads the buffer from its position up to its limit
+     */
+    public DataInputStream input()
+    {
+        return this.in;
+    }
+
+    /**
+     * Hand the buffer back to its pool; it must not be used anymore afterwards
+     */
+    public void release()
+    {
+        this.pool.release(this);
+    }
+}
@@ -0,0 +1,55 @@
+package kademlia.util.serializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import kademlia.dht.GetParameter;
+import kademlia.node.KademliaId;
+
+/**
+ * A KadSerializer that writes the parameters of a GET request in a fixed binary layout, without reflection or class names.
+ *
+ * The parameters are laid out as a flags byte telling which of the key, owner ID and type are set, followed by those that are.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class BinaryGetParameterSerializer implements KadSerializer<GetParameter>
+{
+
+    /* Unlike a storage entry's, the key of a GET request is optional; the other flags are shared with storage entries */
+    private static final int HAS_KEY = 0x01;
+
+    @Override
+    public void write(GetParameter data, DataOutputStream out) throws IOException
+    {
+        int flags = (data.getKey() != null ? HAS_KEY : 0)
+                | (data.getOwnerId() != null ? BinaryStorageEntrySerializer.HAS_OWNER : 0)
+                | (data.getType() != null ? BinaryStorageEntrySerializer.HAS_TYPE : 0);
+        out.writeByte(flags);
+
+        if (data.getKey() != null)
+        {
+            data.getKey().toStream(out);
+        }
+        if (data.getOwnerId() != null)
+        {
+            out.writeUTF(data.getOwnerId());
+        }
+        if (data.getType() != null)
+        {
+            out.writeUTF(data.getType());
+        }
+    }
+
+    @Override
+    public GetParameter read(DataInputStream in) throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        KademliaId key = (flags & HAS_KEY) != 0 ? new KademliaId(in) : null;
+        String owner = (flags & BinaryStorageEntrySerializer.HAS_OWNER) != 0 ? in.readUTF() : null;
+        String type = (flags & BinaryStorageEntrySerializer.HAS_TYPE) != 0 ? in.readUTF() : null;
+
+        return new GetParameter(key, type, owner);
+    }
+}
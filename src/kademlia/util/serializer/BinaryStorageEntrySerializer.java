@@ -0,0 +1,129 @@
+package kademlia.util.serializer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import kademlia.dht.JKademliaStorageEntry;
+import kademlia.dht.KademliaStorageEntryMetadata;
+import kademlia.dht.StorageEntryMetadata;
+import kademlia.node.KademliaId;
+
+/**
+ * A KadSerializer that writes storage entries in a fixed binary layout, without reflection or class names.
+ *
+ * An entry is laid out as its metadata followed by the content as a 4-byte length and the content bytes.
+ * The metadata is a flags byte telling which of the owner ID and type are set, the key,
+ * the owner ID and type if set, the content hash, the last updated and the last republished timestamps.
+ *
+ * @author Joshua Kissoon
+ * @since 20261017
+ */
+public class BinaryStorageEntrySerializer implements KadSerializer<JKademliaStorageEntry>
+{
+
+    /* Largest content we read; anything bigger is a broken or hostile message */
+    public static final int MAX_CONTENT_SIZE = 16 * 1024 * 1024;
+
+    /* Content is read into a buffer this big at first, growing as more of it arrives */
+    private static final int INITIAL_CONTENT_BUFFER = 8 * 1024;
+
+    /* Which optional fields are set; the key is always written */
+    static final int HAS_OWNER = 0x02;
+    static final int HAS_TYPE = 0x04;
+
+    @Override
+    public void write(JKademliaStorageEntry data, DataOutputStream out) throws IOException
+    {
+        writeMetadata(data.getContentMetadata(), out);
+
+        byte[] content = data.getContent();
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    @Override
+    public JKademliaStorageEntry read(DataInputStream in) throws IOException
+    {
+        StorageEntryMetadata metadata = readMetadata(in);
+
+        int len = in.readInt();
+        if (len < 0 || len > MAX_CONTENT_SIZE)
+        {
+            throw new IOException("Bad content length: " + len);
+        }
+
+        return new JKademliaStorageEntry(readContent(in, len), metadata);
+    }
+
+    /**
+     * Read content of the given length, growing the buffer as bytes arrive;
+     * a length claiming more than the message holds fails without allocating the whole of it.
+     */
+    private static byte[] readContent(DataInputStream in, int len) throws IOException
+    {
+        byte[] content = new byte[Math.min(len, INITIAL_CONTENT_BUFFER)];
+        int read = 0;
+        while (read < len)
+        {
+            if (read == content.length)
+            {
+                content = Arrays.copyOf(content, (int) Math.min(len, 2L * content.length));
+            }
+
+            int n = in.read(content, read, content.length - read);
+            if (n < 0)
+            {
+                throw new EOFException("Content ended after " + read + " of " + len + " bytes");
+            }
+            read += n;
+        }
+        return content;
+    }
+
+    /**
+     * Write the metadata of a storage entry
+     *
+     * @param md
+     * @param out
+     *
+     * @throws java.io.IOException
+     */
+    public static void writeMetadata(KademliaStorageEntryMetadata md, DataOutputStream out) throws IOException
+    {
+        out.writeByte((md.getOwnerId() != null ? HAS_OWNER : 0) | (md.getType() != null ? HAS_TYPE : 0));
+        md.getKey().toStream(out);
+        if (md.getOwnerId() != null)
+        {
+            out.writeUTF(md.getOwnerId());
+        }
+        if (md.getType() != null)
+        {
+            out.writeUTF(md.getType());
+        }
+        out.writeInt(md.getContentHash());
+        out.writeLong(md.getLastUpdatedTimestamp());
+        out.writeLong(md.lastRepublished());
+    }
+
+    /**
+     * @param in
+     *
+     * @return Metadata written by writeMetadata
+     *
+     * @throws java.io.IOException
+     */
+    public static StorageEntryMetadata readMetadata(DataInputStream in) throws IOException
+    {
+        int flags = in.readUnsignedByte();
+        KademliaId key = new KademliaId(in);
+        String owner = (flags & HAS_OWNER) != 0 ? in.readUTF() : null;
+        String type = (flags & HAS_TYPE) != 0 ? in.readUTF() : null;
+        int hash = in.readInt();
+        long updated = in.readLong();
+        long republished = in.readLong();
+
+        return new StorageEntryMetadata(key, owner, type, hash, updated, republished);
+    }
+}
@@ -21,12 +21,8 @@ import java.io.OutputStreamWriter;
 public class JsonSerializer<T> implements KadSerializer<T>
 {
 
-    private final Gson gson;
-
-    
-    {
-        gson = new Gson();
-    }
+    /* Gson is thread safe and costly to set up, so all serializers share one */
+    private static final Gson gson = new Gson();
 
     @Override
     public void write(T data, DataOutputStream out) throws IOException